@@ -0,0 +1,309 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * <p>Generates a Maven reactor with given number of bundle modules, grouped under nested parents:<pre>
+ * pom.xml                      (root, profiles "report" and "fragments")
+ * group-000/pom.xml            (parent of the modules of the group)
+ * group-000/module-0000/...    (jar with OSGi headers and single class)
+ * ...
+ * report/pom.xml               (manifest-summary, only with -Preport)
+ * </pre>Each module depends on up to two earlier modules, imports and uses their packages, so the reactor
+ * isn't flat and {@code -T} has to follow real dependencies. Bundles are built by {@code maven-jar-plugin}
+ * with explicit manifest entries, to keep the cost of the modules themselves low.</p>
+ * <p>Usage: {@code LargeReactor <directory> [modules] [group size] [plugin version]}</p>
+ */
+public final class LargeReactor {
+
+    private static final String GROUP_ID = "org.ops4j.tools.maven.scale";
+    private static final String VERSION = "1.0.0-SNAPSHOT";
+    private static final String PLUGIN_POM_PROPERTIES
+            = "/META-INF/maven/org.ops4j.tools.maven/osgi-report-maven-plugin/pom.properties";
+
+    private LargeReactor() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LargeReactor <directory> [modules] [group size] [plugin version]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        int modules = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        int groupSize = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        String pluginVersion = args.length > 3 ? args[3] : pluginVersion();
+        generate(directory, modules, groupSize, pluginVersion);
+        System.out.println("Generated " + modules + " modules in " + directory);
+    }
+
+    /**
+     * Generates the reactor
+     * @param directory
+     * @param modules number of bundle modules
+     * @param groupSize number of modules in each group (intermediate parent)
+     * @param pluginVersion version of osgi-report-maven-plugin used by the report module
+     */
+    public static void generate(File directory, int modules, int groupSize, String pluginVersion) throws IOException {
+        Random random = new Random(42L);
+        List<String> groups = new ArrayList<>();
+        List<String> groupModules = new ArrayList<>();
+        for (int m = 0; m < modules; m++) {
+            String group = String.format("group-%03d", m / groupSize);
+            if (groupModules.size() == groupSize || groups.isEmpty()) {
+                if (!groups.isEmpty()) {
+                    writeGroup(directory, groups.get(groups.size() - 1), groupModules);
+                    groupModules.clear();
+                }
+                groups.add(group);
+            }
+            String module = String.format("module-%04d", m);
+            groupModules.add(module);
+            TreeSet<Integer> dependencies = new TreeSet<>();
+            for (int d = 0; d < 2 && m > 0; d++) {
+                dependencies.add(random.nextInt(m));
+            }
+            writeModule(new File(directory, group + "/" + module), group, m, dependencies);
+        }
+        if (!groups.isEmpty()) {
+            writeGroup(directory, groups.get(groups.size() - 1), groupModules);
+        }
+        writeRoot(directory, groups, pluginVersion);
+        writeReport(new File(directory, "report"));
+    }
+
+    private static void writeRoot(File directory, List<String> groups, String pluginVersion) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(header());
+        sb.append("    <groupId>" + GROUP_ID + "</groupId>\n");
+        sb.append("    <artifactId>scale-root</artifactId>\n");
+        sb.append("    <version>" + VERSION + "</version>\n");
+        sb.append("    <packaging>pom</packaging>\n\n");
+        sb.append("    <properties>\n");
+        sb.append("        <project.build.sourceEncoding>UTF-8</project.build.sourceEncoding>\n");
+        sb.append("        <maven.compiler.source>1.8</maven.compiler.source>\n");
+        sb.append("        <maven.compiler.target>1.8</maven.compiler.target>\n");
+        sb.append("        <osgi-report.version>" + pluginVersion + "</osgi-report.version>\n");
+        sb.append("    </properties>\n\n");
+        sb.append("    <modules>\n");
+        for (String group : groups) {
+            sb.append("        <module>" + group + "</module>\n");
+        }
+        sb.append("    </modules>\n\n");
+        sb.append("    <build>\n");
+        sb.append("        <pluginManagement>\n");
+        sb.append("            <plugins>\n");
+        sb.append(plugin("maven-compiler-plugin", "3.8.0"));
+        sb.append(plugin("maven-install-plugin", "2.5.2"));
+        sb.append(plugin("maven-jar-plugin", "3.1.1"));
+        sb.append(plugin("maven-resources-plugin", "3.1.0"));
+        sb.append(plugin("maven-surefire-plugin", "2.22.1"));
+        sb.append("            </plugins>\n");
+        sb.append("        </pluginManagement>\n");
+        sb.append("    </build>\n\n");
+        sb.append("    <profiles>\n");
+        sb.append("        <profile>\n");
+        sb.append("            <id>report</id>\n");
+        sb.append("            <modules>\n");
+        sb.append("                <module>report</module>\n");
+        sb.append("            </modules>\n");
+        sb.append("        </profile>\n");
+        sb.append("        <profile>\n");
+        sb.append("            <!-- each module writes its summary fragment, use with -Dosgi-report.fragments=true -->\n");
+        sb.append("            <id>fragments</id>\n");
+        sb.append("            <build>\n");
+        sb.append("                <plugins>\n");
+        sb.append("                    <plugin>\n");
+        sb.append("                        <groupId>org.ops4j.tools.maven</groupId>\n");
+        sb.append("                        <artifactId>osgi-report-maven-plugin</artifactId>\n");
+        sb.append("                        <version>${osgi-report.version}</version>\n");
+        sb.append("                        <executions>\n");
+        sb.append("                            <execution>\n");
+        sb.append("                                <goals>\n");
+        sb.append("                                    <goal>manifest-fragment</goal>\n");
+        sb.append("                                </goals>\n");
+        sb.append("                            </execution>\n");
+        sb.append("                        </executions>\n");
+        sb.append("                    </plugin>\n");
+        sb.append("                </plugins>\n");
+        sb.append("            </build>\n");
+        sb.append("        </profile>\n");
+        sb.append("    </profiles>\n\n");
+        sb.append("</project>\n");
+        write(new File(directory, "pom.xml"), sb.toString());
+    }
+
+    private static void writeGroup(File directory, String group, List<String> modules) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(header());
+        sb.append(parent("scale-root", ".."));
+        sb.append("    <artifactId>scale-" + group + "</artifactId>\n");
+        sb.append("    <packaging>pom</packaging>\n\n");
+        sb.append("    <modules>\n");
+        for (String module : modules) {
+            sb.append("        <module>" + module + "</module>\n");
+        }
+        sb.append("    </modules>\n\n");
+        sb.append("</project>\n");
+        write(new File(directory, group + "/pom.xml"), sb.toString());
+    }
+
+    private static void writeModule(File directory, String group, int index, TreeSet<Integer> dependencies)
+            throws IOException {
+        String pkg = "org.ops4j.scale.m" + index;
+        StringBuilder imports = new StringBuilder("org.osgi.framework;version=\"[1.8,2)\"");
+        StringBuilder uses = new StringBuilder();
+        StringBuilder sb = new StringBuilder();
+        sb.append(header());
+        sb.append(parent("scale-" + group, ".."));
+        sb.append("    <artifactId>scale-module-" + index + "</artifactId>\n");
+        sb.append("    <packaging>jar</packaging>\n\n");
+        sb.append("    <dependencies>\n");
+        for (int d : dependencies) {
+            sb.append("        <dependency>\n");
+            sb.append("            <groupId>" + GROUP_ID + "</groupId>\n");
+            sb.append("            <artifactId>scale-module-" + d + "</artifactId>\n");
+            sb.append("            <version>" + VERSION + "</version>\n");
+            sb.append("        </dependency>\n");
+            imports.append(",org.ops4j.scale.m" + d + ";version=\"[1.0,2)\"");
+            uses.append(uses.length() == 0 ? "" : ",").append("org.ops4j.scale.m" + d);
+        }
+        sb.append("    </dependencies>\n\n");
+        sb.append("    <build>\n");
+        sb.append("        <plugins>\n");
+        sb.append("            <plugin>\n");
+        sb.append("                <artifactId>maven-jar-plugin</artifactId>\n");
+        sb.append("                <configuration>\n");
+        sb.append("                    <archive>\n");
+        sb.append("                        <manifestEntries>\n");
+        sb.append("                            <Bundle-ManifestVersion>2</Bundle-ManifestVersion>\n");
+        sb.append("                            <Bundle-SymbolicName>" + pkg + "</Bundle-SymbolicName>\n");
+        sb.append("                            <Bundle-Version>1.0.0.SNAPSHOT</Bundle-Version>\n");
+        sb.append("                            <Bundle-Name>Scale module " + index + "</Bundle-Name>\n");
+        sb.append("                            <Export-Package>" + xml(pkg + ";version=\"1.0.0\""
+                + (uses.length() == 0 ? "" : ";uses:=\"" + uses + "\"")) + "</Export-Package>\n");
+        sb.append("                            <Import-Package>" + xml(imports.toString()) + "</Import-Package>\n");
+        sb.append("                            <Require-Capability>" + xml("osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.8))\"")
+                + "</Require-Capability>\n");
+        sb.append("                        </manifestEntries>\n");
+        sb.append("                    </archive>\n");
+        sb.append("                </configuration>\n");
+        sb.append("            </plugin>\n");
+        sb.append("        </plugins>\n");
+        sb.append("    </build>\n\n");
+        sb.append("</project>\n");
+        write(new File(directory, "pom.xml"), sb.toString());
+
+        StringBuilder java = new StringBuilder();
+        java.append("package " + pkg + ";\n\n");
+        java.append("public class Service" + index + " {\n");
+        for (int d : dependencies) {
+            java.append("    private org.ops4j.scale.m" + d + ".Service" + d + " s" + d + ";\n");
+        }
+        java.append("}\n");
+        write(new File(directory, "src/main/java/" + pkg.replace('.', '/') + "/Service" + index + ".java"), java.toString());
+    }
+
+    private static void writeReport(File directory) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(header());
+        sb.append(parent("scale-root", ".."));
+        sb.append("    <artifactId>scale-report</artifactId>\n");
+        sb.append("    <packaging>pom</packaging>\n\n");
+        sb.append("    <build>\n");
+        sb.append("        <plugins>\n");
+        sb.append("            <plugin>\n");
+        sb.append("                <groupId>org.ops4j.tools.maven</groupId>\n");
+        sb.append("                <artifactId>osgi-report-maven-plugin</artifactId>\n");
+        sb.append("                <version>${osgi-report.version}</version>\n");
+        sb.append("                <extensions>true</extensions>\n");
+        sb.append("                <executions>\n");
+        sb.append("                    <execution>\n");
+        sb.append("                        <id>default-manifest-summary</id>\n");
+        sb.append("                        <goals>\n");
+        sb.append("                            <goal>manifest-summary</goal>\n");
+        sb.append("                        </goals>\n");
+        sb.append("                        <configuration>\n");
+        sb.append("                            <separateReports>${project.build.directory}/reports</separateReports>\n");
+        sb.append("                        </configuration>\n");
+        sb.append("                    </execution>\n");
+        sb.append("                </executions>\n");
+        sb.append("            </plugin>\n");
+        sb.append("        </plugins>\n");
+        sb.append("    </build>\n\n");
+        sb.append("</project>\n");
+        write(new File(directory, "pom.xml"), sb.toString());
+    }
+
+    /**
+     * Version of {@code osgi-report-maven-plugin} on the classpath of the benchmarks
+     * @return
+     */
+    static String pluginVersion() throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = LargeReactor.class.getResourceAsStream(PLUGIN_POM_PROPERTIES)) {
+            if (is == null) {
+                throw new IOException("Can't find " + PLUGIN_POM_PROPERTIES + ", please specify plugin version");
+            }
+            properties.load(is);
+        }
+        return properties.getProperty("version");
+    }
+
+    private static String header() {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<project xmlns=\"http://maven.apache.org/POM/4.0.0\" xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\""
+                + " xsi:schemaLocation=\"http://maven.apache.org/POM/4.0.0 http://maven.apache.org/maven-v4_0_0.xsd\">\n\n"
+                + "    <modelVersion>4.0.0</modelVersion>\n\n";
+    }
+
+    private static String parent(String artifactId, String relativePath) {
+        return "    <parent>\n"
+                + "        <groupId>" + GROUP_ID + "</groupId>\n"
+                + "        <artifactId>" + artifactId + "</artifactId>\n"
+                + "        <version>" + VERSION + "</version>\n"
+                + "        <relativePath>" + relativePath + "</relativePath>\n"
+                + "    </parent>\n\n";
+    }
+
+    private static String plugin(String artifactId, String version) {
+        return "                <plugin>\n"
+                + "                    <artifactId>" + artifactId + "</artifactId>\n"
+                + "                    <version>" + version + "</version>\n"
+                + "                </plugin>\n";
+    }
+
+    private static String xml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Manifest;
+
+import org.ops4j.tools.maven.osgireport.HeaderCache;
+import org.ops4j.tools.maven.osgireport.JsonSummary;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+import org.ops4j.tools.maven.osgireport.ManifestReader;
+import org.ops4j.tools.maven.osgireport.SectionFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * <p>Throughput of the stages of {@code manifest-summary} for single bundle (one operation is one bundle,
+ * bundles are taken in turns from a set of {@link SyntheticBundles}):<ul>
+ *     <li>{@code collect} - opening the jar and reading its manifest with {@link ManifestReader},</li>
+ *     <li>{@code parse} - parsing manifest headers into clauses with empty {@link HeaderCache},</li>
+ *     <li>{@code parseShared} - the same with {@link HeaderCache} shared by all bundles (like in the mojo),</li>
+ *     <li>{@code render} - formatting text section with {@link SectionFormatter},</li>
+ *     <li>{@code renderJson} - formatting NDJSON record with {@link JsonSummary}.</li>
+ * </ul></p>
+ * <p>Run with {@code java -jar target/benchmarks.jar -prof gc} to get allocation rate
+ * ({@code gc.alloc.rate.norm} is the number of bytes allocated per bundle).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ManifestBenchmark {
+
+    @Param({ "100" })
+    public int bundles;
+
+    @Param({ "20", "300" })
+    public int imports;
+
+    @Param({ "10" })
+    public int exports;
+
+    @Param({ "30" })
+    public int uses;
+
+    @Param({ "10" })
+    public int capabilities;
+
+    private File directory;
+    private final List<File> jars = new ArrayList<>();
+    private final List<Manifest> manifests = new ArrayList<>();
+    private final List<ManifestHeaders> headers = new ArrayList<>();
+    private final List<String> keys = new ArrayList<>();
+    private HeaderCache sharedCache;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("osgi-report-benchmark").toFile();
+        Random random = new Random(42L);
+        for (int i = 0; i < bundles; i++) {
+            Manifest manifest = SyntheticBundles.manifest(i, imports, exports, uses, capabilities, random);
+            File jar = new File(directory, "bundle" + i + ".jar");
+            SyntheticBundles.jar(jar, manifest, 20);
+            jars.add(jar);
+            manifests.add(manifest);
+            headers.add(ManifestHeaders.parse(manifest, new HeaderCache()));
+            keys.add("org.ops4j.synthetic:bundle" + i + ":jar:1.0.0-SNAPSHOT");
+        }
+        sharedCache = new HeaderCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File jar : jars) {
+            jar.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public ManifestHeaders collect() throws IOException {
+        // new reader, so its per-file cache doesn't hide reading
+        return new ManifestReader().headers(jars.get(next()));
+    }
+
+    @Benchmark
+    public ManifestHeaders parse() {
+        return ManifestHeaders.parse(manifests.get(next()), new HeaderCache());
+    }
+
+    @Benchmark
+    public ManifestHeaders parseShared() {
+        return ManifestHeaders.parse(manifests.get(next()), sharedCache);
+    }
+
+    @Benchmark
+    public String render() {
+        int i = next();
+        return SectionFormatter.section(keys.get(i), headers.get(i));
+    }
+
+    @Benchmark
+    public String renderJson() throws IOException {
+        int i = next();
+        Map<String, String> properties = Collections.singletonMap("artifact", keys.get(i));
+        return JsonSummary.record(properties, headers.get(i));
+    }
+
+    private int next() {
+        int i = next;
+        next = (i + 1) % bundles;
+        return i;
+    }
+
+}
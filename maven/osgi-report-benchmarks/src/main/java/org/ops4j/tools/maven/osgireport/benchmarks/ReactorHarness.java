@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * <p>Builds reactors generated by {@link LargeReactor} with and without the plugin and records wall-clock
+ * time and heap usage of the whole Maven process, to see whether the overhead of the plugin grows linearly
+ * with number of modules and how much it costs with {@code -T}.</p>
+ * <p>Scenarios (each for every size and number of threads):<ul>
+ *     <li>{@code baseline} - {@code mvn install} of the bundle modules only,</li>
+ *     <li>{@code report} - with {@code -Preport}: {@code ReactorSorter} extension and {@code manifest-summary},</li>
+ *     <li>{@code fragments} - the same with {@code manifest-fragment} in each module and merged summary.</li>
+ * </ul>Before measuring, each reactor is built once, so measured builds don't compile anything. Heap is taken
+ * from {@code -verbose:gc} output of Maven JVM (peak used heap before collection and peak committed heap).
+ * Results are printed as a table and written to {@code <directory>/results.csv}.</p>
+ * <p>Usage: {@code ReactorHarness <directory> [sizes] [threads] [runs] [mvn]}, e.g.
+ * {@code ReactorHarness /tmp/scale 250,500,1000,2000 1,4 3}. With more runs, the fastest one is taken.</p>
+ */
+public final class ReactorHarness {
+
+    private static final String[][] SCENARIOS = new String[][] {
+            { "baseline" },
+            { "report", "-Preport" },
+            { "fragments", "-Preport,fragments", "-Dosgi-report.fragments=true" }
+    };
+
+    /** {@code 1234K->567K(8901K)}, both JDK 8 and unified logging formats */
+    private static final Pattern GC = Pattern.compile("(\\d+)([KMG])->(\\d+)([KMG])\\((\\d+)([KMG])\\)");
+
+    private ReactorHarness() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ReactorHarness <directory> [sizes] [threads] [runs] [mvn]");
+            System.exit(1);
+        }
+        File directory = new File(args[0]);
+        int[] sizes = ints(args.length > 1 ? args[1] : "250,500,1000,2000");
+        int[] threads = ints(args.length > 2 ? args[2] : "1,4");
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        String mvn = args.length > 4 ? args[4] : "mvn";
+        String pluginVersion = LargeReactor.pluginVersion();
+
+        List<Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            File reactor = new File(directory, "reactor-" + size);
+            if (!new File(reactor, "pom.xml").isFile()) {
+                LargeReactor.generate(reactor, size, 100, pluginVersion);
+            }
+            // compile and install everything once, so measured builds do the same work
+            build(mvn, reactor, 1, SCENARIOS[SCENARIOS.length - 1]);
+            Map<Integer, Result> baselines = new HashMap<>();
+            for (int t : threads) {
+                for (String[] scenario : SCENARIOS) {
+                    Result best = null;
+                    for (int r = 0; r < runs; r++) {
+                        Result result = build(mvn, reactor, t, scenario);
+                        if (best == null || result.wall < best.wall) {
+                            best = result;
+                        }
+                    }
+                    best.size = size;
+                    if (baselines.containsKey(t)) {
+                        best.baseline = baselines.get(t).wall;
+                    } else {
+                        baselines.put(t, best);
+                        best.baseline = best.wall;
+                    }
+                    results.add(best);
+                    System.out.println(best.row());
+                }
+            }
+        }
+
+        System.out.println();
+        System.out.println(Result.HEADER);
+        for (Result result : results) {
+            System.out.println(result.row());
+        }
+        File csv = new File(directory, "results.csv");
+        try (PrintWriter pw = new PrintWriter(new OutputStreamWriter(new FileOutputStream(csv), StandardCharsets.UTF_8))) {
+            pw.println("modules,scenario,threads,wallMs,overheadMs,overheadPerModuleMs,peakHeapMb,committedHeapMb");
+            for (Result result : results) {
+                pw.println(result.csv());
+            }
+        }
+        System.out.println("Results written to " + csv);
+    }
+
+    /**
+     * Runs single build of the reactor
+     * @param mvn Maven command
+     * @param reactor
+     * @param threads
+     * @param scenario name followed by additional Maven arguments
+     * @return
+     */
+    private static Result build(String mvn, File reactor, int threads, String[] scenario)
+            throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(mvn, "-B", "-o", "-q", "install", "-DskipTests"));
+        command.addAll(Arrays.asList(scenario).subList(1, scenario.length));
+        if (threads > 1) {
+            command.add("-T");
+            command.add(Integer.toString(threads));
+        }
+        ProcessBuilder pb = new ProcessBuilder(command).directory(reactor).redirectErrorStream(true);
+        String opts = pb.environment().get("MAVEN_OPTS");
+        pb.environment().put("MAVEN_OPTS", (opts == null ? "" : opts + " ") + "-verbose:gc");
+
+        Result result = new Result(scenario[0], threads);
+        Deque<String> tail = new ArrayDeque<>();
+        long start = System.nanoTime();
+        Process process = pb.start();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Matcher m = GC.matcher(line);
+                if (m.find()) {
+                    result.peak = Math.max(result.peak, kb(m.group(1), m.group(2)));
+                    result.committed = Math.max(result.committed, kb(m.group(5), m.group(6)));
+                } else {
+                    tail.add(line);
+                    if (tail.size() > 50) {
+                        tail.removeFirst();
+                    }
+                }
+            }
+        }
+        int exit = process.waitFor();
+        result.wall = (System.nanoTime() - start) / 1_000_000L;
+        if (exit != 0) {
+            tail.forEach(System.err::println);
+            throw new IOException("Build of " + reactor + " (" + String.join(" ", command) + ") failed with exit code " + exit);
+        }
+        return result;
+    }
+
+    private static long kb(String value, String unit) {
+        long v = Long.parseLong(value);
+        switch (unit) {
+            case "G":
+                return v * 1024L * 1024L;
+            case "M":
+                return v * 1024L;
+            default:
+                return v;
+        }
+    }
+
+    private static int[] ints(String value) {
+        return Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+    }
+
+    /**
+     * Measurements of single build
+     */
+    private static class Result {
+
+        static final String HEADER = String.format("%8s %-10s %7s %10s %10s %12s %10s %10s",
+                "modules", "scenario", "threads", "wall ms", "overhead", "per module", "peak MB", "heap MB");
+
+        final String scenario;
+        final int threads;
+        int size;
+        long wall;
+        long baseline;
+        /** peak used heap in KB */
+        long peak;
+        /** peak committed heap in KB */
+        long committed;
+
+        Result(String scenario, int threads) {
+            this.scenario = scenario;
+            this.threads = threads;
+        }
+
+        String row() {
+            return String.format(Locale.ROOT, "%8d %-10s %7d %10d %10d %12.3f %10d %10d",
+                    size, scenario, threads, wall, wall - baseline, (wall - baseline) / (double) size,
+                    peak / 1024L, committed / 1024L);
+        }
+
+        String csv() {
+            return String.format(Locale.ROOT, "%d,%s,%d,%d,%d,%.3f,%d,%d",
+                    size, scenario, threads, wall, wall - baseline, (wall - baseline) / (double) size,
+                    peak / 1024L, committed / 1024L);
+        }
+
+    }
+
+}
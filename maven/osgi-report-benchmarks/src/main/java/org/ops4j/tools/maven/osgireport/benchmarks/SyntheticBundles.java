@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+
+/**
+ * <p>Generates manifests and jars resembling bundles of big reactors - long {@code Import-Package} with
+ * version ranges, {@code Export-Package} with long {@code uses} directives, services and extender
+ * capabilities and requirements. Packages are picked from a shared pool, so (like in real reactors) header
+ * values and package names repeat across bundles.</p>
+ * <p>Generation is deterministic for given seed.</p>
+ */
+public final class SyntheticBundles {
+
+    /** Number of distinct packages in the pool */
+    private static final int POOL = 2000;
+
+    private SyntheticBundles() {
+    }
+
+    /**
+     * Generates manifest of single bundle
+     * @param index number of the bundle
+     * @param imports number of imported packages
+     * @param exports number of exported packages
+     * @param uses number of packages in {@code uses} directive of each export
+     * @param capabilities number of provided and required capabilities
+     * @param random
+     * @return
+     */
+    public static Manifest manifest(int index, int imports, int exports, int uses, int capabilities, Random random) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        main.putValue("Bnd-LastModified", Long.toString(1580000000000L + index));
+        main.putValue("Build-Jdk", "1.8.0_242");
+        main.putValue("Built-By", "ops4j");
+        main.putValue("Bundle-Description", "Synthetic bundle number " + index + " generated for benchmarks");
+        main.putValue("Bundle-DocURL", "https://github.com/ops4j/org.ops4j.tools");
+        main.putValue("Bundle-License", "http://www.apache.org/licenses/LICENSE-2.0.txt");
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-Name", "OPS4J Synthetic Bundle " + index);
+        main.putValue("Bundle-SymbolicName", "org.ops4j.synthetic.bundle" + index);
+        main.putValue("Bundle-Vendor", "OPS4J");
+        main.putValue("Bundle-Version", "1." + (index % 10) + ".0.SNAPSHOT");
+        main.putValue("Created-By", "Apache Maven Bundle Plugin");
+        main.putValue("Tool", "Bnd-4.2.0.201903051501");
+
+        StringBuilder exportPackage = new StringBuilder();
+        for (int e = 0; e < exports; e++) {
+            append(exportPackage, "org.ops4j.synthetic.bundle" + index + ".api" + e + ";version=\"1." + (e % 5) + ".0\"");
+            exportPackage.append(";uses:=\"");
+            for (int u = 0; u < uses; u++) {
+                exportPackage.append(u == 0 ? "" : ",").append(pkg(random.nextInt(POOL)));
+            }
+            exportPackage.append("\"");
+        }
+        main.putValue("Export-Package", exportPackage.toString());
+
+        StringBuilder importPackage = new StringBuilder();
+        for (int i = 0; i < imports; i++) {
+            int p = random.nextInt(POOL);
+            append(importPackage, pkg(p) + ";version=\"[" + (p % 4) + "." + (p % 7) + "," + (p % 4 + 1) + ")\"");
+            if (p % 13 == 0) {
+                importPackage.append(";resolution:=optional");
+            }
+        }
+        main.putValue("Import-Package", importPackage.toString());
+
+        StringBuilder provide = new StringBuilder();
+        StringBuilder require = new StringBuilder();
+        for (int c = 0; c < capabilities; c++) {
+            append(provide, "osgi.service;objectClass:List<String>=\"org.ops4j.synthetic.bundle" + index + ".api"
+                    + (c % Math.max(1, exports)) + ".Service" + c + "\";uses:=\"org.ops4j.synthetic.bundle" + index
+                    + ".api" + (c % Math.max(1, exports)) + "\"");
+            append(require, "osgi.service;filter:=\"(objectClass=" + pkg(random.nextInt(POOL)) + ".Service"
+                    + c + ")\";effective:=active;resolution:=optional");
+        }
+        append(require, "osgi.extender;filter:=\"(&(osgi.extender=osgi.component)(version>=1.4.0)(!(version>=2.0.0)))\"");
+        append(require, "osgi.ee;filter:=\"(&(osgi.ee=JavaSE)(version=1.8))\"");
+        if (capabilities > 0) {
+            main.putValue("Provide-Capability", provide.toString());
+        }
+        main.putValue("Require-Capability", require.toString());
+        main.putValue("Service-Component", "OSGI-INF/org.ops4j.synthetic.bundle" + index + ".Component.xml");
+        return manifest;
+    }
+
+    /**
+     * Writes a jar with given manifest and a few class entries
+     * @param file
+     * @param manifest
+     * @param classes
+     */
+    public static void jar(File file, Manifest manifest, int classes) throws IOException {
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(file), manifest)) {
+            for (int c = 0; c < classes; c++) {
+                jos.putNextEntry(new ZipEntry("org/ops4j/synthetic/impl/Class" + c + ".class"));
+                jos.write(new byte[256 + c]);
+                jos.closeEntry();
+            }
+        }
+    }
+
+    private static String pkg(int p) {
+        return "org.ops4j.synthetic.lib" + (p / 100) + ".package" + (p % 100);
+    }
+
+    private static void append(StringBuilder sb, String clause) {
+        if (sb.length() > 0) {
+            sb.append(",");
+        }
+        sb.append(clause);
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// build.log contains output of all the builds
+def reused = new File(basedir, "build.log").readLines().findAll { it.contains("unchanged artifact(s)") }
+assert reused.size() == 2
+assert reused[0].contains("Reused 0 unchanged artifact(s), rendered 1 artifact(s)")
+assert reused[1].contains("Reused 1 unchanged artifact(s), rendered 0 artifact(s)")
+assert new File(basedir, "target/manifest-summary.idx").isFile()
+
+def summary = new File(basedir, "target/manifest-summary.txt")
+assert summary.readLines().findAll { it.startsWith("= ") } == [ "= org.osgi:osgi.core:jar:6.0.0" ]
+
+assert new File(basedir, "target/metrics.json").isFile()
+assert !new File(basedir, "target/osgi-report-metrics.json").exists()
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+def log = new File(basedir, "build.log").text
+// osgi-report.fragments is set only as project property of the report module
+assert log.contains("is merged from fragments, not adding dependencies")
+
+// written directly or, if the bundles were still being built, at the end of the build
+def summary = new File(basedir, "report/target/manifest-summary.txt")
+assert summary.isFile()
+def sections = summary.readLines().findAll { it.startsWith("= ") }
+assert sections == [
+        "= org.ops4j.tools.maven.it:osgi-report-multi-fragments-p1:bundle:0.1.2-SNAPSHOT",
+        "= org.ops4j.tools.maven.it:osgi-report-multi-fragments-p2:bundle:0.1.2-SNAPSHOT"
+]
+assert new File(basedir, "report/target/reports").isDirectory()
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.RepositoryUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.artifact.ArtifactTypeRegistry;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.graph.DependencyNode;
+import org.eclipse.aether.resolution.ArtifactRequest;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.util.artifact.ArtifactIdUtils;
+
+/**
+ * <p>Finds transitive dependencies of a project in two steps:</p>
+ * <ol>
+ *     <li>{@link #collect()} builds dependency graph (only POMs are read) and returns distinct artifacts
+ *     of selected scopes,</li>
+ *     <li>{@link #resolve(Artifact)} downloads single artifact, so distinct artifacts can be resolved
+ *     in parallel.</li>
+ * </ol>
+ */
+public class DependencyCollector {
+
+    private final RepositorySystem system;
+    private final RepositorySystemSession session;
+    private final MavenProject project;
+    private final Set<String> scopes;
+
+    public DependencyCollector(RepositorySystem system, RepositorySystemSession session, MavenProject project,
+                               Set<String> scopes) {
+        this.system = system;
+        this.session = session;
+        this.project = project;
+        this.scopes = scopes;
+    }
+
+    /**
+     * Collects dependency graph of the project and returns its distinct (by {@code groupId:artifactId:
+     * extension:classifier:version}) artifacts, which are not resolved yet. Dependencies of other scopes
+     * are skipped with their subtrees.
+     * @return
+     */
+    public List<Artifact> collect() throws DependencyCollectionException {
+        ArtifactTypeRegistry types = session.getArtifactTypeRegistry();
+        CollectRequest request = new CollectRequest();
+        request.setRootArtifact(RepositoryUtils.toArtifact(project.getArtifact()));
+        request.setRepositories(project.getRemoteProjectRepositories());
+        for (Dependency dependency : project.getDependencies()) {
+            request.addDependency(RepositoryUtils.toDependency(dependency, types));
+        }
+        if (project.getDependencyManagement() != null) {
+            for (Dependency dependency : project.getDependencyManagement().getDependencies()) {
+                request.addManagedDependency(RepositoryUtils.toDependency(dependency, types));
+            }
+        }
+        DependencyNode root = system.collectDependencies(session, request).getRoot();
+
+        Map<String, Artifact> distinct = new LinkedHashMap<>();
+        Set<DependencyNode> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DependencyNode> queue = new ArrayDeque<>(root.getChildren());
+        while (!queue.isEmpty()) {
+            DependencyNode node = queue.poll();
+            if (!visited.add(node) || node.getDependency() == null || !scopes.contains(node.getDependency().getScope())) {
+                continue;
+            }
+            distinct.putIfAbsent(ArtifactIdUtils.toId(node.getArtifact()), RepositoryUtils.toArtifact(node.getArtifact()));
+            queue.addAll(node.getChildren());
+        }
+        return new ArrayList<>(distinct.values());
+    }
+
+    /**
+     * Identifier of artifact's file - {@code groupId:artifactId:extension[:classifier]:version}, which doesn't
+     * depend on artifact type
+     * @param artifact
+     * @return
+     */
+    public static String id(Artifact artifact) {
+        return ArtifactIdUtils.toId(RepositoryUtils.toArtifact(artifact));
+    }
+
+    /**
+     * Resolves file of single artifact returned by {@link #collect()}
+     * @param artifact
+     * @return the same artifact, with file set
+     */
+    public Artifact resolve(Artifact artifact) throws ArtifactResolutionException {
+        ArtifactRequest request = new ArtifactRequest(RepositoryUtils.toArtifact(artifact),
+                project.getRemoteProjectRepositories(), null);
+        ArtifactResult result = system.resolveArtifact(session, request);
+        artifact.setFile(result.getArtifact().getFile());
+        artifact.setResolved(true);
+        return artifact;
+    }
+
+}
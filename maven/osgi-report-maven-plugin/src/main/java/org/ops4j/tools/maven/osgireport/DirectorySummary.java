@@ -0,0 +1,532 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>Summary of bundles in directory trees, without Maven - e.g. Karaf's {@code system/} repository,
+ * {@code deploy/} directory or an unpacked distribution. Uses the same formatting as {@link Summary}:</p>
+ * <pre>
+ * java -cp osgi-report-maven-plugin.jar:org.apache.felix.utils.jar:osgi.core.jar \
+ *     org.ops4j.tools.maven.osgireport.DirectorySummary [options] &lt;directory&gt;...
+ * </pre>
+ * <p>Directories are walked and {@code *.jar} files are read and formatted in parallel (using fork/join
+ * pool), sections are written in the order of their keys. Jars without {@code Bundle-SymbolicName} are
+ * skipped. Jars stored in Maven repository layout ({@code group/artifact/version/artifact-version.jar}) are
+ * identified by their coordinates (like in the report of the plugin), other jars by their path relative to
+ * given directory.</p>
+ * <p>With {@code --watch}, the directories are watched for changes and the reports are updated by
+ * {@link SummaryWatch}.</p>
+ * <p>Exit code is {@code 0} on success, {@code 1} for invalid arguments or when the report can't be written
+ * and {@code 2} when some of the jars can't be read.</p>
+ */
+public final class DirectorySummary {
+
+    private static final String USAGE = "Usage: DirectorySummary [options] <directory>...\n"
+            + "  -o, --output <file>   write the summary to a file instead of standard output\n"
+            + "  -j, --json <file>     also write NDJSON report\n"
+            + "      --html <dir>      also write HTML report\n"
+            + "      --index <file>    also write query index (see QueryTool)\n"
+            + "  -s, --separate <dir>  also write separate report of each bundle\n"
+            + "  -w, --watch           keep running and update the reports when jars change (requires --output)\n"
+            + "      --debounce <ms>   time without changes before the reports are updated (default: 500)\n"
+            + "  -t, --threads <n>     number of threads (default: number of processors)\n"
+            + "  -q, --quiet           don't print statistics to standard error\n";
+
+    private static final byte[] SECTION_SEPARATOR = "\n\n".getBytes(ReportWriter.CHARSET);
+
+    private static final Comparator<Entry> ENTRY_ORDER = Comparator.comparing(Entry::getKey).thenComparing(Entry::getFile);
+
+    private DirectorySummary() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.err));
+    }
+
+    /**
+     * Runs the summary with command line arguments
+     * @param args
+     * @param err stream for messages
+     * @return exit code
+     */
+    public static int run(String[] args, PrintStream err) {
+        File output = null;
+        File json = null;
+        File html = null;
+        File index = null;
+        File separate = null;
+        boolean watch = false;
+        long debounce = 500L;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean quiet = false;
+        List<Path> roots = new ArrayList<>();
+        try {
+            for (Iterator<String> it = Arrays.asList(args).iterator(); it.hasNext();) {
+                String arg = it.next();
+                switch (arg) {
+                    case "-o":
+                    case "--output":
+                        output = new File(value(it, arg));
+                        break;
+                    case "-j":
+                    case "--json":
+                        json = new File(value(it, arg));
+                        break;
+                    case "--html":
+                        html = new File(value(it, arg));
+                        break;
+                    case "--index":
+                        index = new File(value(it, arg));
+                        break;
+                    case "-s":
+                    case "--separate":
+                        separate = new File(value(it, arg));
+                        break;
+                    case "-w":
+                    case "--watch":
+                        watch = true;
+                        break;
+                    case "--debounce":
+                        debounce = Long.parseLong(value(it, arg));
+                        break;
+                    case "-t":
+                    case "--threads":
+                        threads = Integer.parseInt(value(it, arg));
+                        break;
+                    case "-q":
+                    case "--quiet":
+                        quiet = true;
+                        break;
+                    default:
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option " + arg);
+                        }
+                        roots.add(Paths.get(arg));
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.print(USAGE);
+            return 1;
+        }
+        if (roots.isEmpty() || threads < 1 || (watch && output == null)) {
+            err.print(USAGE);
+            return 1;
+        }
+        for (Path root : roots) {
+            if (!Files.isDirectory(root)) {
+                err.println(root + " is not a directory");
+                return 1;
+            }
+        }
+
+        Reports reports = new Reports(output, json, html, index, separate);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            if (watch) {
+                new SummaryWatch(roots, pool, reports, debounce, quiet ? null : err).run();
+                return 0;
+            }
+            long start = System.currentTimeMillis();
+            List<Entry> entries = scan(roots, pool, new HeaderCache());
+            int bundles = 0;
+            int errors = 0;
+            for (Entry e : entries) {
+                if (e.getError() != null) {
+                    err.println("Can't process " + e.getFile() + ": " + e.getError());
+                    errors++;
+                } else if (e.getText() != null) {
+                    bundles++;
+                    reports.separate(e);
+                }
+            }
+            reports.write(entries, pool);
+            if (!quiet) {
+                err.println("Summarized " + bundles + " bundle(s) of " + entries.size() + " jar(s) in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+            return errors > 0 ? 2 : 0;
+        } catch (IOException e) {
+            err.println("Can't write the summary: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static String value(Iterator<String> it, String option) {
+        if (!it.hasNext()) {
+            throw new IllegalArgumentException("Missing value of " + option);
+        }
+        return it.next();
+    }
+
+    /**
+     * Finds, reads and formats jars in given directories
+     * @param roots
+     * @param pool
+     * @param headerCache
+     * @return all found jars, see {@link #sort(Collection)}
+     */
+    public static List<Entry> scan(List<Path> roots, ForkJoinPool pool, HeaderCache headerCache) {
+        List<Entry> entries = new ArrayList<>();
+        for (Path root : roots) {
+            entries.addAll(pool.invoke(new Walk(root, root, headerCache)));
+        }
+        return sort(entries);
+    }
+
+    /**
+     * Sorts entries by their keys. If the same key is found in more directories, only first entry is kept.
+     * @param entries
+     * @return
+     */
+    public static List<Entry> sort(Collection<Entry> entries) {
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(ENTRY_ORDER);
+        List<Entry> result = new ArrayList<>(sorted.size());
+        for (Entry e : sorted) {
+            if (result.isEmpty() || !result.get(result.size() - 1).getKey().equals(e.getKey())) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads and formats single jar. The manifest is always read again, without {@link ManifestReader}'s caching.
+     * @param root
+     * @param file
+     * @param headerCache
+     * @return
+     */
+    public static Entry read(Path root, Path file, HeaderCache headerCache) {
+        Path relative = root.relativize(file);
+        String key = key(relative);
+        String path = relative.toString().replace(File.separatorChar, '/');
+        try {
+            ManifestHeaders headers = ManifestHeaders.parse(ManifestReader.load(file.toFile()), headerCache);
+            if (!headers.isBundle()) {
+                return new Entry(key, path, file, headers, null, null);
+            }
+            byte[] text = SectionFormatter.section(key, headers).getBytes(ReportWriter.CHARSET);
+            return new Entry(key, path, file, headers, text, null);
+        } catch (IOException | IllegalArgumentException e) {
+            return new Entry(key, path, file, ManifestHeaders.EMPTY, null, e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the file should be summarized
+     * @param file
+     * @return
+     */
+    public static boolean isJar(Path file) {
+        return file.getFileName().toString().endsWith(".jar") && Files.isRegularFile(file);
+    }
+
+    /**
+     * Identifies a jar by Maven coordinates ({@code groupId:artifactId:jar[:classifier]:version}) if it's stored
+     * in Maven repository layout, or by its path
+     * @param path path relative to the root directory
+     * @return
+     */
+    public static String key(Path path) {
+        int count = path.getNameCount();
+        String name = path.getFileName().toString();
+        if (count >= 4) {
+            String version = path.getName(count - 2).toString();
+            String artifactId = path.getName(count - 3).toString();
+            String prefix = artifactId + "-" + version;
+            if (name.startsWith(prefix) && (name.length() == prefix.length() + 4 || name.charAt(prefix.length()) == '-')) {
+                String classifier = name.substring(prefix.length(), name.length() - 4);
+                String groupId = path.subpath(0, count - 3).toString().replace(File.separatorChar, '.');
+                return groupId + ":" + artifactId + ":jar:" + (classifier.isEmpty() ? "" : classifier.substring(1) + ":") + version;
+            }
+        }
+        return path.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Reports written from summarized entries
+     */
+    public static class Reports {
+
+        private final File output;
+        private final File json;
+        private final File html;
+        private final File index;
+        private final File separate;
+
+        /**
+         * @param output summary file or {@code null} for standard output
+         * @param json optional NDJSON report
+         * @param html optional directory for HTML report
+         * @param index optional {@link QueryIndex}
+         * @param separate optional directory for separate reports
+         */
+        public Reports(File output, File json, File html, File index, File separate) {
+            this.output = output;
+            this.json = json;
+            this.html = html;
+            this.index = index;
+            this.separate = separate;
+        }
+
+        /**
+         * Writes sections of bundles to the summary (and JSON and HTML reports and query index). Files are
+         * replaced atomically, so they can be read at any time.
+         * @param entries sorted entries
+         * @param executor optional executor for rendering HTML report
+         */
+        public void write(List<Entry> entries, ExecutorService executor) throws IOException {
+            if (output == null) {
+                OutputStream out = new BufferedOutputStream(System.out, 256 * 1024);
+                for (Entry e : entries) {
+                    if (e.getText() != null) {
+                        out.write(e.getText());
+                        out.write(SECTION_SEPARATOR);
+                    }
+                }
+                out.flush();
+                if (System.out.checkError()) {
+                    throw new IOException("Can't write to standard output");
+                }
+            } else {
+                File tmp = temporary(output);
+                try (ReportWriter fw = new ReportWriter(tmp)) {
+                    for (Entry e : entries) {
+                        if (e.getText() != null) {
+                            fw.write(e.getText());
+                            fw.write(SECTION_SEPARATOR);
+                        }
+                    }
+                }
+                replace(tmp, output);
+            }
+            if (json != null) {
+                File tmp = temporary(json);
+                try (ReportWriter jw = new ReportWriter(tmp)) {
+                    for (Entry e : entries) {
+                        if (e.getText() != null) {
+                            Map<String, String> properties = new LinkedHashMap<>();
+                            properties.put("artifact", e.getKey());
+                            properties.put("file", e.getFile().toString());
+                            jw.write((JsonSummary.record(properties, e.getHeaders()) + "\n").getBytes(ReportWriter.CHARSET));
+                        }
+                    }
+                }
+                replace(tmp, json);
+            }
+            if (html != null) {
+                HtmlReport report = new HtmlReport(html);
+                for (Entry e : entries) {
+                    if (e.getText() != null) {
+                        report.add(e.getKey(), e.getHeaders());
+                    }
+                }
+                report.write(executor);
+            }
+            if (index != null) {
+                QueryIndex.Writer writer = new QueryIndex.Writer();
+                for (Entry e : entries) {
+                    if (e.getText() != null) {
+                        writer.add(e.getKey(), e.getHeaders());
+                    }
+                }
+                writer.write(index);
+            }
+        }
+
+        /**
+         * Writes separate report of a bundle (at its relative path with {@code .txt} extension) or removes it,
+         * if the entry is not a bundle
+         * @param entry
+         */
+        public void separate(Entry entry) throws IOException {
+            if (separate == null) {
+                return;
+            }
+            File file = new File(separate, entry.getPath() + ".txt");
+            if (entry.getText() == null) {
+                Files.deleteIfExists(file.toPath());
+            } else {
+                file.getParentFile().mkdirs();
+                ReportWriter.write(file, entry.getText());
+            }
+        }
+
+        /**
+         * Removes separate report of removed jar
+         * @param entry
+         */
+        public void remove(Entry entry) throws IOException {
+            if (separate != null) {
+                Files.deleteIfExists(new File(separate, entry.getPath() + ".txt").toPath());
+            }
+        }
+
+        private static File temporary(File file) {
+            File absolute = file.getAbsoluteFile();
+            absolute.getParentFile().mkdirs();
+            return new File(absolute.getParentFile(), "." + absolute.getName() + ".tmp");
+        }
+
+        private static void replace(File tmp, File file) throws IOException {
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+    }
+
+    /**
+     * Single jar found in the directories
+     */
+    public static class Entry {
+
+        private final String key;
+        private final String path;
+        private final Path file;
+        private final ManifestHeaders headers;
+        private final byte[] text;
+        private final String error;
+
+        Entry(String key, String path, Path file, ManifestHeaders headers, byte[] text, String error) {
+            this.key = key;
+            this.path = path;
+            this.file = file;
+            this.headers = headers;
+            this.text = text;
+            this.error = error;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Path relative to the directory in which the jar was found, with {@code /} separators
+         * @return
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+
+        public ManifestHeaders getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Formatted section
+         * @return {@code null} if the jar is not a bundle
+         */
+        public byte[] getText() {
+            return text;
+        }
+
+        /**
+         * Reason why the jar couldn't be read
+         * @return
+         */
+        public String getError() {
+            return error;
+        }
+
+    }
+
+    /**
+     * Lists single directory, forking walks of its subdirectories and reading of its jars
+     */
+    private static class Walk extends RecursiveTask<List<Entry>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path root;
+        private final Path directory;
+        private final HeaderCache headerCache;
+
+        Walk(Path root, Path directory, HeaderCache headerCache) {
+            this.root = root;
+            this.directory = directory;
+            this.headerCache = headerCache;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Walk> walks = new ArrayList<>();
+            List<ForkJoinTask<Entry>> reads = new ArrayList<>();
+            List<Entry> result = new ArrayList<>();
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+                for (Path path : paths) {
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        Walk walk = new Walk(root, path, headerCache);
+                        walk.fork();
+                        walks.add(walk);
+                    } else if (isJar(path)) {
+                        reads.add(ForkJoinTask.adapt(() -> read(root, path, headerCache)).fork());
+                    }
+                }
+            } catch (IOException e) {
+                Path relative = root.relativize(directory);
+                result.add(new Entry(key(relative), relative.toString(), directory, ManifestHeaders.EMPTY, null, e.getMessage()));
+            }
+            for (ForkJoinTask<Entry> read : reads) {
+                result.add(read.join());
+            }
+            for (Walk walk : walks) {
+                result.addAll(walk.join());
+            }
+            return result;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.slf4j.Logger;
+
+/**
+ * Writes report sections of the bundles produced by current module into its {@link SummaryFragment}. The goal
+ * runs independently in each module (in parallel with {@code -T}) and {@code manifest-summary} with
+ * {@code fragments} enabled only merges the fragments.
+ */
+@Mojo(name = "manifest-fragment", defaultPhase = LifecyclePhase.PACKAGE, threadSafe = true)
+public class Fragment extends AbstractMojo {
+
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject project;
+
+    @Parameter(defaultValue = "${project.build.directory}/" + SummaryFragment.FILE_NAME, readonly = true)
+    private File fragment;
+
+    @Component
+    private Logger logger;
+
+    @Override
+    public void execute() throws MojoExecutionException {
+        List<Artifact> artifacts = new ArrayList<>();
+        artifacts.add(project.getArtifact());
+        artifacts.addAll(project.getAttachedArtifacts());
+
+        ManifestReader manifests = new ManifestReader();
+        List<SummaryFragment.Section> sections = new ArrayList<>();
+        for (Artifact artifact : artifacts) {
+            if (artifact == null || artifact.getFile() == null || !artifact.getFile().isFile()) {
+                continue;
+            }
+            ManifestHeaders headers;
+            try {
+                headers = manifests.headers(artifact.getFile());
+            } catch (IOException e) {
+                logger.warn("Can't process {}: {}", artifact.toString(), e.getMessage());
+                continue;
+            }
+            if (headers.isBundle()) {
+                String key = artifact.toString();
+                sections.add(new SummaryFragment.Section(SummaryFragment.key(artifact), key,
+                        SectionFormatter.section(key, headers).getBytes(ReportWriter.CHARSET)));
+            }
+        }
+        sections.sort((s1, s2) -> SummaryFragment.KEY_ORDER.compare(s1.getKey(), s2.getKey()));
+
+        try {
+            // written even without bundles, so the aggregator doesn't merge stale sections
+            SummaryFragment.write(fragment, sections);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't write " + fragment + ": " + e.getMessage(), e);
+        }
+        logger.debug("Wrote {} section(s) to {}", sections.size(), fragment);
+    }
+
+}
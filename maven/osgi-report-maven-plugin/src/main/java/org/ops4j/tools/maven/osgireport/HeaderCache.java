@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+import org.apache.felix.utils.manifest.Parser;
+
+/**
+ * <p>Run-scoped cache of parsed header values. In a big reactor the same {@code Import-Package} clauses,
+ * package names and {@code uses} lists are repeated in many bundles, so:</p>
+ * <ul>
+ *     <li>identical header values are parsed (and sorted) only once and the resulting clauses are shared</li>
+ *     <li>identical {@code uses} directives are split (and sorted) only once</li>
+ *     <li>header, package, attribute and directive names and values are interned in a symbol table</li>
+ * </ul>
+ * <p>Returned arrays are shared between bundles, so they must not be modified.</p>
+ */
+public class HeaderCache {
+
+    private final Map<String, String> symbols = new ConcurrentHashMap<>();
+    private final Map<String, Clause[]> clauses = new ConcurrentHashMap<>();
+    private final Map<String, String[]> uses = new ConcurrentHashMap<>();
+
+    /**
+     * Returns canonical instance of given string
+     * @param value
+     * @return
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String existing = symbols.putIfAbsent(value, value);
+        return existing == null ? value : existing;
+    }
+
+    /**
+     * Returns parsed and sorted (see {@link ManifestHeaders#sort(Clause[])}) clauses of given header value.
+     * @param value
+     * @return
+     */
+    public Clause[] parse(String value) {
+        Clause[] result = clauses.get(value);
+        if (result == null) {
+            result = share(value, ManifestHeaders.sort(Parser.parseHeader(value)));
+        }
+        return result;
+    }
+
+    /**
+     * Registers clauses of given header value parsed elsewhere (e.g., taken from {@link ManifestCache}).
+     * If the same value was already parsed, previously registered clauses are returned.
+     * @param value
+     * @param parsed
+     * @return
+     */
+    public Clause[] share(String value, Clause[] parsed) {
+        Clause[] result = clauses.get(value);
+        if (result == null) {
+            Clause[] interned = new Clause[parsed.length];
+            for (int i = 0; i < parsed.length; i++) {
+                interned[i] = intern(parsed[i]);
+            }
+            result = clauses.putIfAbsent(intern(value), interned);
+            if (result == null) {
+                result = interned;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns sorted package names of {@code uses} directive value.
+     * @param value
+     * @return
+     */
+    public String[] uses(String value) {
+        String[] result = uses.get(value);
+        if (result == null) {
+            String[] pkgs = ManifestHeaders.uses(value);
+            for (int i = 0; i < pkgs.length; i++) {
+                pkgs[i] = intern(pkgs[i]);
+            }
+            result = uses.putIfAbsent(intern(value), pkgs);
+            if (result == null) {
+                result = pkgs;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of distinct header values parsed so far
+     * @return
+     */
+    public int getParsedCount() {
+        return clauses.size();
+    }
+
+    /**
+     * Number of distinct symbols
+     * @return
+     */
+    public int getSymbolCount() {
+        return symbols.size();
+    }
+
+    private Clause intern(Clause clause) {
+        Attribute[] attributes = clause.getAttributes();
+        Attribute[] interned = new Attribute[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            interned[i] = new Attribute(intern(attributes[i].getName()), intern(attributes[i].getValue()));
+        }
+        Directive[] directives = clause.getDirectives();
+        Directive[] internedDirectives = new Directive[directives.length];
+        for (int i = 0; i < directives.length; i++) {
+            internedDirectives[i] = new Directive(intern(directives[i].getName()), intern(directives[i].getValue()));
+        }
+        return new Clause(intern(clause.getName()), internedDirectives, interned);
+    }
+
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+import org.apache.felix.utils.json.JSONWriter;
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+import org.apache.felix.utils.version.VersionRange;
+import org.ops4j.tools.maven.osgireport.analysis.BundleDescriptor;
+import org.osgi.framework.Version;
+
+/**
+ * <p>Static HTML variant of the summary, which can be browsed without a server:</p>
+ * <pre>
+ * index.html              (list of artifacts and search form)
+ * index.js                (search index of artifacts, packages and capabilities)
+ * report.css, search.js
+ * bundles/&lt;artifact&gt;.html (one page per artifact)
+ * </pre>
+ * <p>Headers are grouped the same way as in the text report. Imported packages link to the pages of
+ * the bundles exporting them in matching version, {@code Require-Bundle} clauses link to the bundles with
+ * given symbolic name. Search index is a script (not a JSON file), so it's also loaded
+ * from {@code file:} URLs.</p>
+ * <p>Pages are rendered in parallel and a file is only written if its content differs from existing file,
+ * so regenerating the report doesn't touch pages of unchanged artifacts. Pages of artifacts which are no longer
+ * summarized are removed. Nested archives are not included.</p>
+ */
+public class HtmlReport {
+
+    private static final String RESOURCES = "/org/ops4j/tools/maven/osgireport/html/";
+    private static final String[] STATIC_FILES = new String[] { "report.css", "search.js" };
+    private static final String BUNDLES = "bundles";
+
+    private final File directory;
+    private final List<Page> pages = new ArrayList<>();
+    /** package &rarr; exports */
+    private final Map<String, List<Export>> exports = new HashMap<>();
+    /** symbolic name &rarr; pages */
+    private final Map<String, List<Page>> symbolicNames = new HashMap<>();
+
+    private int written;
+    private int unchanged;
+    private int removed;
+
+    public HtmlReport(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Adds an artifact to the report. Artifacts are listed in the order of adding.
+     * @param id artifact identifier (like the {@code = id} line of the text report)
+     * @param headers
+     */
+    public void add(String id, ManifestHeaders headers) {
+        BundleDescriptor bundle = new BundleDescriptor(id, headers);
+        Page page = new Page(pages.size(), id, page(id), bundle, headers);
+        pages.add(page);
+        if (bundle.getSymbolicName() != null) {
+            symbolicNames.computeIfAbsent(bundle.getSymbolicName(), n -> new ArrayList<>(1)).add(page);
+        }
+        for (Clause c : headers.getClauses("Export-Package")) {
+            String v = c.getAttribute("version");
+            Version version = BundleDescriptor.version(v == null ? c.getAttribute("specification-version") : v);
+            exports.computeIfAbsent(c.getName(), n -> new ArrayList<>(1)).add(new Export(page, version));
+        }
+    }
+
+    /**
+     * Writes all changed files of the report
+     * @param executor optional executor used to render and write pages in parallel
+     */
+    public void write(ExecutorService executor) throws IOException {
+        File bundles = new File(directory, BUNDLES);
+        bundles.mkdirs();
+
+        List<FutureTask<Boolean>> tasks = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            FutureTask<Boolean> task = new FutureTask<>(() -> write(new File(bundles, page.file), render(page)));
+            if (executor != null) {
+                executor.execute(task);
+            }
+            tasks.add(task);
+        }
+
+        for (String name : STATIC_FILES) {
+            write(new File(directory, name), resource(name));
+        }
+        write(new File(directory, "index.js"), searchIndex());
+        write(new File(directory, "index.html"), index());
+
+        for (FutureTask<Boolean> task : tasks) {
+            get(task);
+        }
+
+        Set<String> files = new HashSet<>();
+        for (Page page : pages) {
+            files.add(page.file);
+        }
+        String[] existing = bundles.list();
+        for (String name : existing == null ? new String[0] : existing) {
+            if (name.endsWith(".html") && !files.contains(name) && new File(bundles, name).delete()) {
+                removed++;
+            }
+        }
+    }
+
+    /**
+     * Number of files written by {@link #write(ExecutorService)}
+     * @return
+     */
+    public synchronized int getWritten() {
+        return written;
+    }
+
+    /**
+     * Number of files which were already up to date
+     * @return
+     */
+    public synchronized int getUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Number of removed pages of artifacts which are no longer summarized
+     * @return
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * File name of the page of given artifact. Characters other than letters, digits, dots and dashes are
+     * replaced by {@code _xx} (hex value of UTF-8 bytes), so distinct identifiers give distinct names.
+     * @param id
+     * @return
+     */
+    public static String page(String id) {
+        StringBuilder sb = new StringBuilder(id.length() + 16);
+        for (byte b : id.getBytes(ReportWriter.CHARSET)) {
+            if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '.' || b == '-') {
+                sb.append((char) b);
+            } else {
+                sb.append('_').append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        }
+        return sb.append(".html").toString();
+    }
+
+    /**
+     * Renders page of single artifact
+     * @param page
+     * @return
+     */
+    private byte[] render(Page page) {
+        Map<String, String> general = new TreeMap<>();
+        Map<String, String> bundle = new TreeMap<>();
+        Map<ManifestHeaders.Group, List<String>> clauseHeaders = new HashMap<>();
+        for (Map.Entry<String, String> e : page.headers.getHeaders().entrySet()) {
+            if (e.getValue() == null) {
+                continue;
+            }
+            ManifestHeaders.Group group = ManifestHeaders.group(e.getKey());
+            if (group == ManifestHeaders.Group.BUNDLE) {
+                bundle.put(e.getKey(), e.getValue());
+            } else if (group.hasClauses()) {
+                clauseHeaders.computeIfAbsent(group, g -> new ArrayList<>()).add(e.getKey());
+            } else {
+                general.put(e.getKey(), e.getValue());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(8192);
+        header(sb, page.id, "../");
+        sb.append("<p class=\"nav\"><a href=\"../index.html\">Manifest summary</a></p>\n");
+        sb.append("<h1>").append(esc(page.id)).append("</h1>\n");
+        attributes(sb, "General attributes", general);
+        attributes(sb, "Bundle attributes", bundle);
+        clauses(sb, page, "Service attributes", clauseHeaders.get(ManifestHeaders.Group.SERVICE));
+        clauses(sb, page, "Capabilities attributes", clauseHeaders.get(ManifestHeaders.Group.CAPABILITY));
+        clauses(sb, page, "Package attributes", clauseHeaders.get(ManifestHeaders.Group.PACKAGE));
+        sb.append("</body>\n</html>\n");
+        return sb.toString().getBytes(ReportWriter.CHARSET);
+    }
+
+    private void attributes(StringBuilder sb, String title, Map<String, String> headers) {
+        sb.append("<h2>").append(title).append("</h2>\n");
+        if (headers.isEmpty()) {
+            return;
+        }
+        sb.append("<table>\n");
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            sb.append("<tr><th>").append(esc(e.getKey())).append("</th><td>").append(esc(e.getValue())).append("</td></tr>\n");
+        }
+        sb.append("</table>\n");
+    }
+
+    private void clauses(StringBuilder sb, Page page, String title, List<String> headers) {
+        sb.append("<h2>").append(title).append("</h2>\n");
+        if (headers == null) {
+            return;
+        }
+        for (String header : headers) {
+            sb.append("<h3>").append(esc(header)).append("</h3>\n<ul class=\"clauses\">\n");
+            for (Clause c : page.headers.getClauses(header)) {
+                sb.append("<li");
+                if ("Export-Package".equals(header)) {
+                    sb.append(" id=\"export-").append(esc(c.getName())).append("\"");
+                }
+                sb.append("><code>").append(esc(c.getName())).append("</code>");
+                links(sb, header, c);
+                if (c.getAttributes().length > 0 || c.getDirectives().length > 0) {
+                    sb.append("\n<dl>");
+                    for (Attribute a : c.getAttributes()) {
+                        sb.append("<dt>").append(esc(a.getName())).append(" =</dt><dd>").append(esc(a.getValue())).append("</dd>");
+                    }
+                    for (Directive d : c.getDirectives()) {
+                        sb.append("<dt>").append(esc(d.getName())).append(" :=</dt><dd>");
+                        if ("uses".equals(d.getName())) {
+                            for (String pkg : page.headers.getUses(d.getValue())) {
+                                sb.append("<code>").append(esc(pkg)).append("</code> ");
+                            }
+                        } else {
+                            sb.append(esc(d.getValue()));
+                        }
+                        sb.append("</dd>");
+                    }
+                    sb.append("</dl>");
+                }
+                sb.append("</li>\n");
+            }
+            sb.append("</ul>\n");
+        }
+    }
+
+    /**
+     * Appends links from a requirement to the artifacts satisfying it
+     * @param sb
+     * @param header
+     * @param clause
+     */
+    private void links(StringBuilder sb, String header, Clause clause) {
+        List<String> links = new ArrayList<>(1);
+        if ("Import-Package".equals(header)) {
+            VersionRange range = range(clause.getAttribute("version"), clause.getAttribute("specification-version"));
+            for (Export e : exports.getOrDefault(clause.getName(), new ArrayList<>())) {
+                if (range == null || range.contains(e.version)) {
+                    links.add("<a href=\"" + e.page.file + "#export-" + esc(clause.getName()) + "\">" + esc(e.page.id)
+                            + "</a> " + e.version);
+                }
+            }
+        } else if ("Require-Bundle".equals(header)) {
+            VersionRange range = range(clause.getAttribute("bundle-version"), null);
+            for (Page p : symbolicNames.getOrDefault(clause.getName(), new ArrayList<>())) {
+                if (range == null || range.contains(p.bundle.getVersion())) {
+                    links.add("<a href=\"" + p.file + "\">" + esc(p.id) + "</a>");
+                }
+            }
+        }
+        if (!links.isEmpty()) {
+            sb.append(" <span class=\"provider\">&rarr; ").append(String.join(", ", links)).append("</span>");
+        }
+    }
+
+    private static VersionRange range(String value, String fallback) {
+        String v = value == null ? fallback : value;
+        if (v == null) {
+            return null;
+        }
+        try {
+            return VersionRange.parseVersionRange(v.trim());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private byte[] index() {
+        StringBuilder sb = new StringBuilder(128 * pages.size() + 1024);
+        header(sb, "Manifest summary", "");
+        sb.append("<h1>Manifest summary</h1>\n");
+        sb.append("<p><input id=\"search\" type=\"search\" placeholder=\"Search artifacts, packages and capabilities\""
+                + " autofocus></p>\n");
+        sb.append("<div id=\"results\"></div>\n");
+        sb.append("<h2>Artifacts (").append(pages.size()).append(")</h2>\n<table id=\"artifacts\">\n");
+        sb.append("<tr><th>Artifact</th><th>Bundle-SymbolicName</th><th>Bundle-Version</th></tr>\n");
+        for (Page page : pages) {
+            sb.append("<tr><td><a href=\"").append(BUNDLES).append("/").append(page.file).append("\">")
+                    .append(esc(page.id)).append("</a></td><td>")
+                    .append(page.bundle.getSymbolicName() == null ? "" : esc(page.bundle.getSymbolicName()))
+                    .append("</td><td>").append(page.bundle.getSymbolicName() == null ? "" : page.bundle.getVersion())
+                    .append("</td></tr>\n");
+        }
+        sb.append("</table>\n");
+        sb.append("<script src=\"index.js\"></script>\n<script src=\"search.js\"></script>\n");
+        sb.append("</body>\n</html>\n");
+        return sb.toString().getBytes(ReportWriter.CHARSET);
+    }
+
+    /**
+     * <p>Renders search index as a script assigning {@code OSGI_REPORT} variable:<pre>
+     * {
+     *   "bundles": [ [ "artifact", "symbolic name", "version", "page" ], ... ],
+     *   "packages": [ [ "package", [ [ exporter, "version" ], ... ], [ importer, ... ] ], ... ],
+     *   "capabilities": [ [ "namespace", [ provider, ... ], [ requirer, ... ] ], ... ]
+     * }
+     * </pre>Bundles are referenced by their position in {@code bundles}, packages and capabilities are
+     * sorted.</p>
+     * @return
+     */
+    private byte[] searchIndex() throws IOException {
+        Map<String, Set<Integer>> importers = new HashMap<>();
+        Map<String, Set<Integer>> providers = new HashMap<>();
+        Map<String, Set<Integer>> requirers = new HashMap<>();
+        for (Page page : pages) {
+            for (Clause c : page.headers.getClauses("Import-Package")) {
+                importers.computeIfAbsent(c.getName(), n -> new TreeSet<>()).add(page.index);
+            }
+            for (Clause c : page.headers.getClauses("Provide-Capability")) {
+                providers.computeIfAbsent(c.getName(), n -> new TreeSet<>()).add(page.index);
+            }
+            for (Clause c : page.headers.getClauses("Require-Capability")) {
+                requirers.computeIfAbsent(c.getName(), n -> new TreeSet<>()).add(page.index);
+            }
+        }
+        Set<String> packages = new TreeSet<>(exports.keySet());
+        packages.addAll(importers.keySet());
+        Set<String> namespaces = new TreeSet<>(providers.keySet());
+        namespaces.addAll(requirers.keySet());
+
+        StringWriter sw = new StringWriter(64 * 1024);
+        sw.write("var OSGI_REPORT = ");
+        JSONWriter json = new JSONWriter(sw);
+        json.object();
+        json.key("bundles").array();
+        for (Page page : pages) {
+            json.array().value(page.id).value(page.bundle.getSymbolicName())
+                    .value(page.bundle.getSymbolicName() == null ? null : page.bundle.getVersion().toString())
+                    .value(BUNDLES + "/" + page.file).endArray();
+        }
+        json.endArray();
+        json.key("packages").array();
+        for (String pkg : packages) {
+            json.array().value(pkg).array();
+            for (Export e : exports.getOrDefault(pkg, new ArrayList<>())) {
+                json.array().value(e.page.index).value(e.version.toString()).endArray();
+            }
+            json.endArray();
+            indexes(json, importers.get(pkg));
+            json.endArray();
+        }
+        json.endArray();
+        json.key("capabilities").array();
+        for (String namespace : namespaces) {
+            json.array().value(namespace);
+            indexes(json, providers.get(namespace));
+            indexes(json, requirers.get(namespace));
+            json.endArray();
+        }
+        json.endArray();
+        json.endObject();
+        json.flush();
+        sw.write(";\n");
+        return sw.toString().getBytes(ReportWriter.CHARSET);
+    }
+
+    private static void indexes(JSONWriter json, Set<Integer> indexes) throws IOException {
+        json.array();
+        if (indexes != null) {
+            for (Integer i : indexes) {
+                json.value(i);
+            }
+        }
+        json.endArray();
+    }
+
+    private static void header(StringBuilder sb, String title, String root) {
+        sb.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\">\n<title>").append(esc(title)).append("</title>\n");
+        sb.append("<link rel=\"stylesheet\" href=\"").append(root).append("report.css\">\n</head>\n<body>\n");
+    }
+
+    private static String esc(String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : c == '"' ? "&quot;" : null;
+            if (replacement != null && sb == null) {
+                sb = new StringBuilder(value.length() + 16).append(value, 0, i);
+            }
+            if (sb != null) {
+                sb.append(replacement == null ? String.valueOf(c) : replacement);
+            }
+        }
+        return sb == null ? value : sb.toString();
+    }
+
+    /**
+     * Writes given content, unless the file already has it
+     * @param file
+     * @param bytes
+     * @return whether the file was written
+     */
+    private boolean write(File file, byte[] bytes) throws IOException {
+        if (file.isFile() && file.length() == bytes.length && Arrays.equals(Files.readAllBytes(file.toPath()), bytes)) {
+            synchronized (this) {
+                unchanged++;
+            }
+            return false;
+        }
+        ReportWriter.write(file, bytes);
+        synchronized (this) {
+            written++;
+        }
+        return true;
+    }
+
+    private static byte[] resource(String name) throws IOException {
+        try (InputStream is = HtmlReport.class.getResourceAsStream(RESOURCES + name)) {
+            if (is == null) {
+                throw new IOException("Can't find " + RESOURCES + name);
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Runs the task in calling thread, if it wasn't picked by the executor yet and waits for its result
+     * @param task
+     */
+    private static void get(FutureTask<Boolean> task) throws IOException {
+        task.run();
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing HTML report", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Page of single artifact
+     */
+    private static class Page {
+        private final int index;
+        private final String id;
+        private final String file;
+        private final BundleDescriptor bundle;
+        private final ManifestHeaders headers;
+
+        Page(int index, String id, String file, BundleDescriptor bundle, ManifestHeaders headers) {
+            this.index = index;
+            this.id = id;
+            this.file = file;
+            this.bundle = bundle;
+            this.headers = headers;
+        }
+    }
+
+    /**
+     * Package exported by an artifact
+     */
+    private static class Export {
+        private final Page page;
+        private final Version version;
+
+        Export(Page page, Version version) {
+            this.page = page;
+            this.version = version;
+        }
+    }
+
+}
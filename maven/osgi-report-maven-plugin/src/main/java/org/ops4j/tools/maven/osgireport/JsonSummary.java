@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.felix.utils.json.JSONWriter;
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+
+/**
+ * <p>Machine readable variant of the summary - one JSON object per artifact and per line
+ * (<a href="http://ndjson.org/">NDJSON</a>). Each record looks like:</p>
+ * <pre>
+ * {
+ *   "artifact": "org.example:bundle:jar:1.0", "groupId": "org.example", ...,
+ *   "headers": {
+ *     "general": { "Manifest-Version": "1.0", ... },
+ *     "bundle": { "Bundle-SymbolicName": "bundle", ... },
+ *     "service": { ... },
+ *     "capability": { "Require-Capability": [ { "name": "osgi.ee", "attributes": {}, "directives": { "filter": "..." } } ] },
+ *     "package": { "Export-Package": [ { "name": "org.example", "attributes": { "version": "1.0" }, "directives": { "uses": [ "org.osgi.framework" ] } } ] }
+ *   }
+ * }
+ * </pre>
+ * <p>Groups and their order are the same as in the text report. {@code uses} directive is always an
+ * array of package names.</p>
+ * <p>Each bundle nested in an artifact (see {@link NestedArchives}) has its own record following the record
+ * of the artifact, identified like its section in the text report:</p>
+ * <pre>
+ * { "artifact": "org.example:app:war:1.0!/WEB-INF/lib/lib.jar", "container": "org.example:app:war:1.0",
+ *   "path": "WEB-INF/lib/lib.jar", "file": "...", "headers": { ... } }
+ * </pre>
+ */
+public final class JsonSummary {
+
+    private JsonSummary() {
+    }
+
+    /**
+     * Renders single record (without trailing new line).
+     * @param properties top-level properties identifying the artifact
+     * @param headers
+     * @return
+     */
+    public static String record(Map<String, String> properties, ManifestHeaders headers) throws IOException {
+        StringWriter sw = new StringWriter();
+        write(sw, properties, headers);
+        return sw.toString();
+    }
+
+    /**
+     * Writes single record (without trailing new line).
+     * @param out
+     * @param properties top-level properties identifying the artifact
+     * @param headers
+     */
+    public static void write(Writer out, Map<String, String> properties, ManifestHeaders headers) throws IOException {
+        JSONWriter json = new JSONWriter(out);
+        json.object();
+        for (Map.Entry<String, String> e : properties.entrySet()) {
+            if (e.getValue() != null) {
+                json.key(e.getKey()).value(e.getValue());
+            }
+        }
+        json.key("headers").object();
+        for (ManifestHeaders.Group group : ManifestHeaders.Group.values()) {
+            json.key(group.name().toLowerCase(Locale.ENGLISH)).object();
+            for (Map.Entry<String, String> e : headers.getHeaders().entrySet()) {
+                if (e.getValue() == null || ManifestHeaders.group(e.getKey()) != group) {
+                    continue;
+                }
+                json.key(e.getKey());
+                if (group.hasClauses()) {
+                    writeClauses(json, headers, headers.getClauses(e.getKey()));
+                } else {
+                    json.value(e.getValue());
+                }
+            }
+            json.endObject();
+        }
+        json.endObject();
+        json.endObject();
+        json.flush();
+    }
+
+    private static void writeClauses(JSONWriter json, ManifestHeaders headers, Clause[] clauses) throws IOException {
+        json.array();
+        for (Clause c : clauses) {
+            json.object();
+            json.key("name").value(c.getName());
+            json.key("attributes").object();
+            for (Attribute a : c.getAttributes()) {
+                json.key(a.getName()).value(a.getValue());
+            }
+            json.endObject();
+            json.key("directives").object();
+            for (Directive d : c.getDirectives()) {
+                json.key(d.getName());
+                if ("uses".equals(d.getName())) {
+                    json.array();
+                    for (String pkg : headers.getUses(d.getValue())) {
+                        json.value(pkg);
+                    }
+                    json.endArray();
+                } else {
+                    json.value(d.getValue());
+                }
+            }
+            json.endObject();
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+}
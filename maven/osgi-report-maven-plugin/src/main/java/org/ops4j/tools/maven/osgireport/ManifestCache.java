@@ -0,0 +1,347 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+
+/**
+ * <p>Content-addressed, on-disk cache of {@link ManifestHeaders} keyed by SHA-256 of an archive. Next to
+ * the entries ({@code *.mf}), the cache keeps references ({@code *.ref}) from path, size and modification
+ * time of an archive to its checksum, so unchanged archives don't have to be read at all. It may be
+ * shared between builds and concurrently running Maven processes:</p>
+ * <ul>
+ *     <li>entries are immutable and published with atomic move, so readers never see partial entries</li>
+ *     <li>modification time of an entry is its last access time, which drives LRU eviction</li>
+ *     <li>only one process at a time (the one holding lock on {@code .lock} file) performs eviction</li>
+ * </ul>
+ */
+public class ManifestCache {
+
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final long maxSize;
+
+    /**
+     * @param directory cache directory
+     * @param maxSize maximum total size of cache entries (in bytes)
+     */
+    public ManifestCache(File directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns cached headers of an archive with given checksum or {@code null}
+     * @param checksum
+     * @return
+     */
+    public ManifestHeaders get(String checksum) {
+        File entry = entry(checksum);
+        if (!entry.isFile()) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            ManifestHeaders headers = read(dis, entry.length());
+            entry.setLastModified(System.currentTimeMillis());
+            return headers;
+        } catch (IOException e) {
+            // removed by concurrent eviction or corrupted - in the latter case it'll be overwritten
+            return null;
+        }
+    }
+
+    /**
+     * Stores headers of an archive with given checksum.
+     * @param checksum
+     * @param headers
+     */
+    public void put(String checksum, ManifestHeaders headers) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            write(dos, headers);
+        }
+        publish(entry(checksum), baos.toByteArray());
+    }
+
+    /**
+     * Returns checksum of given archive stored by {@link #reference(File, String)} if the archive still has
+     * the same path, size and modification time, or {@code null}. Doesn't read the archive.
+     * @param file
+     * @return
+     */
+    public String checksum(File file) {
+        File reference = reference(file);
+        if (!reference.isFile()) {
+            return null;
+        }
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(reference)))) {
+            long size = reference.length();
+            if (dis.readInt() != VERSION || !file.getAbsolutePath().equals(readString(dis, size))
+                    || dis.readLong() != file.length() || dis.readLong() != file.lastModified()) {
+                return null;
+            }
+            String checksum = readString(dis, size);
+            reference.setLastModified(System.currentTimeMillis());
+            return checksum;
+        } catch (IOException e) {
+            // same as in get()
+            return null;
+        }
+    }
+
+    /**
+     * Stores a reference from path, size and modification time of given archive to its checksum.
+     * @param file
+     * @param checksum
+     */
+    public void reference(File file, String checksum) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(VERSION);
+            writeString(dos, file.getAbsolutePath());
+            dos.writeLong(file.length());
+            dos.writeLong(file.lastModified());
+            writeString(dos, checksum);
+        }
+        publish(reference(file), baos.toByteArray());
+    }
+
+    private void publish(File entry, byte[] content) throws IOException {
+        entry.getParentFile().mkdirs();
+        Path tmp = Files.createTempFile(entry.getParentFile().toPath(), entry.getName(), ".tmp");
+        try {
+            Files.write(tmp, content);
+            try {
+                Files.move(tmp, entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Removes least recently used entries until the cache is below 90% of its maximum size. Does nothing if
+     * other process (or other mojo execution in this JVM) is already doing the same.
+     * @return number of removed entries
+     */
+    public int evict() throws IOException {
+        directory.mkdirs();
+        try (RandomAccessFile raf = new RandomAccessFile(new File(directory, ".lock"), "rw");
+             FileChannel channel = raf.getChannel()) {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                lock = null;
+            }
+            if (lock == null) {
+                return 0;
+            }
+            try {
+                List<File> entries = new ArrayList<>();
+                long size = 0L;
+                File[] dirs = directory.listFiles(File::isDirectory);
+                for (File dir : dirs == null ? new File[0] : dirs) {
+                    File[] files = dir.listFiles((d, name) -> name.endsWith(".mf") || name.endsWith(".ref"));
+                    for (File f : files == null ? new File[0] : files) {
+                        entries.add(f);
+                        size += f.length();
+                    }
+                }
+                if (size <= maxSize) {
+                    return 0;
+                }
+                entries.sort(Comparator.comparingLong(File::lastModified));
+                int removed = 0;
+                long target = maxSize / 10L * 9L;
+                for (File f : entries) {
+                    if (size <= target) {
+                        break;
+                    }
+                    long length = f.length();
+                    if (f.delete()) {
+                        size -= length;
+                        removed++;
+                    }
+                }
+                return removed;
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private File entry(String checksum) {
+        return new File(new File(directory, checksum.substring(0, 2)), checksum + ".mf");
+    }
+
+    private File reference(File file) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest(file.getAbsolutePath().getBytes(StandardCharsets.UTF_8))) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return new File(new File(directory, sb.substring(0, 2)), sb + ".ref");
+    }
+
+    private static void write(DataOutputStream dos, ManifestHeaders headers) throws IOException {
+        dos.writeInt(VERSION);
+        dos.writeInt(headers.getHeaders().size());
+        for (Map.Entry<String, String> e : headers.getHeaders().entrySet()) {
+            writeString(dos, e.getKey());
+            writeString(dos, e.getValue());
+        }
+        dos.writeInt(headers.getClauses().size());
+        for (Map.Entry<String, Clause[]> e : headers.getClauses().entrySet()) {
+            writeString(dos, e.getKey());
+            dos.writeInt(e.getValue().length);
+            for (Clause c : e.getValue()) {
+                writeString(dos, c.getName());
+                dos.writeInt(c.getAttributes().length);
+                for (Attribute a : c.getAttributes()) {
+                    writeString(dos, a.getName());
+                    writeString(dos, a.getValue());
+                }
+                dos.writeInt(c.getDirectives().length);
+                for (Directive d : c.getDirectives()) {
+                    writeString(dos, d.getName());
+                    writeString(dos, d.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads an entry. All counts and lengths are checked against the size of the entry, so a corrupted entry
+     * fails with {@link IOException} instead of allocating huge arrays.
+     * @param dis
+     * @param size size of the entry in bytes
+     * @return
+     */
+    private static ManifestHeaders read(DataInputStream dis, long size) throws IOException {
+        if (dis.readInt() != VERSION) {
+            throw new IOException("Unsupported cache entry version");
+        }
+        SortedMap<String, String> headers = new TreeMap<>();
+        for (int i = length(dis, size); i > 0; i--) {
+            headers.put(readString(dis, size), readString(dis, size));
+        }
+        Map<String, Clause[]> clauses = new TreeMap<>();
+        for (int i = length(dis, size); i > 0; i--) {
+            String header = readString(dis, size);
+            Clause[] parsed = new Clause[length(dis, size)];
+            for (int c = 0; c < parsed.length; c++) {
+                String name = readString(dis, size);
+                Attribute[] attributes = new Attribute[length(dis, size)];
+                for (int a = 0; a < attributes.length; a++) {
+                    attributes[a] = new Attribute(readString(dis, size), readString(dis, size));
+                }
+                Directive[] directives = new Directive[length(dis, size)];
+                for (int d = 0; d < directives.length; d++) {
+                    directives[d] = new Directive(readString(dis, size), readString(dis, size));
+                }
+                parsed[c] = new Clause(name, directives, attributes);
+            }
+            clauses.put(header, parsed);
+        }
+        return new ManifestHeaders(headers, clauses);
+    }
+
+    /**
+     * {@link DataOutputStream#writeUTF(String)} is limited to 64kB, which is not enough for some headers
+     * @param out
+     * @param value
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutputStream, String)}
+     * @param in
+     * @param size size of the entry - no string can be longer
+     * @return
+     */
+    static String readString(DataInputStream in, long size) throws IOException {
+        int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < -1 || length > size) {
+            throw new EOFException("Corrupted string length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads number of elements, each of which takes at least 4 bytes of the entry
+     * @param in
+     * @param size size of the entry
+     * @return
+     */
+    private static int length(DataInputStream in, long size) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > size / 4) {
+            throw new EOFException("Corrupted length: " + length);
+        }
+        return length;
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.jar.Manifest;
+
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+import org.apache.felix.utils.manifest.Parser;
+
+/**
+ * Main attributes of single manifest. For bundles, headers which are printed as lists of clauses
+ * (see {@link #isClauseHeader(String)}) are already parsed. Clauses, their attributes and directives are
+ * sorted by name - in the order used by the report.
+ */
+public class ManifestHeaders {
+
+    /**
+     * Groups of headers, in the order used by the report
+     */
+    public enum Group {
+        /** Headers not matching any other group */
+        GENERAL(false),
+        /** {@code Bundle-*} */
+        BUNDLE(false),
+        /** {@code *-Service} */
+        SERVICE(true),
+        /** {@code *-Capability} */
+        CAPABILITY(true),
+        /** {@code *-Package} and {@code Require-Bundle} */
+        PACKAGE(true);
+
+        private final boolean clauses;
+
+        Group(boolean clauses) {
+            this.clauses = clauses;
+        }
+
+        public boolean hasClauses() {
+            return clauses;
+        }
+    }
+
+    public static final ManifestHeaders EMPTY = new ManifestHeaders(Collections.emptySortedMap(), Collections.emptyMap());
+
+    private final SortedMap<String, String> headers;
+    private final Map<String, Clause[]> clauses;
+    private final HeaderCache cache;
+
+    public ManifestHeaders(SortedMap<String, String> headers, Map<String, Clause[]> clauses) {
+        this(headers, clauses, null);
+    }
+
+    public ManifestHeaders(SortedMap<String, String> headers, Map<String, Clause[]> clauses, HeaderCache cache) {
+        this.headers = headers;
+        this.clauses = clauses;
+        this.cache = cache;
+    }
+
+    /**
+     * Collects main attributes of the manifest. Clause headers are parsed only for bundles.
+     * @param manifest
+     * @return
+     */
+    public static ManifestHeaders parse(Manifest manifest) {
+        return parse(manifest, null);
+    }
+
+    /**
+     * Collects main attributes of the manifest. Clause headers are parsed only for bundles. If
+     * {@link HeaderCache} is given, header values already parsed for other manifests are not parsed again.
+     * @param manifest
+     * @param cache
+     * @return
+     */
+    public static ManifestHeaders parse(Manifest manifest, HeaderCache cache) {
+        if (manifest == null || manifest.getMainAttributes() == null) {
+            return EMPTY;
+        }
+        SortedMap<String, String> headers = new TreeMap<>();
+        for (Map.Entry<Object, Object> e : manifest.getMainAttributes().entrySet()) {
+            String name = e.getKey().toString();
+            String value = (String) e.getValue();
+            if (cache != null) {
+                name = cache.intern(name);
+                value = cache.intern(value);
+            }
+            headers.put(name, value);
+        }
+        Map<String, Clause[]> clauses = new TreeMap<>();
+        if (headers.containsKey("Bundle-ManifestVersion")) {
+            for (Map.Entry<String, String> e : headers.entrySet()) {
+                if (isClauseHeader(e.getKey()) && e.getValue() != null) {
+                    clauses.put(e.getKey(), cache == null ? sort(Parser.parseHeader(e.getValue())) : cache.parse(e.getValue()));
+                }
+            }
+        }
+        return new ManifestHeaders(headers, clauses, cache);
+    }
+
+    /**
+     * Returns headers sharing (via {@link HeaderCache}) values and clauses with other manifests.
+     * @param headerCache
+     * @return
+     */
+    public ManifestHeaders share(HeaderCache headerCache) {
+        if (this == EMPTY) {
+            return this;
+        }
+        SortedMap<String, String> sharedHeaders = new TreeMap<>();
+        for (Map.Entry<String, String> e : headers.entrySet()) {
+            sharedHeaders.put(headerCache.intern(e.getKey()), headerCache.intern(e.getValue()));
+        }
+        Map<String, Clause[]> sharedClauses = new TreeMap<>();
+        for (Map.Entry<String, Clause[]> e : clauses.entrySet()) {
+            String value = headers.get(e.getKey());
+            sharedClauses.put(headerCache.intern(e.getKey()), value == null ? e.getValue() : headerCache.share(value, e.getValue()));
+        }
+        return new ManifestHeaders(sharedHeaders, sharedClauses, headerCache);
+    }
+
+    /**
+     * Returns a group to which given header belongs
+     * @param header
+     * @return
+     */
+    public static Group group(String header) {
+        if (header.startsWith("Bundle-")) {
+            return Group.BUNDLE;
+        } else if (header.endsWith("-Package") || header.equals("Require-Bundle")) {
+            return Group.PACKAGE;
+        } else if (header.endsWith("-Service")) {
+            return Group.SERVICE;
+        } else if (header.endsWith("-Capability")) {
+            return Group.CAPABILITY;
+        }
+        return Group.GENERAL;
+    }
+
+    /**
+     * Whether given header is presented as list of clauses ({@code *-Package}, {@code Require-Bundle},
+     * {@code *-Service} and {@code *-Capability}, but not {@code Bundle-*}).
+     * @param header
+     * @return
+     */
+    public static boolean isClauseHeader(String header) {
+        return group(header).hasClauses();
+    }
+
+    /**
+     * Splits the value of {@code uses} directive into sorted package names
+     * @param uses
+     * @return
+     */
+    public static String[] uses(String uses) {
+        String[] pkgs = uses.split("\\s*,\\s*");
+        Arrays.sort(pkgs);
+        return pkgs;
+    }
+
+    /**
+     * Sorts clauses by name and attributes/directives of each clause by name
+     * @param clauses
+     * @return
+     */
+    public static Clause[] sort(Clause[] clauses) {
+        Arrays.sort(clauses, Comparator.comparing(Clause::getName));
+        for (Clause c : clauses) {
+            Arrays.sort(c.getAttributes(), Comparator.comparing(Attribute::getName));
+            Arrays.sort(c.getDirectives(), Comparator.comparing(Directive::getName));
+        }
+        return clauses;
+    }
+
+    /**
+     * Splits the value of {@code uses} directive - using {@link HeaderCache} if available. Returned array
+     * must not be modified.
+     * @param uses
+     * @return
+     */
+    public String[] getUses(String uses) {
+        return cache == null ? uses(uses) : cache.uses(uses);
+    }
+
+    public boolean isBundle() {
+        return headers.get("Bundle-ManifestVersion") != null;
+    }
+
+    public SortedMap<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    /**
+     * Returns parsed and sorted clauses of given header. Never {@code null}.
+     * @param header
+     * @return
+     */
+    public Clause[] getClauses(String header) {
+        Clause[] result = clauses.get(header);
+        return result == null ? new Clause[0] : result;
+    }
+
+    public Map<String, Clause[]> getClauses() {
+        return clauses;
+    }
+
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Enumeration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads {@code META-INF/MANIFEST.MF} through zip central directory, so the manifest is found directly, no
+ * matter at which position it was stored in the archive. Each file is opened only once - parsed headers
+ * and checksums are kept for the lifetime of the reader (single mojo execution). If there's a
+ * {@link ManifestCache}, archives already known to the cache are not opened at all - if path, size and
+ * modification time of an archive match a reference stored in the cache, not even its checksum is calculated. Header values are parsed once per run using {@link HeaderCache}. The cache is only an
+ * optimization - entries which can't be written are counted (see {@link #getCacheFailures()}) and the parsed
+ * headers are returned anyway.
+ */
+public class ManifestReader {
+
+    private final ManifestCache cache;
+    private final HeaderCache headerCache = new HeaderCache();
+
+    private final Map<File, ManifestHeaders> headers = new ConcurrentHashMap<>();
+    private final Map<File, String> checksums = new ConcurrentHashMap<>();
+
+    private final AtomicInteger cacheFailures = new AtomicInteger();
+    private volatile String cacheFailure;
+
+    public ManifestReader() {
+        this(null);
+    }
+
+    public ManifestReader(ManifestCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Returns (possibly cached) headers of given archive. For archives without a manifest,
+     * {@link ManifestHeaders#EMPTY} is returned.
+     * @param file
+     * @return
+     */
+    public ManifestHeaders headers(File file) throws IOException {
+        ManifestHeaders result = headers.get(file);
+        if (result == null) {
+            String checksum = null;
+            boolean referenced = false;
+            if (cache != null) {
+                // unchanged path, size and modification time - no need to read the archive at all
+                checksum = cache.checksum(file);
+                referenced = checksum != null;
+                if (referenced) {
+                    checksums.putIfAbsent(file, checksum);
+                } else {
+                    checksum = checksum(file);
+                }
+                result = cache.get(checksum);
+            }
+            if (result == null) {
+                result = ManifestHeaders.parse(load(file), headerCache);
+                if (checksum != null) {
+                    try {
+                        cache.put(checksum, result);
+                    } catch (IOException e) {
+                        failed(e);
+                    }
+                }
+            } else {
+                result = result.share(headerCache);
+            }
+            if (checksum != null && !referenced) {
+                try {
+                    cache.reference(file, checksum);
+                } catch (IOException e) {
+                    failed(e);
+                }
+            }
+            headers.put(file, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns (possibly cached) SHA-256 checksum of given file
+     * @param file
+     * @return
+     */
+    public String checksum(File file) throws IOException {
+        String result = checksums.get(file);
+        if (result == null) {
+            result = sha256(file);
+            checksums.put(file, result);
+        }
+        return result;
+    }
+
+    private void failed(IOException e) {
+        cacheFailures.incrementAndGet();
+        cacheFailure = e.getMessage() == null ? e.toString() : e.getMessage();
+    }
+
+    public HeaderCache getHeaderCache() {
+        return headerCache;
+    }
+
+    /**
+     * Number of headers which couldn't be stored in {@link ManifestCache}
+     * @return
+     */
+    public int getCacheFailures() {
+        return cacheFailures.get();
+    }
+
+    /**
+     * Message of last failure to store headers in {@link ManifestCache}
+     * @return
+     */
+    public String getCacheFailure() {
+        return cacheFailure;
+    }
+
+    /**
+     * Loads the manifest without any caching.
+     * @param file
+     * @return
+     */
+    public static Manifest load(File file) throws IOException {
+        try (ZipFile zip = new ZipFile(file)) {
+            return load(zip);
+        }
+    }
+
+    /**
+     * Loads the manifest from already opened archive.
+     * @param zip
+     * @return
+     */
+    public static Manifest load(ZipFile zip) throws IOException {
+        ZipEntry entry = zip.getEntry(JarFile.MANIFEST_NAME);
+        if (entry == null) {
+            // JarInputStream and JarFile are case insensitive here
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry ze = e.nextElement();
+                if (JarFile.MANIFEST_NAME.equalsIgnoreCase(ze.getName())) {
+                    entry = ze;
+                    break;
+                }
+            }
+        }
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = zip.getInputStream(entry)) {
+            return new Manifest(is);
+        }
+    }
+
+    /**
+     * SHA-256 of file content as hex string
+     * @param file
+     * @return
+     */
+    public static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        byte[] buffer = new byte[65536];
+        try (InputStream is = new FileInputStream(file)) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.felix.utils.json.JSONWriter;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.slf4j.Logger;
+
+/**
+ * <p>Timing and throughput of the report - duration of phases (reactor sorting, collecting artifacts,
+ * rendering, analyses), counters and per-artifact durations of reading and formatting manifests, with
+ * sizes of the archives and numbers of headers and clauses.</p>
+ * <p>Metrics are shared by all components taking part in single Maven session ({@link ReactorSorter} runs
+ * long before the mojo) and are thread safe, as artifacts are processed in parallel.</p>
+ */
+public class Metrics {
+
+    /**
+     * Keyed by the request, which is shared by the session and its clones (mojos get a clone with {@code -T}).
+     * Requests are compared by identity and held weakly, so metrics of a session, which didn't end through
+     * {@link ReactorSorter} (not loaded as extension), are not retained.
+     */
+    private static final Map<MavenExecutionRequest, Metrics> SESSIONS = new WeakHashMap<>();
+
+    /** phase &rarr; duration in nanoseconds */
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, ArtifactMetrics> artifacts = new ConcurrentHashMap<>();
+
+    /**
+     * Metrics of given session
+     * @param session
+     * @return
+     */
+    public static Metrics of(MavenSession session) {
+        synchronized (SESSIONS) {
+            return SESSIONS.computeIfAbsent(session.getRequest(), r -> new Metrics());
+        }
+    }
+
+    /**
+     * Forgets metrics of finished session
+     * @param session
+     */
+    public static void remove(MavenSession session) {
+        synchronized (SESSIONS) {
+            SESSIONS.remove(session.getRequest());
+        }
+    }
+
+    /**
+     * Adds duration of a phase
+     * @param name
+     * @param start {@link System#nanoTime()} when the phase started
+     */
+    public synchronized void phase(String name, long start) {
+        phases.merge(name, System.nanoTime() - start, Long::sum);
+    }
+
+    /**
+     * Increments a counter
+     * @param name
+     * @param value
+     */
+    public synchronized void count(String name, long value) {
+        counters.merge(name, value, Long::sum);
+    }
+
+    /**
+     * Records reading of artifact's manifest
+     * @param id
+     * @param start {@link System#nanoTime()} when reading started
+     * @param file
+     * @param headers
+     */
+    public void read(String id, long start, File file, ManifestHeaders headers) {
+        ArtifactMetrics m = artifact(id);
+        m.read += System.nanoTime() - start;
+        m.size = file.length();
+        m.headers = headers.getHeaders().size();
+        m.clauses = 0;
+        for (Clause[] clauses : headers.getClauses().values()) {
+            m.clauses += clauses.length;
+        }
+    }
+
+    /**
+     * Records rendering of artifact's section
+     * @param id
+     * @param start {@link System#nanoTime()} when rendering started
+     * @param written size of the section
+     */
+    public void format(String id, long start, int written) {
+        ArtifactMetrics m = artifact(id);
+        m.format += System.nanoTime() - start;
+        m.written = written;
+    }
+
+    /**
+     * Artifacts sorted from the slowest one
+     * @return
+     */
+    public List<ArtifactMetrics> getArtifacts() {
+        List<ArtifactMetrics> result = new ArrayList<>(artifacts.values());
+        result.sort((m1, m2) -> Long.compare(m2.read + m2.format, m1.read + m1.format));
+        return result;
+    }
+
+    /**
+     * Logs durations of phases, totals and the slowest artifacts
+     * @param logger
+     * @param slowest number of the slowest artifacts to log
+     */
+    public void log(Logger logger, int slowest) {
+        List<ArtifactMetrics> sorted = getArtifacts();
+        StringBuilder sb = new StringBuilder();
+        synchronized (this) {
+            for (Map.Entry<String, Long> e : phases.entrySet()) {
+                sb.append(sb.length() == 0 ? "" : ", ").append(e.getKey()).append(" ").append(ms(e.getValue())).append(" ms");
+            }
+        }
+        long size = 0;
+        long headers = 0;
+        long clauses = 0;
+        for (ArtifactMetrics m : sorted) {
+            size += m.size;
+            headers += m.headers;
+            clauses += m.clauses;
+        }
+        logger.info("Timing: {}", sb);
+        logger.info("Read manifests of {} artifact(s) ({} bytes), {} header(s), {} clause(s)", sorted.size(), size, headers, clauses);
+        for (ArtifactMetrics m : sorted.subList(0, Math.min(slowest, sorted.size()))) {
+            logger.info(" - {}: {} ms (read {} ms, format {} ms), {} bytes", m.id, ms(m.read + m.format), ms(m.read),
+                    ms(m.format), m.size);
+        }
+    }
+
+    /**
+     * Writes metrics as JSON object
+     * @param file
+     */
+    public void write(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(file), ReportWriter.CHARSET)) {
+            JSONWriter json = new JSONWriter(w);
+            json.object();
+            synchronized (this) {
+                json.key("phases").object();
+                for (Map.Entry<String, Long> e : phases.entrySet()) {
+                    json.key(e.getKey()).value(ms(e.getValue()));
+                }
+                json.endObject();
+                json.key("counters").object();
+                for (Map.Entry<String, Long> e : counters.entrySet()) {
+                    json.key(e.getKey()).value(e.getValue().longValue());
+                }
+                json.endObject();
+            }
+            json.key("artifacts").array();
+            for (ArtifactMetrics m : getArtifacts()) {
+                json.object();
+                json.key("id").value(m.id);
+                json.key("readMs").value(ms(m.read));
+                json.key("formatMs").value(ms(m.format));
+                json.key("size").value(m.size);
+                json.key("written").value(m.written);
+                json.key("headers").value(m.headers);
+                json.key("clauses").value(m.clauses);
+                json.endObject();
+            }
+            json.endArray();
+            json.endObject();
+            json.flush();
+            w.write("\n");
+        }
+    }
+
+    private ArtifactMetrics artifact(String id) {
+        return artifacts.computeIfAbsent(id, ArtifactMetrics::new);
+    }
+
+    /**
+     * Nanoseconds as milliseconds with microsecond precision
+     * @param nanos
+     * @return
+     */
+    private static double ms(long nanos) {
+        return Math.round(nanos / 1000d) / 1000d;
+    }
+
+    /**
+     * Metrics of single artifact. Each artifact is read and formatted by single thread at a time.
+     */
+    public static class ArtifactMetrics {
+
+        private final String id;
+        private volatile long read;
+        private volatile long format;
+        private volatile long size;
+        private volatile int written;
+        private volatile int headers;
+        private volatile int clauses;
+
+        ArtifactMetrics(String id) {
+            this.id = id;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Time spent reading the manifest in nanoseconds
+         * @return
+         */
+        public long getRead() {
+            return read;
+        }
+
+        /**
+         * Time spent formatting the section in nanoseconds
+         * @return
+         */
+        public long getFormat() {
+            return format;
+        }
+
+    }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Parser;
+
+/**
+ * <p>Finds bundles nested in an archive - jars from {@code Bundle-ClassPath}, {@code WEB-INF/lib} of WABs,
+ * bundles in KAR repositories or in zip assemblies. Only containers (see {@link #isContainer(String)}) are
+ * searched for any nested archive - other archives are only searched for {@code Bundle-ClassPath} and
+ * {@code WEB-INF/lib} entries. Nested archives are never extracted or buffered - each one is read with
+ * {@link ZipInputStream} directly from the stream of its parent entry, so memory doesn't depend on the size
+ * of the archives. Like with {@link java.util.jar.JarInputStream}, manifest of a nested archive is expected
+ * before its other entries.</p>
+ * <p>Nested archives are traversed up to given depth. Archives (and manifests) bigger than given size
+ * (uncompressed) are skipped.</p>
+ */
+public class NestedArchives {
+
+    private static final Set<String> ARCHIVES = new HashSet<>(Arrays.asList("jar", "war", "wab", "kar", "zip", "esa"));
+    private static final Set<String> CONTAINERS = new HashSet<>(Arrays.asList("war", "wab", "kar", "zip", "esa"));
+
+    private final int maxDepth;
+    private final long maxSize;
+    private final HeaderCache headerCache;
+
+    /**
+     * @param maxDepth maximum nesting level ({@code 1} - only archives stored directly in scanned file)
+     * @param maxSize maximum uncompressed size of single nested archive
+     * @param headerCache
+     */
+    public NestedArchives(int maxDepth, long maxSize, HeaderCache headerCache) {
+        this.maxDepth = maxDepth;
+        this.maxSize = maxSize;
+        this.headerCache = headerCache;
+    }
+
+    /**
+     * Whether given file name looks like an archive which may contain other bundles
+     * @param name
+     * @return
+     */
+    public static boolean isArchive(String name) {
+        return ARCHIVES.contains(extension(name));
+    }
+
+    /**
+     * Whether given file name looks like an archive (KAR, WAR, zip) which may be worth scanning even if it
+     * isn't a bundle
+     * @param name
+     * @return
+     */
+    public static boolean isContainer(String name) {
+        return CONTAINERS.contains(extension(name));
+    }
+
+    /**
+     * Returns bundles nested in given archive, each one followed by the bundles nested in it. Nested archives
+     * which can't be read are returned with an error.
+     * @param file
+     * @return
+     */
+    public List<Nested> scan(File file) throws IOException {
+        List<Nested> result = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(file)) {
+            Set<String> classPath = Collections.emptySet();
+            boolean container = isContainer(file.getName());
+            if (!container) {
+                Manifest manifest = ManifestReader.load(zip);
+                classPath = manifest == null ? classPath : classPath(manifest);
+            }
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                if (entry.isDirectory() || !isArchive(entry.getName())
+                        || !container && !isEmbedded(entry.getName(), classPath)) {
+                    continue;
+                }
+                if (entry.getSize() > maxSize) {
+                    result.add(new Nested(entry.getName(), null, "size " + entry.getSize() + " exceeds " + maxSize));
+                    continue;
+                }
+                try (InputStream is = zip.getInputStream(entry)) {
+                    scan(entry.getName(), new LimitedInputStream(is, maxSize), 1, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads single nested archive from a stream
+     * @param path
+     * @param is
+     * @param depth
+     * @param result
+     */
+    private void scan(String path, InputStream is, int depth, List<Nested> result) {
+        int position = result.size();
+        Manifest manifest = null;
+        Set<String> classPath = Collections.emptySet();
+        boolean container = isContainer(path);
+        try (ZipInputStream zis = open(is)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                String name = entry.getName();
+                if (JarFile.MANIFEST_NAME.equalsIgnoreCase(name)) {
+                    manifest = new Manifest(new LimitedInputStream(zis, maxSize));
+                    classPath = classPath(manifest);
+                } else if (depth < maxDepth && !entry.isDirectory() && isArchive(name)
+                        && (container || isEmbedded(name, classPath))) {
+                    if (entry.getSize() > maxSize) {
+                        result.add(new Nested(path + "!/" + name, null, "size " + entry.getSize() + " exceeds " + maxSize));
+                    } else {
+                        scan(path + "!/" + name, new LimitedInputStream(zis, maxSize), depth + 1, result);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            result.add(position, new Nested(path, null, e.getMessage()));
+            return;
+        }
+        if (manifest != null) {
+            ManifestHeaders headers = ManifestHeaders.parse(manifest, headerCache);
+            if (headers.isBundle()) {
+                result.add(position, new Nested(path, headers, null));
+            }
+        }
+    }
+
+    /**
+     * Opens an archive nested in another archive for reading. Closing the returned stream releases its
+     * {@link java.util.zip.Inflater}, but doesn't close the stream of the parent entry.
+     * @param parent stream of the entry in parent archive
+     * @return
+     */
+    public static ZipInputStream open(InputStream parent) {
+        return new ZipInputStream(new NonClosingInputStream(parent));
+    }
+
+    /**
+     * Paths of {@code Bundle-ClassPath} entries (without leading {@code /})
+     * @param manifest
+     * @return
+     */
+    private static Set<String> classPath(Manifest manifest) {
+        String bundleClassPath = manifest.getMainAttributes().getValue("Bundle-ClassPath");
+        if (bundleClassPath == null) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new HashSet<>();
+        for (Clause c : Parser.parseHeader(bundleClassPath)) {
+            result.add(c.getName().startsWith("/") ? c.getName().substring(1) : c.getName());
+        }
+        return result;
+    }
+
+    /**
+     * Whether an entry of a (non container) archive is a jar on its class path
+     * @param name
+     * @param classPath
+     * @return
+     */
+    private static boolean isEmbedded(String name, Set<String> classPath) {
+        return classPath.contains(name) || name.startsWith("WEB-INF/lib/");
+    }
+
+    private static String extension(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Bundle found in an archive
+     */
+    public static class Nested {
+
+        private final String path;
+        private final ManifestHeaders headers;
+        private final String error;
+
+        Nested(String path, ManifestHeaders headers, String error) {
+            this.path = path;
+            this.headers = headers;
+            this.error = error;
+        }
+
+        /**
+         * Path of the bundle in scanned archive - deeper levels are separated by {@code !/}
+         * ({@code repository/org/example/x.kar!/repository/org/example/x.jar})
+         * @return
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Headers of nested bundle, {@code null} if it couldn't be read
+         * @return
+         */
+        public ManifestHeaders getHeaders() {
+            return headers;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+    }
+
+    /**
+     * Stream which doesn't close underlying stream
+     */
+    private static class NonClosingInputStream extends FilterInputStream {
+
+        NonClosingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // parent stream is closed by its owner
+        }
+
+    }
+
+    /**
+     * Stream which fails after reading given number of bytes and which doesn't close underlying stream
+     */
+    private static class LimitedInputStream extends NonClosingInputStream {
+
+        private final long limit;
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+            remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                consumed(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                consumed(read);
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            consumed(skipped);
+            return skipped;
+        }
+
+        private void consumed(long count) throws IOException {
+            remaining -= count;
+            if (remaining < 0) {
+                throw new IOException("size exceeds " + limit);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,597 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.version.VersionRange;
+import org.ops4j.tools.maven.osgireport.analysis.BundleDescriptor;
+
+/**
+ * <p>Compact on-disk index of summarized bundles, their exported and imported packages and provided and
+ * required capabilities. The index is memory-mapped and queried by binary search directly in the mapped
+ * file, so answering "which bundle exports package X in version range Y and who imports it" doesn't need
+ * to read or parse the whole index (or the summary).</p>
+ * <p>Format (big endian):</p>
+ * <pre>
+ * header:       magic, version, then count and offset of each table and offset of strings (ints)
+ * bundles:      [ id, symbolic name, version ]            sorted by id
+ * names:        [ symbolic name, bundle ]                 sorted by symbolic name
+ * packages:     [ package, bundle, version, flags ]       sorted by package, exports first
+ * capabilities: [ namespace, bundle, clause, flags ]      sorted by namespace, capabilities first
+ * strings:      [ length, UTF-8 bytes ]...
+ * </pre>
+ * <p>Table records are ints - strings are offsets in the string table ({@code -1} for none) and bundles are
+ * positions in the bundle table. Version of a package is the exported version or imported range. Flags
+ * are {@link #REQUIREMENT} and {@link #OPTIONAL}. Strings are sorted by their UTF-8 bytes, so queries are
+ * compared with the mapped bytes without decoding.</p>
+ */
+public class QueryIndex {
+
+    /** Flag of imported packages and required capabilities */
+    public static final int REQUIREMENT = 1;
+    /** Flag of requirements with {@code resolution:=optional} */
+    public static final int OPTIONAL = 2;
+
+    private static final int MAGIC = 0x4f534749; // "OSGI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 * 11;
+    private static final int BUNDLE_SIZE = 4 * 3;
+    private static final int NAME_SIZE = 4 * 2;
+    private static final int RECORD_SIZE = 4 * 4;
+
+    private final ByteBuffer buffer;
+    private final int bundleCount;
+    private final int bundles;
+    private final int nameCount;
+    private final int names;
+    private final int packageCount;
+    private final int packages;
+    private final int capabilityCount;
+    private final int capabilities;
+    private final int strings;
+
+    private QueryIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a query index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported query index version " + buffer.getInt(4));
+        }
+        bundleCount = buffer.getInt(8);
+        bundles = buffer.getInt(12);
+        nameCount = buffer.getInt(16);
+        names = buffer.getInt(20);
+        packageCount = buffer.getInt(24);
+        packages = buffer.getInt(28);
+        capabilityCount = buffer.getInt(32);
+        capabilities = buffer.getInt(36);
+        strings = buffer.getInt(40);
+        verify();
+    }
+
+    /**
+     * Checks that all tables and all strings referenced by the records are within the buffer, so broken
+     * (e.g. truncated) index is reported when it's opened and not by queries reading outside of the buffer.
+     * Only the records are read, not the strings themselves.
+     */
+    private void verify() throws IOException {
+        if (strings < HEADER_SIZE || strings > buffer.capacity()) {
+            throw new IOException("Corrupted query index: string table at " + strings);
+        }
+        checkTable("bundle", bundles, bundleCount, BUNDLE_SIZE);
+        checkTable("name", names, nameCount, NAME_SIZE);
+        checkTable("package", packages, packageCount, RECORD_SIZE);
+        checkTable("capability", capabilities, capabilityCount, RECORD_SIZE);
+        for (int i = 0; i < bundleCount; i++) {
+            int offset = bundles + i * BUNDLE_SIZE;
+            checkString(buffer.getInt(offset), false);
+            checkString(buffer.getInt(offset + 4), true);
+            checkString(buffer.getInt(offset + 8), true);
+        }
+        for (int i = 0; i < nameCount; i++) {
+            int offset = names + i * NAME_SIZE;
+            checkString(buffer.getInt(offset), false);
+            checkBundle(buffer.getInt(offset + 4));
+        }
+        for (int[] table : new int[][] { { packages, packageCount }, { capabilities, capabilityCount } }) {
+            for (int i = 0; i < table[1]; i++) {
+                int offset = table[0] + i * RECORD_SIZE;
+                checkString(buffer.getInt(offset), false);
+                checkBundle(buffer.getInt(offset + 4));
+                checkString(buffer.getInt(offset + 8), true);
+            }
+        }
+    }
+
+    private void checkTable(String name, int offset, int count, int size) throws IOException {
+        if (count < 0 || offset < HEADER_SIZE || offset + (long) count * size > strings) {
+            throw new IOException("Corrupted query index: " + name + " table with " + count + " record(s) at " + offset);
+        }
+    }
+
+    private void checkString(int s, boolean optional) throws IOException {
+        if (s == -1 && optional) {
+            return;
+        }
+        long offset = (long) strings + s;
+        if (s < 0 || offset + 4 > buffer.capacity()) {
+            throw new IOException("Corrupted query index: string at " + s);
+        }
+        int length = buffer.getInt((int) offset);
+        if (length < 0 || offset + 4 + length > buffer.capacity()) {
+            throw new IOException("Corrupted query index: string at " + s + " with length " + length);
+        }
+    }
+
+    private void checkBundle(int bundle) throws IOException {
+        if (bundle < 0 || bundle >= bundleCount) {
+            throw new IOException("Corrupted query index: bundle " + bundle);
+        }
+    }
+
+    /**
+     * Maps existing index
+     * @param file
+     * @return
+     */
+    public static QueryIndex open(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return new QueryIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Bundles exporting given package in given version range
+     * @param pkg
+     * @param range version range or {@code null} for any version
+     * @return
+     */
+    public List<Match> exporters(String pkg, VersionRange range) {
+        List<Match> result = new ArrayList<>();
+        byte[] key = utf8(pkg);
+        for (int i = lowerBound(packages, packageCount, key); i < packageCount && compare(packages, i, key) == 0; i++) {
+            Match m = match(packages, i);
+            if (m.isRequirement()) {
+                break;
+            }
+            if (range == null || range.contains(BundleDescriptor.version(m.getValue()))) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bundles importing given package
+     * @param pkg
+     * @return
+     */
+    public List<Match> importers(String pkg) {
+        List<Match> result = new ArrayList<>();
+        byte[] key = utf8(pkg);
+        for (int i = lowerBound(packages, packageCount, key); i < packageCount && compare(packages, i, key) == 0; i++) {
+            if ((buffer.getInt(packages + i * RECORD_SIZE + 12) & REQUIREMENT) != 0) {
+                result.add(match(packages, i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Distinct names of exported or imported packages starting with given prefix
+     * @param prefix
+     * @return
+     */
+    public List<String> packages(String prefix) {
+        List<String> result = new ArrayList<>();
+        byte[] key = utf8(prefix);
+        int last = -1;
+        for (int i = lowerBound(packages, packageCount, key); i < packageCount && startsWith(packages, i, key); i++) {
+            int name = buffer.getInt(packages + i * RECORD_SIZE);
+            if (name != last) {
+                result.add(string(name));
+                last = name;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bundles providing (or requiring) capabilities in given namespace
+     * @param namespace
+     * @param requirements whether to return requirements instead of capabilities
+     * @return
+     */
+    public List<Match> capabilities(String namespace, boolean requirements) {
+        List<Match> result = new ArrayList<>();
+        byte[] key = utf8(namespace);
+        for (int i = lowerBound(capabilities, capabilityCount, key); i < capabilityCount && compare(capabilities, i, key) == 0; i++) {
+            Match m = match(capabilities, i);
+            if (m.isRequirement() == requirements) {
+                result.add(m);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bundles with given artifact id or symbolic name
+     * @param idOrSymbolicName
+     * @return
+     */
+    public List<Match> bundles(String idOrSymbolicName) {
+        List<Match> result = new ArrayList<>();
+        byte[] key = utf8(idOrSymbolicName);
+        int i = lowerBound(bundles, bundleCount, BUNDLE_SIZE, key);
+        if (i < bundleCount && compare(bundles, i, BUNDLE_SIZE, key) == 0) {
+            result.add(new Match(bundle(i), null, null, 0));
+        }
+        for (i = lowerBound(names, nameCount, NAME_SIZE, key); i < nameCount && compare(names, i, NAME_SIZE, key) == 0; i++) {
+            Bundle b = bundle(buffer.getInt(names + i * NAME_SIZE + 4));
+            if (result.isEmpty() || !result.get(0).getBundle().getId().equals(b.getId())) {
+                result.add(new Match(b, null, null, 0));
+            }
+        }
+        return result;
+    }
+
+    public int getBundleCount() {
+        return bundleCount;
+    }
+
+    private Match match(int table, int i) {
+        int offset = table + i * RECORD_SIZE;
+        return new Match(bundle(buffer.getInt(offset + 4)), string(buffer.getInt(offset)), string(buffer.getInt(offset + 8)),
+                buffer.getInt(offset + 12));
+    }
+
+    private Bundle bundle(int i) {
+        int offset = bundles + i * BUNDLE_SIZE;
+        return new Bundle(string(buffer.getInt(offset)), string(buffer.getInt(offset + 4)), string(buffer.getInt(offset + 8)));
+    }
+
+    private int lowerBound(int table, int count, byte[] key) {
+        return lowerBound(table, count, RECORD_SIZE, key);
+    }
+
+    /**
+     * Position of first record, which first field (a string) isn't lower than the key
+     */
+    private int lowerBound(int table, int count, int size, byte[] key) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(table, mid, size, key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(int table, int i, byte[] key) {
+        return compare(table, i, RECORD_SIZE, key);
+    }
+
+    /**
+     * Compares first field (a string) of a record with the key, by unsigned UTF-8 bytes
+     */
+    private int compare(int table, int i, int size, byte[] key) {
+        int s = buffer.getInt(table + i * size);
+        if (s < 0) {
+            return -1;
+        }
+        int offset = strings + s;
+        int length = buffer.getInt(offset);
+        int n = Math.min(length, key.length);
+        for (int b = 0; b < n; b++) {
+            int v = (buffer.get(offset + 4 + b) & 0xFF) - (key[b] & 0xFF);
+            if (v != 0) {
+                return v;
+            }
+        }
+        return length - key.length;
+    }
+
+    private boolean startsWith(int table, int i, byte[] prefix) {
+        int offset = strings + buffer.getInt(table + i * RECORD_SIZE);
+        if (buffer.getInt(offset) < prefix.length) {
+            return false;
+        }
+        for (int b = 0; b < prefix.length; b++) {
+            if (buffer.get(offset + 4 + b) != prefix[b]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String string(int s) {
+        if (s < 0) {
+            return null;
+        }
+        int offset = strings + s;
+        byte[] bytes = new byte[buffer.getInt(offset)];
+        for (int b = 0; b < bytes.length; b++) {
+            bytes[b] = buffer.get(offset + 4 + b);
+        }
+        return new String(bytes, ReportWriter.CHARSET);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(ReportWriter.CHARSET);
+    }
+
+    private static int compareBytes(byte[] b1, byte[] b2) {
+        int n = Math.min(b1.length, b2.length);
+        for (int i = 0; i < n; i++) {
+            int v = (b1[i] & 0xFF) - (b2[i] & 0xFF);
+            if (v != 0) {
+                return v;
+            }
+        }
+        return b1.length - b2.length;
+    }
+
+    /**
+     * Bundle in the index
+     */
+    public static class Bundle {
+
+        private final String id;
+        private final String symbolicName;
+        private final String version;
+
+        Bundle(String id, String symbolicName, String version) {
+            this.id = id;
+            this.symbolicName = symbolicName;
+            this.version = version;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+    }
+
+    /**
+     * Found package, capability or bundle
+     */
+    public static class Match {
+
+        private final Bundle bundle;
+        private final String name;
+        private final String value;
+        private final int flags;
+
+        Match(Bundle bundle, String name, String value, int flags) {
+            this.bundle = bundle;
+            this.name = name;
+            this.value = value;
+            this.flags = flags;
+        }
+
+        public Bundle getBundle() {
+            return bundle;
+        }
+
+        /**
+         * Package name or capability namespace
+         * @return
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Exported version or imported range of a package, or the whole capability clause
+         * @return
+         */
+        public String getValue() {
+            return value;
+        }
+
+        public boolean isRequirement() {
+            return (flags & REQUIREMENT) != 0;
+        }
+
+        public boolean isOptional() {
+            return (flags & OPTIONAL) != 0;
+        }
+
+    }
+
+    /**
+     * Collects bundles and writes the index
+     */
+    public static class Writer {
+
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<byte[]> stringBytes = new ArrayList<>();
+        private final List<int[]> bundleRecords = new ArrayList<>();
+        private final List<int[]> packageRecords = new ArrayList<>();
+        private final List<int[]> capabilityRecords = new ArrayList<>();
+
+        /**
+         * Adds a bundle. Artifacts which are not bundles are ignored.
+         * @param id artifact identifier
+         * @param headers
+         */
+        public void add(String id, ManifestHeaders headers) {
+            if (!headers.isBundle()) {
+                return;
+            }
+            BundleDescriptor descriptor = new BundleDescriptor(id, headers);
+            int bundle = bundleRecords.size();
+            bundleRecords.add(new int[] { string(id), string(descriptor.getSymbolicName()), string(descriptor.getVersion().toString()) });
+            for (Clause c : headers.getClauses("Export-Package")) {
+                String v = c.getAttribute("version");
+                v = v == null ? c.getAttribute("specification-version") : v;
+                packageRecords.add(new int[] { string(c.getName()), bundle, string(BundleDescriptor.version(v).toString()), 0 });
+            }
+            for (Clause c : headers.getClauses("Import-Package")) {
+                String v = c.getAttribute("version");
+                v = v == null ? c.getAttribute("specification-version") : v;
+                packageRecords.add(new int[] { string(c.getName()), bundle, string(v == null ? null : v.trim()), flags(c) });
+            }
+            for (Clause c : headers.getClauses("Provide-Capability")) {
+                capabilityRecords.add(new int[] { string(c.getName()), bundle, string(c.toString()), 0 });
+            }
+            for (Clause c : headers.getClauses("Require-Capability")) {
+                capabilityRecords.add(new int[] { string(c.getName()), bundle, string(c.toString()), flags(c) });
+            }
+        }
+
+        /**
+         * Writes the index, atomically replacing existing file
+         * @param file
+         */
+        public void write(File file) throws IOException {
+            // sort strings and renumber all references to offsets in sorted string table
+            Integer[] order = new Integer[stringBytes.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (i1, i2) -> compareBytes(stringBytes.get(i1), stringBytes.get(i2)));
+            int[] offsets = new int[order.length];
+            int offset = 0;
+            for (Integer i : order) {
+                offsets[i] = offset;
+                offset += 4 + stringBytes.get(i).length;
+            }
+
+            // strings are sorted, so offsets compare the same way as the strings
+            Integer[] bundleOrder = new Integer[bundleRecords.size()];
+            for (int i = 0; i < bundleOrder.length; i++) {
+                bundleOrder[i] = i;
+            }
+            Arrays.sort(bundleOrder, Comparator.comparingInt(i -> offsets[bundleRecords.get(i)[0]]));
+            List<int[]> sortedBundles = new ArrayList<>(bundleOrder.length);
+            int[] position = new int[bundleOrder.length];
+            for (int i = 0; i < bundleOrder.length; i++) {
+                sortedBundles.add(bundleRecords.get(bundleOrder[i]));
+                position[bundleOrder[i]] = i;
+            }
+            List<int[]> nameRecords = new ArrayList<>();
+            for (int i = 0; i < sortedBundles.size(); i++) {
+                if (sortedBundles.get(i)[1] >= 0) {
+                    nameRecords.add(new int[] { sortedBundles.get(i)[1], i });
+                }
+            }
+            nameRecords.sort(Comparator.comparingInt((int[] r) -> offsets[r[0]]).thenComparingInt(r -> r[1]));
+            Comparator<int[]> records = Comparator.comparingInt((int[] r) -> offsets[r[0]])
+                    .thenComparingInt(r -> r[3] & REQUIREMENT)
+                    .thenComparingInt(r -> position[r[1]]);
+            packageRecords.sort(records);
+            capabilityRecords.sort(records);
+
+            int bundlesOffset = HEADER_SIZE;
+            int namesOffset = bundlesOffset + sortedBundles.size() * BUNDLE_SIZE;
+            int packagesOffset = namesOffset + nameRecords.size() * NAME_SIZE;
+            int capabilitiesOffset = packagesOffset + packageRecords.size() * RECORD_SIZE;
+            int stringsOffset = capabilitiesOffset + capabilityRecords.size() * RECORD_SIZE;
+
+            file.getAbsoluteFile().getParentFile().mkdirs();
+            File tmp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+                for (int v : new int[] { MAGIC, VERSION, sortedBundles.size(), bundlesOffset, nameRecords.size(), namesOffset,
+                        packageRecords.size(), packagesOffset, capabilityRecords.size(), capabilitiesOffset, stringsOffset }) {
+                    dos.writeInt(v);
+                }
+                for (int[] r : sortedBundles) {
+                    dos.writeInt(offsets[r[0]]);
+                    dos.writeInt(ref(offsets, r[1]));
+                    dos.writeInt(ref(offsets, r[2]));
+                }
+                for (int[] r : nameRecords) {
+                    dos.writeInt(offsets[r[0]]);
+                    dos.writeInt(r[1]);
+                }
+                for (List<int[]> table : Arrays.asList(packageRecords, capabilityRecords)) {
+                    for (int[] r : table) {
+                        dos.writeInt(offsets[r[0]]);
+                        dos.writeInt(position[r[1]]);
+                        dos.writeInt(ref(offsets, r[2]));
+                        dos.writeInt(r[3]);
+                    }
+                }
+                for (Integer i : order) {
+                    dos.writeInt(stringBytes.get(i).length);
+                    dos.write(stringBytes.get(i));
+                }
+            }
+            // atomic replace keeps the index readable (and already mapped index valid) while it's rewritten
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        private int string(String value) {
+            if (value == null) {
+                return -1;
+            }
+            Integer s = strings.get(value);
+            if (s == null) {
+                s = stringBytes.size();
+                strings.put(value, s);
+                stringBytes.add(utf8(value));
+            }
+            return s;
+        }
+
+        private static int ref(int[] offsets, int s) {
+            return s < 0 ? -1 : offsets[s];
+        }
+
+        private static int flags(Clause c) {
+            return REQUIREMENT | ("optional".equals(c.getDirective("resolution")) ? OPTIONAL : 0);
+        }
+
+    }
+
+}
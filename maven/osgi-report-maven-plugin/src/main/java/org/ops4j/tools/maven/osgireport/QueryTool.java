@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.apache.felix.utils.version.VersionRange;
+
+/**
+ * <p>Queries {@link QueryIndex} written by {@link Summary} ({@code queryIndex} parameter) or
+ * {@link DirectorySummary} ({@code --index} option):</p>
+ * <pre>
+ * java -cp osgi-report-maven-plugin.jar:org.apache.felix.utils.jar:osgi.core.jar \
+ *     org.ops4j.tools.maven.osgireport.QueryTool &lt;index&gt; &lt;query&gt; &lt;argument&gt; [&lt;version range&gt;]
+ * </pre>
+ * <p>Records of the index are checked when it's mapped, but only the strings needed for the query are read.</p>
+ * <p>Exit code is {@code 0} when something was found, {@code 1} for invalid arguments or unreadable index
+ * and {@code 3} when nothing was found.</p>
+ */
+public final class QueryTool {
+
+    private static final String USAGE = "Usage: QueryTool [-q] <index> <query> <argument> [<version range>]\n"
+            + "  package <package> [<range>]    exporters (in given version range) and importers of a package\n"
+            + "  exporters <package> [<range>]  bundles exporting a package (in given version range)\n"
+            + "  importers <package>            bundles importing a package\n"
+            + "  packages <prefix>              exported or imported packages starting with given prefix\n"
+            + "  providers <namespace>          bundles providing capabilities in a namespace\n"
+            + "  requirers <namespace>          bundles requiring capabilities in a namespace\n"
+            + "  bundle <id | symbolic name>    bundles with given artifact id or symbolic name\n"
+            + "  -q, --quiet                    don't print query time to standard error\n";
+
+    private QueryTool() {
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args, System.out, System.err));
+    }
+
+    /**
+     * Runs a query with command line arguments
+     * @param args
+     * @param out stream for results
+     * @param err stream for messages
+     * @return exit code
+     */
+    public static int run(String[] args, PrintStream out, PrintStream err) {
+        boolean quiet = args.length > 0 && ("-q".equals(args[0]) || "--quiet".equals(args[0]));
+        int first = quiet ? 1 : 0;
+        if (args.length - first < 3 || args.length - first > 4) {
+            err.print(USAGE);
+            return 1;
+        }
+        String query = args[first + 1];
+        String argument = args[first + 2];
+        VersionRange range = null;
+        if (args.length - first == 4) {
+            try {
+                range = VersionRange.parseVersionRange(args[first + 3]);
+            } catch (IllegalArgumentException e) {
+                err.println("Invalid version range " + args[first + 3] + ": " + e.getMessage());
+                return 1;
+            }
+        }
+
+        long start = System.nanoTime();
+        QueryIndex index;
+        try {
+            index = QueryIndex.open(new File(args[first]));
+        } catch (IOException e) {
+            err.println("Can't read " + args[first] + ": " + e.getMessage());
+            return 1;
+        }
+        long opened = System.nanoTime();
+        int found;
+        switch (query) {
+            case "package":
+                List<QueryIndex.Match> exporters = index.exporters(argument, range);
+                List<QueryIndex.Match> importers = index.importers(argument);
+                out.println("exported by:");
+                print(out, exporters);
+                out.println("imported by:");
+                print(out, importers);
+                found = exporters.size() + importers.size();
+                break;
+            case "exporters":
+                found = print(out, index.exporters(argument, range));
+                break;
+            case "importers":
+                found = print(out, index.importers(argument));
+                break;
+            case "packages":
+                List<String> packages = index.packages(argument);
+                for (String p : packages) {
+                    out.println(p);
+                }
+                found = packages.size();
+                break;
+            case "providers":
+                found = print(out, index.capabilities(argument, false));
+                break;
+            case "requirers":
+                found = print(out, index.capabilities(argument, true));
+                break;
+            case "bundle":
+                found = print(out, index.bundles(argument));
+                break;
+            default:
+                err.println("Unknown query " + query);
+                err.print(USAGE);
+                return 1;
+        }
+        long end = System.nanoTime();
+        if (!quiet) {
+            err.println("Found " + found + " result(s) in " + index.getBundleCount() + " bundle(s): index mapped in "
+                    + (opened - start) / 1000 + " us, query took " + (end - opened) / 1000 + " us");
+        }
+        return found > 0 ? 0 : 3;
+    }
+
+    private static int print(PrintStream out, List<QueryIndex.Match> matches) {
+        for (QueryIndex.Match m : matches) {
+            StringBuilder sb = new StringBuilder("  ").append(m.getBundle().getId());
+            if (m.getBundle().getSymbolicName() != null) {
+                sb.append(" (").append(m.getBundle().getSymbolicName()).append(' ').append(m.getBundle().getVersion()).append(')');
+            }
+            if (m.getValue() != null) {
+                sb.append(": ").append(m.getValue());
+            }
+            if (m.isOptional()) {
+                sb.append(" (optional)");
+            }
+            out.println(sb);
+        }
+        return matches.size();
+    }
+
+}
@@ -15,11 +15,17 @@
  */
 package org.ops4j.tools.maven.osgireport;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.maven.AbstractMavenLifecycleParticipant;
 import org.apache.maven.MavenExecutionException;
+import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Dependency;
 import org.apache.maven.model.Plugin;
@@ -27,22 +33,84 @@ import org.apache.maven.model.PluginExecution;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.component.annotations.Component;
 import org.codehaus.plexus.component.annotations.Requirement;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
 import org.slf4j.Logger;
 
 @Component(role = AbstractMavenLifecycleParticipant.class)
 public class ReactorSorter extends AbstractMavenLifecycleParticipant {
 
+    /**
+     * Work registered by mojos to be done after all projects of a session are built. Keyed by the request,
+     * because with {@code -T} mojos get a clone of the session, which shares the request with the original.
+     * There's an entry for each session in which this participant is active (the plugin is loaded with
+     * {@code <extensions>true</extensions>}), even if no work was registered.
+     */
+    private static final Map<MavenExecutionRequest, List<Deferred>> DEFERRED = new IdentityHashMap<>();
+
     @Requirement
     private Logger logger;
 
+    /**
+     * Registers work to be done after all projects of given session are built
+     * @param session
+     * @param deferred
+     * @return {@code false} if the work can't be deferred, because this participant isn't active (the plugin
+     * isn't loaded as build extension)
+     */
+    public static boolean defer(MavenSession session, Deferred deferred) {
+        synchronized (DEFERRED) {
+            List<Deferred> list = DEFERRED.get(session.getRequest());
+            if (list == null) {
+                return false;
+            }
+            list.add(deferred);
+            return true;
+        }
+    }
+
     @Override
     public void afterProjectsRead(MavenSession session) throws MavenExecutionException {
+        synchronized (DEFERRED) {
+            DEFERRED.put(session.getRequest(), new ArrayList<>());
+        }
+        long start = System.nanoTime();
+        try {
+            addDependencies(session);
+        } finally {
+            Metrics.of(session).phase("reactorSorter", start);
+        }
+    }
+
+    @Override
+    public void afterSessionEnd(MavenSession session) throws MavenExecutionException {
+        List<Deferred> deferred;
+        synchronized (DEFERRED) {
+            deferred = DEFERRED.remove(session.getRequest());
+        }
+        try {
+            if (deferred != null && !deferred.isEmpty() && session.getResult().hasExceptions()) {
+                // reports of a failed build would be incomplete
+                logger.warn("Build failed, skipping work deferred to the end of the build");
+            } else if (deferred != null) {
+                for (Deferred d : deferred) {
+                    d.run();
+                }
+            }
+        } catch (IOException e) {
+            throw new MavenExecutionException(e.getMessage(), e);
+        } finally {
+            Metrics.remove(session);
+        }
+    }
+
+    private void addDependencies(MavenSession session) {
         // we have to:
         // 1. find a project that declared org.ops4j.tool.maven:osgi-report-maven-plugin plugin
         //    and manifest-summary goal execution
         // 2. add dependencies to all other projects within reactor except #1 and reactor's parent.
 
         MavenProject reportProject = null;
+        boolean fragments = false;
 
         for (MavenProject project : session.getProjects()) {
             Plugin plugin = project.getPlugin("org.ops4j.tools.maven:osgi-report-maven-plugin");
@@ -50,6 +118,7 @@ public class ReactorSorter extends AbstractMavenLifecycleParticipant {
                 for (PluginExecution execution : plugin.getExecutions()) {
                     if (execution.getGoals().stream().anyMatch("manifest-summary"::equals)) {
                         reportProject = project;
+                        fragments = isFragments(session, project, plugin, execution);
                         break;
                     }
                 }
@@ -64,6 +133,12 @@ public class ReactorSorter extends AbstractMavenLifecycleParticipant {
             return;
         }
 
+        if (fragments) {
+            // the report is merged from fragments written by the modules themselves
+            logger.info("Summary of " + reportProject + " is merged from fragments, not adding dependencies");
+            return;
+        }
+
         Set<MavenProject> skipped = new HashSet<>();
         skipped.add(reportProject);
         MavenProject parent = reportProject.getParent();
@@ -92,8 +167,60 @@ public class ReactorSorter extends AbstractMavenLifecycleParticipant {
                 }
                 logger.debug(" - " + dependency);
                 reportProject.getDependencies().add(dependency);
+                Metrics.of(session).count("injectedDependencies", 1);
+            }
+        }
+    }
+
+    /**
+     * Whether {@code manifest-summary} execution merges summary fragments. Resolved like the {@code fragments}
+     * parameter of the mojo - configuration of the execution or plugin, then {@code osgi-report.fragments}
+     * user, system and project property.
+     * @param session
+     * @param project
+     * @param plugin
+     * @param execution
+     * @return
+     */
+    private static boolean isFragments(MavenSession session, MavenProject project, Plugin plugin, PluginExecution execution) {
+        String value = null;
+        for (Object configuration : new Object[] { execution.getConfiguration(), plugin.getConfiguration() }) {
+            if (value == null && configuration instanceof Xpp3Dom) {
+                Xpp3Dom child = ((Xpp3Dom) configuration).getChild("fragments");
+                value = child == null ? null : child.getValue();
             }
         }
+        return Boolean.parseBoolean(evaluate(session, project, value == null ? "${osgi-report.fragments}" : value));
+    }
+
+    /**
+     * Evaluates {@code ${property}} expression, which wasn't resolved when interpolating the model, the same way
+     * as mojo parameters are evaluated - from user, system and then project properties
+     * @param session
+     * @param project
+     * @param value
+     * @return
+     */
+    private static String evaluate(MavenSession session, MavenProject project, String value) {
+        if (!value.startsWith("${") || !value.endsWith("}")) {
+            return value;
+        }
+        String name = value.substring(2, value.length() - 1);
+        String result = session.getUserProperties().getProperty(name);
+        if (result == null) {
+            result = session.getSystemProperties().getProperty(name);
+        }
+        if (result == null) {
+            result = project.getProperties().getProperty(name);
+        }
+        return result;
+    }
+
+    /**
+     * Work done after all projects are built
+     */
+    public interface Deferred {
+        void run() throws IOException;
     }
 
 }
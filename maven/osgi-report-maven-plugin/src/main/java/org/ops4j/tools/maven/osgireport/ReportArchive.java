@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes already rendered per-artifact reports as entries of single zip archive, instead of separate files.
+ * The archive is written sequentially, its central directory serves as the index of the reports.
+ */
+public class ReportArchive implements Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final ZipOutputStream zip;
+    private final long time = System.currentTimeMillis();
+
+    public ReportArchive(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        // reports are small and very repetitive, so even the fastest level compresses them well
+        zip.setLevel(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * Adds single report
+     * @param path relative path of the report (the same as in separate reports directory)
+     * @param bytes
+     */
+    public void add(String path, byte[] bytes) throws IOException {
+        ZipEntry entry = new ZipEntry(path);
+        entry.setTime(time);
+        zip.putNextEntry(entry);
+        zip.write(bytes);
+        zip.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        zip.close();
+    }
+
+}
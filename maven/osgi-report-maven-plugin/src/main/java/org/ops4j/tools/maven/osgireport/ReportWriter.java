@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes already rendered and encoded report content. The same bytes of a section may be written to
+ * aggregate report (through single channel with large buffer) and to a separate report (with single
+ * channel write).
+ */
+public class ReportWriter implements Closeable {
+
+    /** All reports are written using UTF-8, regardless of platform encoding */
+    public static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    public ReportWriter(File file) throws IOException {
+        channel = open(file);
+    }
+
+    /**
+     * Writes (possibly buffering) given content to the report
+     * @param bytes
+     */
+    public void write(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.remaining()) {
+            flush();
+            if (bytes.length > buffer.capacity()) {
+                writeFully(channel, ByteBuffer.wrap(bytes));
+                return;
+            }
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Replaces content of given file with given bytes
+     * @param file
+     * @param bytes
+     */
+    public static void write(File file, byte[] bytes) throws IOException {
+        try (FileChannel fc = open(file)) {
+            writeFully(fc, ByteBuffer.wrap(bytes));
+        }
+    }
+
+    public void flush() throws IOException {
+        // cast, so the plugin compiled with JDK 9+ still runs on JDK 8 (covariant overrides in ByteBuffer)
+        ((Buffer) buffer).flip();
+        writeFully(channel, buffer);
+        ((Buffer) buffer).clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private static FileChannel open(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+}
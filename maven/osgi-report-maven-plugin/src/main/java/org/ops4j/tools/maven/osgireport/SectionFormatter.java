@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+
+/**
+ * Pretty formatting similar to {@code org.apache.karaf.bundle.command.Headers#generateFormattedOutput()}.
+ * Used by {@link Summary}, but doesn't depend on Maven.
+ */
+public final class SectionFormatter {
+
+    private SectionFormatter() {
+    }
+
+    /**
+     * Renders complete report section for single artifact - a {@code = key} line followed by formatted headers.
+     * @param key
+     * @param headers
+     * @return
+     */
+    public static String section(String key, ManifestHeaders headers) {
+        StringWriter sw = new StringWriter(4096);
+        sw.write("= " + key + "\n");
+        try {
+            format(headers, sw);
+        } catch (IOException e) {
+            // not thrown by StringWriter
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Formats main attributes of {@code META-INF/MANIFEST.MF} from single artifact
+     * @param headers
+     * @param fw
+     */
+    public static void format(ManifestHeaders headers, Writer fw) throws IOException {
+        // Bundle-*
+        Map<String, String> bundleAttributes = new TreeMap<>();
+        // *-Package and Require-Bundle
+        Map<String, String> packageAttributes = new TreeMap<>();
+        // *-Service
+        Map<String, String> serviceAttributes = new TreeMap<>();
+        // *-Capability
+        Map<String, String> capAttributes = new TreeMap<>();
+        // remaining
+        Map<String, String> otherAttributes = new TreeMap<>();
+
+        for (Map.Entry<String, String> e : headers.getHeaders().entrySet()) {
+            String h = e.getKey();
+            switch (ManifestHeaders.group(h)) {
+                case BUNDLE:
+                    bundleAttributes.put(h, e.getValue());
+                    break;
+                case PACKAGE:
+                    packageAttributes.put(h, e.getValue());
+                    break;
+                case SERVICE:
+                    serviceAttributes.put(h, e.getValue());
+                    break;
+                case CAPABILITY:
+                    capAttributes.put(h, e.getValue());
+                    break;
+                default:
+                    otherAttributes.put(h, e.getValue());
+                    break;
+            }
+        }
+
+        fw.write("\n== General attributes\n\n");
+        for (String k : otherAttributes.keySet()) {
+            String v = otherAttributes.get(k);
+            if (v != null) {
+                fw.write(k + ": " + v + "\n");
+            }
+        }
+
+        fw.write("\n== Bundle attributes\n\n");
+        for (String k : bundleAttributes.keySet()) {
+            String v = bundleAttributes.get(k);
+            if (v != null) {
+                fw.write(k + ": " + v + "\n");
+            }
+        }
+
+        fw.write("\n== Service attributes\n\n");
+        for (String k : serviceAttributes.keySet()) {
+            String v = serviceAttributes.get(k);
+            if (v != null) {
+                fw.write("\n" + k + ":\n");
+                printFormatted(fw, headers, headers.getClauses(k));
+            }
+        }
+
+        fw.write("\n== Capabilities attributes\n\n");
+        for (String k : capAttributes.keySet()) {
+            String v = capAttributes.get(k);
+            if (v != null) {
+                fw.write("\n" + k + ":\n");
+                printFormatted(fw, headers, headers.getClauses(k));
+            }
+        }
+
+        fw.write("\n== Package attributes\n");
+        for (String k : packageAttributes.keySet()) {
+            String v = packageAttributes.get(k);
+            if (v != null) {
+                fw.write("\n" + k + ":\n");
+                printFormatted(fw, headers, headers.getClauses(k));
+            }
+        }
+    }
+
+    /**
+     * Prints clauses already sorted by {@link ManifestHeaders#sort(Clause[])}
+     * @param fw
+     * @param headers
+     * @param clauses
+     */
+    private static void printFormatted(Writer fw, ManifestHeaders headers, Clause[] clauses) throws IOException {
+        for (Clause c : clauses) {
+            fw.write("    " + c.getName() + "\n");
+            for (Attribute at : c.getAttributes()) {
+                fw.write("        " + at.getName() + " = " + at.getValue() + "\n");
+            }
+            for (Directive d : c.getDirectives()) {
+                if ("uses".equals(d.getName())) {
+                    fw.write("        uses :=\n");
+                    for (String pkg : headers.getUses(d.getValue())) {
+                        fw.write("            " + pkg + "\n");
+                    }
+                } else {
+                    fw.write("        " + d.getName() + " := " + d.getValue() + "\n");
+                }
+            }
+        }
+    }
+
+}
@@ -15,38 +15,59 @@
  */
 package org.ops4j.tools.maven.osgireport;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.jar.Attributes;
-import java.util.jar.JarInputStream;
-import java.util.jar.Manifest;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 
-import org.apache.felix.utils.manifest.Attribute;
 import org.apache.felix.utils.manifest.Clause;
-import org.apache.felix.utils.manifest.Directive;
-import org.apache.felix.utils.manifest.Parser;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.MavenProjectHelper;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.collection.DependencyCollectionException;
+import org.eclipse.aether.resolution.ArtifactResolutionException;
+import org.ops4j.tools.maven.osgireport.analysis.BundleDescriptor;
+import org.ops4j.tools.maven.osgireport.analysis.ResolutionCheck;
+import org.ops4j.tools.maven.osgireport.analysis.SystemProfile;
+import org.ops4j.tools.maven.osgireport.analysis.UsesAnalysis;
+import org.ops4j.tools.maven.osgireport.bytecode.ApiScanner;
+import org.ops4j.tools.maven.osgireport.bytecode.ImportAnalysis;
+import org.ops4j.tools.maven.osgireport.bytecode.SemanticVersioning;
+import org.ops4j.tools.maven.osgireport.content.BundleContent;
+import org.ops4j.tools.maven.osgireport.content.DuplicateAnalysis;
+import org.ops4j.tools.maven.osgireport.content.ExportVerification;
+import org.ops4j.tools.maven.osgireport.diff.Baseline;
+import org.ops4j.tools.maven.osgireport.diff.ManifestDiff;
+import org.ops4j.tools.maven.osgireport.diff.SectionEntries;
+import org.osgi.framework.Version;
 import org.slf4j.Logger;
 
 /**
@@ -55,12 +76,19 @@ import org.slf4j.Logger;
 @Mojo(name = "manifest-summary", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true, inheritByDefault = false, aggregator = true)
 public class Summary extends AbstractMojo {
 
+    private static final byte[] SECTION_SEPARATOR = "\n\n".getBytes(ReportWriter.CHARSET);
+    /** sections rendered ahead of the writer per thread, so a slow writer doesn't keep all of them in memory */
+    private static final int RENDER_AHEAD = 4;
+
     @Parameter(defaultValue = "${project}", readonly = true)
     private MavenProject project;
 
     @Parameter(defaultValue = "${session}", readonly = true)
     private MavenSession session;
 
+    @Parameter(defaultValue = "${plugin}", readonly = true)
+    private PluginDescriptor plugin;
+
     @Parameter(defaultValue = "${project.build.directory}/manifest-summary.txt")
     private File report;
 
@@ -70,196 +98,1076 @@ public class Summary extends AbstractMojo {
     @Parameter
     private String separateReports;
 
+    /**
+     * Optional zip archive with the same per-artifact reports as {@link #separateReports} (with the same relative
+     * paths), written sequentially as single file. Attached with {@code manifest-reports} classifier.
+     */
+    @Parameter(property = "osgi-report.separateReportsArchive")
+    private File separateReportsArchive;
+
+    /**
+     * Whether the report should be merged from summary fragments written by {@code manifest-fragment} goal
+     * in the modules of the reactor, instead of reading the artifacts. {@link ReactorSorter} doesn't make this
+     * project depend on other modules then, so they're built in parallel with {@code -T}. If other modules are
+     * still being built when this goal runs, the merge is deferred to the end of the build (it's skipped when
+     * the build fails) and the report can't be attached - a warning is logged if {@link #attach} is enabled.
+     * Deferring the merge requires the plugin to be declared with {@code <extensions>true</extensions>} -
+     * without it, the goal fails if other modules are still being built.
+     * Only {@link #report}, {@link #separateReports}, {@link #separateReportsArchive} and {@link #baseline}
+     * diff of summaries are written.
+     */
+    @Parameter(property = "osgi-report.fragments", defaultValue = "false")
+    private boolean fragments;
+
+    /**
+     * Number of threads used to read and format artifact manifests. Sections are always written
+     * in the same order, so the report doesn't depend on this value. Only a few sections per thread are
+     * rendered ahead of the one being written.
+     */
+    @Parameter(property = "osgi-report.threads", defaultValue = "1")
+    private int threads;
+
+    /**
+     * Whether resolved transitive dependencies of this project should be summarized together with
+     * the artifacts of the reactor. Distinct dependencies are resolved and read using {@link #threads}.
+     */
+    @Parameter(property = "osgi-report.includeDependencies", defaultValue = "false")
+    private boolean includeDependencies;
+
+    /**
+     * Comma-separated scopes of dependencies summarized with {@link #includeDependencies}.
+     */
+    @Parameter(property = "osgi-report.dependencyScopes", defaultValue = "compile,runtime")
+    private String dependencyScopes;
+
+    /**
+     * Maximum depth of bundles nested in collected artifacts (jars from {@code Bundle-ClassPath},
+     * {@code WEB-INF/lib}, KAR repositories or zip assemblies), which are summarized after their artifact
+     * as {@code artifact!/path} sections. With {@code 0}, nested archives are not read. Otherwise KAR, WAR
+     * and zip artifacts are collected even if they aren't bundles, but only bundles nested in them are
+     * summarized.
+     */
+    @Parameter(property = "osgi-report.nestedDepth", defaultValue = "0")
+    private int nestedDepth;
+
+    /**
+     * Maximum uncompressed size of single nested archive in bytes. Bigger archives are skipped.
+     */
+    @Parameter(property = "osgi-report.nestedMaxSize", defaultValue = "268435456")
+    private long nestedMaxSize;
+
+    /**
+     * Sections of artifacts which didn't change since previous run are taken from {@link #index} instead
+     * of being rendered again. Separate reports of such artifacts are not rewritten. The index is ignored
+     * when it was written by different version (or build) of the plugin.
+     */
+    @Parameter(property = "osgi-report.incremental", defaultValue = "false")
+    private boolean incremental;
+
+    @Parameter(defaultValue = "${project.build.directory}/manifest-summary.idx")
+    private File index;
+
+    /**
+     * Whether to use content-addressed cache of parsed manifests, shared between builds and projects.
+     * Archives found in the cache are not decompressed or parsed again.
+     */
+    @Parameter(property = "osgi-report.useManifestCache", defaultValue = "false")
+    private boolean useManifestCache;
+
+    @Parameter(property = "osgi-report.manifestCache", defaultValue = "${settings.localRepository}/../osgi-report-cache")
+    private File manifestCache;
+
+    /**
+     * Maximum size of {@link #manifestCache} in bytes. Least recently used entries are removed when it's
+     * exceeded.
+     */
+    @Parameter(property = "osgi-report.manifestCacheSize", defaultValue = "67108864")
+    private long manifestCacheSize;
+
+    /**
+     * Optional machine readable report with one JSON record per artifact (NDJSON).
+     */
+    @Parameter(property = "osgi-report.jsonReport")
+    private File jsonReport;
+
+    /**
+     * Classifier used when attaching {@link #jsonReport}.
+     */
+    @Parameter(defaultValue = "manifest-summary")
+    private String jsonClassifier;
+
+    /**
+     * Optional directory for static HTML report - one page per artifact (rendered using {@link #threads}),
+     * with links from imported packages to their exporters and client-side search of artifacts, packages
+     * and capabilities. Pages of unchanged artifacts are not rewritten.
+     */
+    @Parameter(property = "osgi-report.htmlReport")
+    private File htmlReport;
+
+    /**
+     * Optional memory-mapped index of bundles, exported and imported packages and capabilities, queried
+     * with {@link QueryTool} (e.g. which bundle exports a package in given version range and who imports it)
+     * without reading the summary.
+     */
+    @Parameter(property = "osgi-report.queryIndex")
+    private File queryIndex;
+
+    /**
+     * Optional baseline - previous summary (like {@code manifest-summary.txt} attached by previous release)
+     * or a directory with previous versions of the bundles. Differences are written to {@link #baselineReport}.
+     * Artifacts are matched by {@code groupId:artifactId[:classifier]} or by {@code Bundle-SymbolicName}.
+     */
+    @Parameter(property = "osgi-report.baseline")
+    private File baseline;
+
+    @Parameter(property = "osgi-report.baselineReport", defaultValue = "${project.build.directory}/manifest-diff.txt")
+    private File baselineReport;
+
+    /**
+     * Comma-separated headers which are not compared with {@link #baseline}.
+     */
+    @Parameter(property = "osgi-report.baselineIgnore", defaultValue = "Bnd-LastModified")
+    private String baselineIgnore;
+
+    /**
+     * Optional report of requirements ({@code Import-Package}, {@code Require-Bundle}, {@code Fragment-Host}
+     * and {@code Require-Capability}) of collected bundles, which can't be satisfied by any of these bundles
+     * (or system bundle) or which are satisfied by more than one bundle.
+     */
+    @Parameter(property = "osgi-report.resolutionReport")
+    private File resolutionReport;
+
+    /**
+     * Properties file (like Karaf's {@code etc/config.properties}) with
+     * {@code org.osgi.framework.system.packages} and {@code org.osgi.framework.system.capabilities} used
+     * by the system bundle when creating {@link #resolutionReport}. Without this file (or without these
+     * properties), the system bundle exports OSGi Core framework packages and Java SE packages and provides
+     * {@code osgi.ee} capability of the JVM running the build.
+     */
+    @Parameter(property = "osgi-report.systemPackages")
+    private File systemPackages;
+
+    /**
+     * Whether the build should fail if {@link #resolutionReport} contains mandatory unresolved requirements.
+     */
+    @Parameter(property = "osgi-report.failOnUnresolved", defaultValue = "false")
+    private boolean failOnUnresolved;
+
+    /**
+     * Optional report of potential class space inconsistencies caused by {@code uses} directives of packages
+     * imported by collected bundles.
+     */
+    @Parameter(property = "osgi-report.usesReport")
+    private File usesReport;
+
+    /**
+     * Optional report of exported packages, which versions don't match the changes of their API since
+     * {@link #baseline}. Class files of exported packages are compared, so the baseline has to be a directory
+     * with previous versions of the bundles.
+     */
+    @Parameter(property = "osgi-report.semanticVersioningReport")
+    private File semanticVersioningReport;
+
+    /**
+     * Whether the build should fail if {@link #semanticVersioningReport} contains packages with too low versions.
+     */
+    @Parameter(property = "osgi-report.failOnSemanticVersioning", defaultValue = "false")
+    private boolean failOnSemanticVersioning;
+
+    /**
+     * Optional report of exported packages which are not contained in their bundles and of packages with
+     * classes, which are neither exported nor private. Hidden packages are checked only for bundles with
+     * {@code Private-Package} header. Only zip central directories of the bundles are read.
+     */
+    @Parameter(property = "osgi-report.exportReport")
+    private File exportReport;
+
+    /**
+     * Optional report of split packages, classes contained in more bundles and bundles with the same symbolic
+     * name and version. Only zip central directories of the bundles are read.
+     */
+    @Parameter(property = "osgi-report.duplicatesReport")
+    private File duplicatesReport;
+
+    /**
+     * Whether classes in {@link #duplicatesReport} are compared by CRC-32 stored in zip central directory,
+     * to distinguish identical and diverging copies.
+     */
+    @Parameter(property = "osgi-report.duplicatesCompareCrc", defaultValue = "true")
+    private boolean duplicatesCompareCrc;
+
+    /**
+     * Optional report of unused and missing imports. All classes of collected bundles are scanned for
+     * referenced packages, which are compared with {@code Import-Package} and {@code DynamicImport-Package}.
+     */
+    @Parameter(property = "osgi-report.importReport")
+    private File importReport;
+
+    /**
+     * Optional timing and throughput of the report (durations of phases, per-artifact durations, sizes and
+     * header counts) written as JSON. Timing summary is logged even without this file.
+     */
+    @Parameter(property = "osgi-report.metricsReport")
+    private File metricsReport;
+
+    /**
+     * Number of the slowest artifacts logged at the end.
+     */
+    @Parameter(property = "osgi-report.slowestArtifacts", defaultValue = "10")
+    private int slowestArtifacts;
+
     @Component
     private Logger logger;
 
     @Component
     private MavenProjectHelper projectHelper;
 
+    @Component
+    private RepositorySystem repositorySystem;
+
+    private ManifestReader manifests;
+
+    private NestedArchives nestedArchives;
+
+    private SummaryIndex summaryIndex;
+
+    private Metrics metrics;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
 
+        metrics = Metrics.of(session);
+        if (fragments) {
+            executeFragments();
+            return;
+        }
+
+        ManifestCache cache = useManifestCache ? new ManifestCache(manifestCache, manifestCacheSize) : null;
+        manifests = new ManifestReader(cache);
+        nestedArchives = nestedDepth > 0 ? new NestedArchives(nestedDepth, nestedMaxSize, manifests.getHeaderCache()) : null;
+        summaryIndex = incremental ? loadIndex() : null;
+
+        long phase = System.nanoTime();
         Set<Artifact> allArtifacts = new TreeSet<>(new ArtifactComparator());
         collect(allArtifacts, project.getArtifact(), project.getAttachedArtifacts());
         for (MavenProject p : session.getProjects()) {
             collect(allArtifacts, p.getArtifact(), p.getAttachedArtifacts());
         }
+        metrics.phase("collect", phase);
+        if (includeDependencies) {
+            phase = System.nanoTime();
+            collectDependencies(allArtifacts);
+            metrics.phase("dependencies", phase);
+        }
 
         report.getParentFile().mkdirs();
+        if (jsonReport != null) {
+            jsonReport.getAbsoluteFile().getParentFile().mkdirs();
+        }
+
+        File individualReportsDirectory = individualReportsDirectory();
+
+        List<Artifact> artifacts = new ArrayList<>(allArtifacts);
+        List<FutureTask<Section>> sections = new ArrayList<>(artifacts.size());
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
 
-        File individualReportsDirectory = null;
-        if (separateReports != null) {
-            individualReportsDirectory = new File(separateReports);
-            if (!individualReportsDirectory.exists()) {
-                individualReportsDirectory.mkdirs();
-            } else if (individualReportsDirectory.isFile()) {
-                logger.warn(individualReportsDirectory + " exists and is not a directory. Skipping.");
-                individualReportsDirectory = null;
+        Baseline previous = null;
+        if (baseline != null) {
+            try {
+                previous = Baseline.load(baseline, manifests);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Can't read baseline " + baseline + ": " + e.getMessage(), e);
             }
+            baselineReport.getAbsoluteFile().getParentFile().mkdirs();
         }
 
-        try (FileWriter fw = new FileWriter(report)) {
-            for (Artifact artifact : allArtifacts) {
+        phase = System.nanoTime();
+        int reused = 0;
+        long written = 0;
+        ManifestDiff diff = null;
+        try (ReportWriter fw = new ReportWriter(report);
+             ReportWriter jw = jsonReport == null ? null : new ReportWriter(jsonReport);
+             Writer dw = previous == null ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(baselineReport), ReportWriter.CHARSET));
+             ReportArchive za = separateReportsArchive == null ? null : new ReportArchive(separateReportsArchive)) {
+            if (dw != null) {
+                diff = new ManifestDiff(previous, dw, new HashSet<>(Arrays.asList(baselineIgnore.split("\\s*,\\s*"))));
+            }
+            int window = Math.max(threads, 1) * RENDER_AHEAD;
+            for (int i = 0; i < Math.min(window, artifacts.size()); i++) {
+                sections.add(submit(executor, artifacts.get(i)));
+            }
+
+            for (int i = 0; i < artifacts.size(); i++) {
+                if (i + window < artifacts.size()) {
+                    sections.add(submit(executor, artifacts.get(i + window)));
+                }
+                Artifact artifact = artifacts.get(i);
                 logger.info("Processing {}", artifact);
-                fw.write("= " + artifact.toString() + "\n");
-                process(artifact, fw);
-                fw.write("\n\n");
+                Section section = section(sections.get(i));
+                sections.set(i, null);
+                if (section.reused) {
+                    reused++;
+                }
+                if (section.text.length == 0) {
+                    // container without nested bundles
+                    continue;
+                }
+                fw.write(section.text);
+                fw.write(SECTION_SEPARATOR);
+                written += section.text.length + SECTION_SEPARATOR.length;
+                if (jw != null) {
+                    jw.write(section.json);
+                }
+                if (diff != null) {
+                    String artifactKey = Baseline.key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier());
+                    if (nestedArchives == null) {
+                        diff.artifact(artifact.toString(), artifactKey, new String(section.text, ReportWriter.CHARSET));
+                    } else {
+                        for (Map.Entry<String, String> e : SectionEntries.split(new String(section.text, ReportWriter.CHARSET)).entrySet()) {
+                            int nested = e.getKey().indexOf("!/");
+                            diff.artifact(e.getKey(), nested < 0 ? artifactKey : artifactKey + e.getKey().substring(nested), e.getValue());
+                        }
+                    }
+                }
 
+                if (za != null) {
+                    za.add(getReportFile(artifact), section.text);
+                }
                 if (individualReportsDirectory != null) {
                     File reportFile = new File(individualReportsDirectory, getReportFile(artifact));
-                    reportFile.getParentFile().mkdirs();
-                    try (FileWriter fwi = new FileWriter(reportFile)) {
-                        fwi.write("= " + artifact.toString() + "\n");
-                        process(artifact, fwi);
+                    if (!section.reused || !reportFile.isFile()) {
+                        reportFile.getParentFile().mkdirs();
+                        ReportWriter.write(reportFile, section.text);
                     }
                 }
             }
+            if (diff != null) {
+                diff.finish();
+            }
         } catch (IOException e) {
             throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        metrics.phase("render", phase);
+        metrics.count("artifacts", artifacts.size());
+        metrics.count("reused", reused);
+        metrics.count("written", written);
+
+        if (diff != null) {
+            logger.info("Baseline: {} changed, {} added, {} removed artifact(s), see {}", diff.getChanged(),
+                    diff.getAdded(), diff.getRemoved(), baselineReport);
+        }
+
+        if (cache != null) {
+            if (manifests.getCacheFailures() > 0) {
+                logger.warn("Can't write {} entries to {}: {}", manifests.getCacheFailures(), manifestCache,
+                        manifests.getCacheFailure());
+            }
+            try {
+                int removed = cache.evict();
+                if (removed > 0) {
+                    logger.info("Removed {} least recently used entries from {}", removed, manifestCache);
+                }
+            } catch (IOException e) {
+                logger.warn("Can't clean up {}: {}", manifestCache, e.getMessage());
+            }
+        }
+
+        logger.debug("Parsed {} distinct header values, {} distinct symbols",
+                manifests.getHeaderCache().getParsedCount(), manifests.getHeaderCache().getSymbolCount());
+        metrics.count("distinctHeaderValues", manifests.getHeaderCache().getParsedCount());
+        metrics.count("distinctSymbols", manifests.getHeaderCache().getSymbolCount());
+
+        if (summaryIndex != null) {
+            logger.info("Reused {} unchanged artifact(s), rendered {} artifact(s)", reused, artifacts.size() - reused);
+            phase = System.nanoTime();
+            try {
+                summaryIndex.save(index);
+            } catch (IOException e) {
+                logger.warn("Can't write {}: {}", index, e.getMessage());
+            }
+            metrics.phase("index", phase);
+        }
+
+        if (htmlReport != null) {
+            phase = System.nanoTime();
+            writeHtml(artifacts);
+            metrics.phase("html", phase);
+        }
+
+        if (queryIndex != null) {
+            phase = System.nanoTime();
+            writeQueryIndex(artifacts);
+            metrics.phase("queryIndex", phase);
+        }
+
+        if (resolutionReport != null || usesReport != null) {
+            phase = System.nanoTime();
+            analyze(artifacts);
+            metrics.phase("resolution", phase);
         }
 
+        if (semanticVersioningReport != null) {
+            phase = System.nanoTime();
+            semanticVersioning(artifacts, previous);
+            metrics.phase("semanticVersioning", phase);
+        }
+
+        if (exportReport != null || duplicatesReport != null || importReport != null) {
+            phase = System.nanoTime();
+            checkContent(artifacts);
+            metrics.phase("content", phase);
+        }
+
+        writeMetrics();
+
         if (attach) {
             logger.info("Attaching " + report);
             projectHelper.attachArtifact(session.getCurrentProject(), "txt", "manifest-summary", report);
+            attachArchive();
+            if (jsonReport != null) {
+                logger.info("Attaching " + jsonReport);
+                projectHelper.attachArtifact(session.getCurrentProject(), "ndjson", jsonClassifier, jsonReport);
+            }
         }
     }
 
     /**
-     * Returns a relative file path for given artifact's report.
-     * @param artifact
+     * Merges summary fragments of reactor modules now or, if some modules are still being built, at the end
+     * of the build.
+     */
+    private void executeFragments() throws MojoExecutionException {
+        if (jsonReport != null || htmlReport != null || queryIndex != null || nestedDepth > 0 || includeDependencies
+                || resolutionReport != null || usesReport != null || semanticVersioningReport != null || exportReport != null
+                || duplicatesReport != null || importReport != null) {
+            logger.warn("Only summary, separate reports and baseline diff are written when merging summary fragments");
+        }
+        List<MavenProject> building = new ArrayList<>();
+        for (MavenProject p : session.getProjects()) {
+            if (p != project && session.getResult().getBuildSummary(p) == null) {
+                building.add(p);
+            }
+        }
+        if (!building.isEmpty()) {
+            if (!ReactorSorter.defer(session, () -> {
+                mergeFragments();
+                writeMetrics();
+            })) {
+                throw new MojoExecutionException(building.size() + " module(s) are still being built and summary"
+                        + " fragments can't be merged at the end of the build, because osgi-report-maven-plugin is not"
+                        + " declared with <extensions>true</extensions>. Declare it as build extension or build this"
+                        + " project after the other modules.");
+            }
+            logger.info("{} module(s) are still being built, summary fragments will be merged at the end of the build",
+                    building.size());
+            if (attach) {
+                logger.warn("{} will be written after the artifacts of {} are installed or deployed, so it can't be"
+                        + " attached. Set attach to false or build this project after the other modules.", report, project);
+            }
+            return;
+        }
+        try {
+            mergeFragments();
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        writeMetrics();
+        if (attach) {
+            logger.info("Attaching " + report);
+            projectHelper.attachArtifact(session.getCurrentProject(), "txt", "manifest-summary", report);
+            attachArchive();
+        }
+    }
+
+    private void attachArchive() {
+        if (separateReportsArchive != null) {
+            logger.info("Attaching " + separateReportsArchive);
+            projectHelper.attachArtifact(session.getCurrentProject(), "zip", "manifest-reports", separateReportsArchive);
+        }
+    }
+
+    /**
+     * Writes the report by k-way merge of sorted summary fragments of reactor modules
+     */
+    private void mergeFragments() throws IOException {
+        long start = System.currentTimeMillis();
+        long phase = System.nanoTime();
+        List<File> files = new ArrayList<>();
+        for (MavenProject p : session.getProjects()) {
+            File fragment = new File(p.getBuild().getDirectory(), SummaryFragment.FILE_NAME);
+            if (fragment.isFile()) {
+                files.add(fragment);
+            }
+        }
+        File individualReportsDirectory = individualReportsDirectory();
+        Baseline previous = baseline == null ? null : Baseline.load(baseline, new ManifestReader());
+        report.getAbsoluteFile().getParentFile().mkdirs();
+        if (previous != null) {
+            baselineReport.getAbsoluteFile().getParentFile().mkdirs();
+        }
+
+        int count;
+        ManifestDiff diff = null;
+        try (ReportWriter fw = new ReportWriter(report);
+             Writer dw = previous == null ? null : new BufferedWriter(new OutputStreamWriter(new FileOutputStream(baselineReport), ReportWriter.CHARSET));
+             ReportArchive za = separateReportsArchive == null ? null : new ReportArchive(separateReportsArchive)) {
+            ManifestDiff d = dw == null ? null
+                    : new ManifestDiff(previous, dw, new HashSet<>(Arrays.asList(baselineIgnore.split("\\s*,\\s*"))));
+            count = SummaryFragment.merge(files, section -> {
+                fw.write(section.getText());
+                fw.write(SECTION_SEPARATOR);
+                String[] key = section.getKey();
+                if (d != null) {
+                    d.artifact(section.getId(), Baseline.key(key[0], key[1], key[4]),
+                            new String(section.getText(), ReportWriter.CHARSET));
+                }
+                if (za != null) {
+                    za.add(getReportFile(key), section.getText());
+                }
+                if (individualReportsDirectory != null) {
+                    File reportFile = new File(individualReportsDirectory, getReportFile(key));
+                    reportFile.getParentFile().mkdirs();
+                    ReportWriter.write(reportFile, section.getText());
+                }
+            });
+            if (d != null) {
+                d.finish();
+            }
+            diff = d;
+        }
+        logger.info("Merged {} section(s) from {} summary fragment(s) in {} ms", count, files.size(),
+                System.currentTimeMillis() - start);
+        metrics.phase("merge", phase);
+        metrics.count("fragments", files.size());
+        metrics.count("artifacts", count);
+        if (diff != null) {
+            logger.info("Baseline: {} changed, {} added, {} removed artifact(s), see {}", diff.getChanged(),
+                    diff.getAdded(), diff.getRemoved(), baselineReport);
+        }
+    }
+
+    /**
+     * Loads {@link #index} written by previous run
      * @return
      */
-    private String getReportFile(Artifact artifact) {
-        StringWriter name = new StringWriter();
-        name.append(artifact.getGroupId().replaceAll("\\.", "/"));
-        name.append("/");
-        name.append(artifact.getArtifactId());
-        name.append("/");
-        name.append(artifact.getVersion());
-        name.append("/");
-        name.append(artifact.getArtifactId());
-        name.append("-");
-        name.append(artifact.getVersion());
-        if (artifact.getClassifier() != null) {
-            name.append("-").append(artifact.getClassifier());
+    private SummaryIndex loadIndex() {
+        String format = indexFormat();
+        try {
+            return SummaryIndex.load(index, format);
+        } catch (IOException e) {
+            logger.warn("Can't read {}, all artifacts will be processed: {}", index, e.getMessage());
+            return new SummaryIndex(format);
         }
-        name.append(".");
-        name.append(artifact.getType() == null || artifact.getType().equals("") ? "jar" : artifact.getType());
-        name.append(".txt");
+    }
 
-        return name.toString();
+    /**
+     * Identifies the code rendering sections stored in {@link #index} - plugin version and, as snapshots
+     * may change without changing the version, checksum of the plugin archive.
+     * @return
+     */
+    private String indexFormat() {
+        String format = plugin.getId();
+        File file = plugin.getPluginArtifact() == null ? null : plugin.getPluginArtifact().getFile();
+        if (file != null && file.isFile()) {
+            try {
+                format += " " + ManifestReader.sha256(file);
+            } catch (IOException e) {
+                logger.debug("Can't read {}: {}", file, e.getMessage());
+            }
+        }
+        return format;
+    }
+
+    /**
+     * Logs timing summary and writes {@link #metricsReport}, if configured
+     */
+    private void writeMetrics() {
+        metrics.log(logger, slowestArtifacts);
+        if (metricsReport == null) {
+            return;
+        }
+        try {
+            metrics.write(metricsReport);
+        } catch (IOException e) {
+            logger.warn("Can't write {}: {}", metricsReport, e.getMessage());
+        }
+    }
+
+    /**
+     * Directory for {@link #separateReports}
+     * @return {@code null} if separate reports are not written
+     */
+    private File individualReportsDirectory() {
+        if (separateReports == null) {
+            return null;
+        }
+        File directory = new File(separateReports);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        } else if (directory.isFile()) {
+            logger.warn(directory + " exists and is not a directory. Skipping.");
+            return null;
+        }
+        return directory;
     }
 
     /**
-     * Process {@code META-INF/MANIFEST.MF} from single artifact
+     * Renders complete report section for single artifact or takes it from the index, if the artifact
+     * didn't change.
      * @param artifact
-     * @param fw
-     */
-    private void process(Artifact artifact, FileWriter fw) throws IOException {
-        // Bundle-*
-        Map<String, Object> bundleAttributes = new TreeMap<>();
-        // *-Package and Require-Bundle
-        Map<String, Object> packageAttributes = new TreeMap<>();
-        // *-Service
-        Map<String, Object> serviceAttributes = new TreeMap<>();
-        // *-Capability
-        Map<String, Object> capAttributes = new TreeMap<>();
-        // remaining
-        Map<String, Object> otherAttributes = new TreeMap<>();
-
-        File a = artifact.getFile();
-        try (JarInputStream jis = new JarInputStream(new FileInputStream(a))) {
-            Manifest manifest = jis.getManifest();
-            Attributes attrs = manifest.getMainAttributes();
-            for (Object header : attrs.keySet()) {
-                String h = header.toString();
-                if (h.startsWith("Bundle-")) {
-                    bundleAttributes.put(h, attrs.getValue(h));
-                } else if (h.endsWith("-Package") || h.equals("Require-Bundle")) {
-                    packageAttributes.put(h, attrs.getValue(h));
-                } else if (h.endsWith("-Service")) {
-                    serviceAttributes.put(h, attrs.getValue(h));
-                } else if (h.endsWith("-Capability")) {
-                    capAttributes.put(h, attrs.getValue(h));
-                } else {
-                    otherAttributes.put(h, attrs.getValue(h));
+     * @return
+     */
+    private Section render(Artifact artifact) throws IOException {
+        long start = System.nanoTime();
+        String key = artifact.toString();
+        // sections with nested bundles are stored separately, so changing the depth doesn't reuse wrong sections
+        String indexKey = nestedArchives == null ? key : key + "!/" + nestedDepth;
+        File file = artifact.getFile();
+        byte[] text = null;
+        if (summaryIndex != null) {
+            String checksum = summaryIndex.isFresh(indexKey, file) ? null : manifests.checksum(file);
+            text = summaryIndex.reuse(indexKey, file, checksum);
+        }
+        boolean reused = text != null;
+
+        ManifestHeaders headers = null;
+        List<NestedArchives.Nested> nested = null;
+        if (text == null) {
+            headers = headers(artifact);
+            List<String> sections = new ArrayList<>();
+            if (headers.isBundle()) {
+                // containers which aren't bundles are collected only for the bundles nested in them
+                sections.add(SectionFormatter.section(key, headers));
+            }
+            if (nestedArchives != null) {
+                nested = nestedArchives.scan(file);
+                sections.addAll(nested(key, nested));
+            }
+            text = String.join(new String(SECTION_SEPARATOR, ReportWriter.CHARSET), sections).getBytes(ReportWriter.CHARSET);
+            if (summaryIndex != null) {
+                summaryIndex.update(indexKey, file, manifests.checksum(file), text);
+            }
+        }
+
+        byte[] json = null;
+        if (jsonReport != null) {
+            StringBuilder records = new StringBuilder();
+            ManifestHeaders artifactHeaders = headers == null ? headers(artifact) : headers;
+            if (artifactHeaders.isBundle()) {
+                records.append(JsonSummary.record(coordinates(artifact), artifactHeaders)).append('\n');
+            }
+            if (nestedArchives != null) {
+                // the same bundles as the nested sections of the text report
+                for (NestedArchives.Nested n : nested == null ? nestedArchives.scan(file) : nested) {
+                    if (n.getHeaders() != null) {
+                        records.append(JsonSummary.record(coordinates(artifact, n), n.getHeaders())).append('\n');
+                    }
                 }
             }
+            json = records.toString().getBytes(ReportWriter.CHARSET);
+        }
+
+        metrics.format(key, start, text.length);
+        return new Section(text, json, reused);
+    }
+
+    /**
+     * Renders sections of bundles nested in an artifact
+     * @param key identifier of the artifact
+     * @param nestedBundles bundles found by {@link NestedArchives#scan(File)}
+     * @return
+     */
+    private List<String> nested(String key, List<NestedArchives.Nested> nestedBundles) {
+        List<String> sections = new ArrayList<>();
+        for (NestedArchives.Nested nested : nestedBundles) {
+            String id = key + "!/" + nested.getPath();
+            if (nested.getHeaders() == null) {
+                logger.warn("Can't process {}: {}", id, nested.getError());
+            } else {
+                sections.add(SectionFormatter.section(id, nested.getHeaders()));
+            }
+        }
+        return sections;
+    }
+
+    /**
+     * Writes {@link #htmlReport}
+     * @param artifacts
+     */
+    private void writeHtml(List<Artifact> artifacts) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        HtmlReport html = new HtmlReport(htmlReport);
+        for (Artifact artifact : artifacts) {
+            ManifestHeaders headers = headers(artifact);
+            if (headers.isBundle()) {
+                html.add(artifact.toString(), headers);
+            }
+        }
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            html.write(executor);
         } catch (IOException e) {
-            logger.warn("Can't process {}: {}", artifact.toString(), e.getMessage());
+            throw new MojoExecutionException("Can't write " + htmlReport + ": " + e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
+        logger.info("HTML report: {} file(s) written, {} unchanged, {} removed in {} ms, see {}", html.getWritten(),
+                html.getUnchanged(), html.getRemoved(), System.currentTimeMillis() - start, new File(htmlReport, "index.html"));
+        metrics.count("htmlWritten", html.getWritten());
+    }
 
-        fw.write("\n== General attributes\n\n");
-        for (String k : otherAttributes.keySet()) {
-            String v = (String) otherAttributes.get(k);
-            if (v != null) {
-                fw.write(String.format("%s: %s\n", k, v));
+    /**
+     * Writes {@link #queryIndex}
+     * @param artifacts
+     */
+    private void writeQueryIndex(List<Artifact> artifacts) throws MojoExecutionException {
+        QueryIndex.Writer writer = new QueryIndex.Writer();
+        for (Artifact artifact : artifacts) {
+            ManifestHeaders headers = headers(artifact);
+            if (headers.isBundle()) {
+                writer.add(artifact.toString(), headers);
             }
         }
+        try {
+            writer.write(queryIndex);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't write " + queryIndex + ": " + e.getMessage(), e);
+        }
+        logger.info("Query index written to {}", queryIndex);
+    }
 
-        fw.write("\n== Bundle attributes\n\n");
-        for (String k : bundleAttributes.keySet()) {
-            String v = (String) bundleAttributes.get(k);
-            if (v != null) {
-                fw.write(String.format("%s: %s\n", k, v));
+    /**
+     * Analyzes collected bundles together and writes {@link #resolutionReport} and {@link #usesReport}.
+     * @param artifacts
+     */
+    private void analyze(List<Artifact> artifacts) throws MojoExecutionException, MojoFailureException {
+        ResolutionCheck check;
+        try {
+            check = new ResolutionCheck(systemPackages == null ? SystemProfile.defaultProfile() : SystemProfile.load(systemPackages));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Can't read " + (systemPackages == null ? "default system profile" : systemPackages)
+                    + ": " + e.getMessage(), e);
+        }
+        for (Artifact artifact : artifacts) {
+            ManifestHeaders headers = headers(artifact);
+            if (headers.isBundle()) {
+                check.add(new BundleDescriptor(artifact.toString(), headers));
             }
         }
 
-        fw.write("\n== Service attributes\n\n");
-        for (String k : serviceAttributes.keySet()) {
-            String v = (String) serviceAttributes.get(k);
-            if (v != null) {
-                fw.write("\n" + k + ":\n");
-                printFormatted(fw, v);
+        if (usesReport != null) {
+            long start = System.currentTimeMillis();
+            UsesAnalysis uses = new UsesAnalysis(check);
+            uses.analyze();
+            logger.debug("Analyzed uses constraints in {} ms", System.currentTimeMillis() - start);
+            try (Writer w = analysisReport(usesReport)) {
+                uses.write(w);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
             }
+            logger.info("Uses constraints: {} potential conflict(s), see {}", uses.getConflicts().size(), usesReport);
         }
 
-        fw.write("\n== Capabilities attributes\n\n");
-        for (String k : capAttributes.keySet()) {
-            String v = (String) capAttributes.get(k);
-            if (v != null) {
-                fw.write("\n" + k + ":\n");
-                printFormatted(fw, v);
+        if (resolutionReport != null) {
+            long start = System.currentTimeMillis();
+            check.check();
+            logger.debug("Checked {} requirements against {} capabilities in {} ms", check.getRequirementCount(),
+                    check.getIndex().size(), System.currentTimeMillis() - start);
+            try (Writer w = analysisReport(resolutionReport)) {
+                check.write(w);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            logger.info("Resolution check: {} unresolved, {} unresolved optional, {} ambiguous requirement(s), see {}",
+                    check.getUnresolved().size(), check.getUnresolvedOptional().size(), check.getAmbiguous().size(),
+                    resolutionReport);
+            if (failOnUnresolved && !check.getUnresolved().isEmpty()) {
+                throw new MojoFailureException(check.getUnresolved().size() + " requirement(s) can't be satisfied, see "
+                        + resolutionReport);
             }
         }
+    }
 
-        fw.write("\n== Package attributes\n");
-        for (String k : packageAttributes.keySet()) {
-            String v = (String) packageAttributes.get(k);
-            if (v != null) {
-                fw.write("\n" + k + ":\n");
-                printFormatted(fw, v);
+    /**
+     * Compares API of exported packages with {@link #baseline} bundles and writes {@link #semanticVersioningReport}.
+     * @param artifacts
+     * @param previous
+     */
+    private void semanticVersioning(List<Artifact> artifacts, Baseline previous) throws MojoExecutionException, MojoFailureException {
+        if (previous == null || !baseline.isDirectory()) {
+            logger.warn("Semantic versioning check requires a baseline directory with previous versions of the bundles. Skipping.");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        SemanticVersioning check;
+        try (Writer w = analysisReport(semanticVersioningReport)) {
+            check = new SemanticVersioning(baseline, w);
+            for (Artifact artifact : artifacts) {
+                ManifestHeaders headers = headers(artifact);
+                Baseline.Entry entry = previous.find(Baseline.key(artifact.getGroupId(), artifact.getArtifactId(), artifact.getClassifier()),
+                        SectionEntries.symbolicName(headers.getHeader("Bundle-SymbolicName")));
+                if (entry == null || entry.getFile() == null || !artifact.getFile().isFile()) {
+                    continue;
+                }
+                Map<String, Version> previousExports = exports(manifests.headers(entry.getFile()));
+                if (previousExports.isEmpty()) {
+                    continue;
+                }
+                Map<String, Version> currentExports = exports(headers);
+                check.bundle(artifact.toString(), entry.getId(),
+                        previousExports, ApiScanner.scan(entry.getFile(), previousExports.keySet(), executor),
+                        currentExports, ApiScanner.scan(artifact.getFile(), currentExports.keySet(), executor));
+            }
+            check.finish();
+        } catch (IOException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
             }
         }
+        logger.debug("Compared API of {} package(s) in {} ms", check.getPackages(), System.currentTimeMillis() - start);
+        logger.info("Semantic versioning: {} package(s) with too low version, {} with excessive version, see {}",
+                check.getTooLow(), check.getExcessive(), semanticVersioningReport);
+        if (failOnSemanticVersioning && check.getTooLow() > 0) {
+            throw new MojoFailureException(check.getTooLow() + " exported package(s) with too low version, see "
+                    + semanticVersioningReport);
+        }
     }
 
-    private void printFormatted(FileWriter fw, String value) throws IOException {
-        Clause[] clauses = Parser.parseHeader(value);
-        Arrays.sort(clauses, Comparator.comparing(Clause::getName));
-        for (Clause c : clauses) {
-            fw.write(String.format("    %s\n", c.getName()));
-            Attribute[] atts = c.getAttributes();
-            Directive[] dirs = c.getDirectives();
-            Arrays.sort(atts, Comparator.comparing(Attribute::getName));
-            Arrays.sort(dirs, Comparator.comparing(Directive::getName));
-            for (Attribute at : atts) {
-                fw.write(String.format("        %s = %s\n", at.getName(), at.getValue()));
+    /**
+     * Indexes content of collected bundles (each bundle is read once, bundles are read in parallel) and writes
+     * {@link #exportReport}, {@link #duplicatesReport} and {@link #importReport}.
+     * @param artifacts
+     */
+    private void checkContent(List<Artifact> artifacts) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        ExportVerification verification = exportReport == null ? null : new ExportVerification();
+        DuplicateAnalysis duplicates = duplicatesReport == null ? null : new DuplicateAnalysis(duplicatesCompareCrc);
+        ImportAnalysis imports = importReport == null ? null : new ImportAnalysis();
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        try {
+            Map<Artifact, FutureTask<Content>> tasks = new LinkedHashMap<>();
+            for (Artifact artifact : artifacts) {
+                ManifestHeaders headers = headers(artifact);
+                if (!headers.isBundle() || !artifact.getFile().isFile()) {
+                    continue;
+                }
+                FutureTask<Content> task = new FutureTask<>(() -> {
+                    BundleContent content = BundleContent.read(artifact.toString(), artifact.getFile(), headers);
+                    return new Content(content, imports == null ? null : ImportAnalysis.scan(content, artifact.getFile()));
+                });
+                if (executor != null) {
+                    executor.execute(task);
+                }
+                tasks.put(artifact, task);
             }
-            for (Directive d : dirs) {
-                if ("uses".equals(d.getName())) {
-                    String[] pkgs = d.getValue().split("\\s*,\\s*");
-                    Arrays.sort(pkgs);
-                    fw.write("        uses :=\n");
-                    for (String pkg : pkgs) {
-                        fw.write("            " + pkg + "\n");
-                    }
-                } else {
-                    fw.write(String.format("        %s := %s\n", d.getName(), d.getValue()));
+            for (Map.Entry<Artifact, FutureTask<Content>> e : tasks.entrySet()) {
+                Content result = content(e.getKey(), e.getValue());
+                if (result == null) {
+                    continue;
+                }
+                if (verification != null) {
+                    verification.verify(result.content);
+                }
+                if (duplicates != null) {
+                    duplicates.add(result.content);
                 }
+                if (imports != null) {
+                    imports.add(result.imports);
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+        logger.debug("Indexed content of bundles in {} ms", System.currentTimeMillis() - start);
+
+        if (verification != null) {
+            try (Writer w = analysisReport(exportReport)) {
+                verification.write(w);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            logger.info("Export verification: {} phantom export(s), {} hidden package(s) ({} bundle(s) without"
+                    + " Private-Package not checked), see {}", verification.getPhantom(), verification.getHidden(),
+                    verification.getUnchecked(), exportReport);
+        }
+        if (duplicates != null) {
+            try (Writer w = analysisReport(duplicatesReport)) {
+                duplicates.write(w);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            logger.info("Duplicates: {} symbolic name collision(s), {} split package(s), {} duplicated class(es), see {}",
+                    duplicates.getCollisions(), duplicates.getSplitPackages(), duplicates.getDuplicatedClasses(),
+                    duplicatesReport);
+        }
+        if (imports != null) {
+            try (Writer w = analysisReport(importReport)) {
+                imports.write(w);
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            logger.info("Imports: {} unused import(s), {} missing import(s) in {} class(es), see {}", imports.getUnused(),
+                    imports.getMissing(), imports.getClasses(), importReport);
+        }
+    }
+
+    /**
+     * Waits for content of single bundle
+     * @param artifact
+     * @param task
+     * @return content or {@code null} if the bundle can't be read
+     */
+    private Content content(Artifact artifact, FutureTask<Content> task) throws MojoExecutionException {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                logger.warn("Can't process {}: {}", artifact.toString(), e.getCause().getMessage());
+                return null;
+            }
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private static Map<String, Version> exports(ManifestHeaders headers) {
+        Map<String, Version> exports = new TreeMap<>();
+        for (Clause c : headers.getClauses("Export-Package")) {
+            String v = c.getAttribute("version");
+            exports.put(c.getName(), BundleDescriptor.version(v == null ? c.getAttribute("specification-version") : v));
+        }
+        return exports;
+    }
+
+    private Writer analysisReport(File file) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        return new OutputStreamWriter(new FileOutputStream(file), ReportWriter.CHARSET);
+    }
+
+    private ManifestHeaders headers(Artifact artifact) {
+        try {
+            return manifests.headers(artifact.getFile());
+        } catch (IOException e) {
+            logger.warn("Can't process {}: {}", artifact.toString(), e.getMessage());
+            return ManifestHeaders.EMPTY;
+        }
+    }
+
+    /**
+     * Properties identifying an artifact in JSON report
+     * @param artifact
+     * @return
+     */
+    private Map<String, String> coordinates(Artifact artifact) {
+        Map<String, String> coordinates = new LinkedHashMap<>();
+        coordinates.put("artifact", artifact.toString());
+        coordinates.put("groupId", artifact.getGroupId());
+        coordinates.put("artifactId", artifact.getArtifactId());
+        coordinates.put("version", artifact.getVersion());
+        coordinates.put("type", artifact.getType());
+        coordinates.put("classifier", artifact.getClassifier());
+        coordinates.put("file", artifact.getFile().getPath());
+        return coordinates;
+    }
+
+    /**
+     * Top-level properties of JSON record of a bundle nested in given artifact
+     * @param artifact
+     * @param nested
+     * @return
+     */
+    private Map<String, String> coordinates(Artifact artifact, NestedArchives.Nested nested) {
+        Map<String, String> coordinates = new LinkedHashMap<>();
+        coordinates.put("artifact", artifact.toString() + "!/" + nested.getPath());
+        coordinates.put("container", artifact.toString());
+        coordinates.put("path", nested.getPath());
+        coordinates.put("file", artifact.getFile().getPath());
+        return coordinates;
+    }
+
+    /**
+     * Returns a section rendered by {@link #render(Artifact)}. If the task wasn't picked by any worker
+     * yet (or there are no workers), it's run in calling thread.
+     * @param section
+     * @return
+     */
+    /**
+     * Starts rendering of a section
+     * @param executor {@code null} if the section should be rendered when it's needed
+     * @param artifact
+     * @return
+     */
+    private FutureTask<Section> submit(ExecutorService executor, Artifact artifact) {
+        FutureTask<Section> task = new FutureTask<>(() -> render(artifact));
+        if (executor != null) {
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    private Section section(FutureTask<Section> section) throws IOException, MojoExecutionException {
+        section.run();
+        try {
+            return section.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while generating manifest summary", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
             }
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
         }
     }
 
+    /**
+     * Returns a relative file path for given artifact's report.
+     * @param artifact
+     * @return
+     */
+    private String getReportFile(Artifact artifact) {
+        return getReportFile(SummaryFragment.key(artifact));
+    }
+
+    /**
+     * Returns a relative file path for artifact's report.
+     * @param key artifact key (see {@link SummaryFragment#key(Artifact)})
+     * @return
+     */
+    private String getReportFile(String[] key) {
+        StringWriter name = new StringWriter();
+        name.append(key[0].replaceAll("\\.", "/"));
+        name.append("/");
+        name.append(key[1]);
+        name.append("/");
+        name.append(key[2]);
+        name.append("/");
+        name.append(key[1]);
+        name.append("-");
+        name.append(key[2]);
+        if (!key[4].isEmpty()) {
+            name.append("-").append(key[4]);
+        }
+        name.append(".");
+        name.append(key[3]);
+        name.append(".txt");
+
+        return name.toString();
+    }
+
     private void collect(Set<Artifact> collectedArtifacts, Artifact mainArtifact, List<Artifact> attachedArtifacts) {
         List<Artifact> artifacts = new LinkedList<>();
         if (mainArtifact != null) {
@@ -269,44 +1177,136 @@ public class Summary extends AbstractMojo {
             artifacts.addAll(attachedArtifacts);
         }
         for (Artifact artifact : artifacts) {
-            if (artifact != null && artifact.getFile() != null) {
-                File a = artifact.getFile();
-                try (JarInputStream jis = new JarInputStream(new FileInputStream(a))) {
-                    Manifest manifest = jis.getManifest();
-                    if (manifest != null && manifest.getMainAttributes() != null
-                            && manifest.getMainAttributes().getValue("Bundle-ManifestVersion") != null) {
-                        collectedArtifacts.add(artifact);
-                    }
-                } catch (IOException e) {
-                    logger.warn("Can't process {}: {}", artifact.toString(), e.getMessage());
-                }
+            if (artifact != null && artifact.getFile() != null && isBundle(artifact)) {
+                collectedArtifacts.add(artifact);
             }
         }
     }
 
-    private class ArtifactComparator implements Comparator<Artifact> {
+    /**
+     * Collects bundles from transitive dependencies of the project. Artifacts already collected from
+     * the reactor and duplicates within the dependency graph are skipped before resolution, each distinct
+     * artifact is resolved and its manifest read as single task.
+     * @param collectedArtifacts
+     */
+    private void collectDependencies(Set<Artifact> collectedArtifacts) throws MojoExecutionException {
+        long start = System.currentTimeMillis();
+        Set<String> scopes = new HashSet<>(Arrays.asList(dependencyScopes.split("\\s*,\\s*")));
+        DependencyCollector collector = new DependencyCollector(repositorySystem, session.getRepositorySession(), project, scopes);
+        List<Artifact> dependencies;
+        try {
+            dependencies = collector.collect();
+        } catch (DependencyCollectionException e) {
+            throw new MojoExecutionException("Can't collect dependencies of " + project.getId() + ": " + e.getMessage(), e);
+        }
+
+        // reactor artifacts may be referenced with different type (like "jar" instead of "bundle")
+        Set<String> collected = new HashSet<>();
+        for (Artifact artifact : collectedArtifacts) {
+            collected.add(DependencyCollector.id(artifact));
+        }
 
-        @Override
-        public int compare(Artifact a1, Artifact a2) {
-            String[] s1 = artifactKey(a1);
-            String[] s2 = artifactKey(a2);
-            for (int s = 0; s < s1.length; s++) {
-                int v = s1[s].compareTo(s2[s]);
-                if (v != 0) {
-                    return v;
+        ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+        List<FutureTask<Artifact>> tasks = new ArrayList<>(dependencies.size());
+        for (Artifact dependency : dependencies) {
+            if (collected.contains(DependencyCollector.id(dependency))) {
+                continue;
+            }
+            FutureTask<Artifact> task = new FutureTask<>(() -> {
+                Artifact artifact = collector.resolve(dependency);
+                return isBundle(artifact) ? artifact : null;
+            });
+            if (executor != null) {
+                executor.execute(task);
+            }
+            tasks.add(task);
+        }
+        int bundles = 0;
+        try {
+            for (FutureTask<Artifact> task : tasks) {
+                task.run();
+                Artifact artifact = dependency(task);
+                if (artifact != null) {
+                    collectedArtifacts.add(artifact);
+                    bundles++;
                 }
             }
-            return 0;
+        } finally {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
         }
+        logger.info("Collected {} bundle(s) from {} distinct dependencies in {} ms", bundles, tasks.size(),
+                System.currentTimeMillis() - start);
+    }
 
-        private String[] artifactKey(Artifact artifact) {
-            return new String[] {
-                    artifact.getGroupId(),
-                    artifact.getArtifactId(),
-                    artifact.getVersion(),
-                    artifact.getType() == null || artifact.getType().equals("") ? "jar" : artifact.getType(),
-                    artifact.getClassifier() == null ? "" : artifact.getClassifier()
-            };
+    /**
+     * Returns an artifact resolved by a task, {@code null} if it's not a bundle or it can't be resolved.
+     * @param task
+     * @return
+     */
+    private Artifact dependency(FutureTask<Artifact> task) throws MojoExecutionException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while resolving dependencies", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ArtifactResolutionException) {
+                logger.warn("Can't resolve dependency: {}", e.getCause().getMessage());
+                return null;
+            }
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private boolean isBundle(Artifact artifact) {
+        if (nestedArchives != null && NestedArchives.isContainer(artifact.getFile().getName())) {
+            // may contain bundles
+            return true;
+        }
+        if (summaryIndex != null && summaryIndex.isFresh(artifact.toString(), artifact.getFile())) {
+            // it was a bundle in previous run and it didn't change
+            return true;
+        }
+        try {
+            long start = System.nanoTime();
+            ManifestHeaders headers = manifests.headers(artifact.getFile());
+            metrics.read(artifact.toString(), start, artifact.getFile(), headers);
+            return headers.isBundle();
+        } catch (IOException e) {
+            logger.warn("Can't process {}: {}", artifact.toString(), e.getMessage());
+            return false;
+        }
+    }
+
+    private static class Section {
+        private final byte[] text;
+        private final byte[] json;
+        private final boolean reused;
+
+        Section(byte[] text, byte[] json, boolean reused) {
+            this.text = text;
+            this.json = json;
+            this.reused = reused;
+        }
+    }
+
+    private static class Content {
+        private final BundleContent content;
+        private final ImportAnalysis.Result imports;
+
+        Content(BundleContent content, ImportAnalysis.Result imports) {
+            this.content = content;
+            this.imports = imports;
+        }
+    }
+
+    private static class ArtifactComparator implements Comparator<Artifact> {
+
+        @Override
+        public int compare(Artifact a1, Artifact a2) {
+            return SummaryFragment.KEY_ORDER.compare(SummaryFragment.key(a1), SummaryFragment.key(a2));
         }
 
     }
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.maven.artifact.Artifact;
+
+/**
+ * <p>Summary fragment - report sections of the bundles produced by single module, sorted in the same order
+ * as in {@code manifest-summary.txt}. Fragments are written by {@code manifest-fragment} goal as soon as
+ * a module is packaged and the aggregator only merges them, reading one section of each fragment at a time.</p>
+ * <p>Each section is stored with the key of its artifact ({@code groupId}, {@code artifactId}, {@code version},
+ * {@code type} and {@code classifier}), so fragments can be merged without reading any artifact.</p>
+ */
+public class SummaryFragment {
+
+    /** Name of the fragment in build directory of a module */
+    public static final String FILE_NAME = "manifest-fragment.bin";
+
+    /** Order of artifacts in the report */
+    public static final Comparator<String[]> KEY_ORDER = (k1, k2) -> {
+        for (int i = 0; i < k1.length; i++) {
+            int v = k1[i].compareTo(k2[i]);
+            if (v != 0) {
+                return v;
+            }
+        }
+        return 0;
+    };
+
+    private static final int VERSION = 1;
+
+    private SummaryFragment() {
+    }
+
+    /**
+     * Sort key of an artifact in the report
+     * @param artifact
+     * @return
+     */
+    public static String[] key(Artifact artifact) {
+        return new String[] {
+                artifact.getGroupId(),
+                artifact.getArtifactId(),
+                artifact.getVersion(),
+                artifact.getType() == null || artifact.getType().equals("") ? "jar" : artifact.getType(),
+                artifact.getClassifier() == null ? "" : artifact.getClassifier()
+        };
+    }
+
+    /**
+     * Writes sections (already sorted by {@link #KEY_ORDER}) to a fragment
+     * @param file
+     * @param sections
+     */
+    public static void write(File file, List<Section> sections) throws IOException {
+        file.getAbsoluteFile().getParentFile().mkdirs();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            dos.writeInt(VERSION);
+            dos.writeInt(sections.size());
+            for (Section section : sections) {
+                for (String k : section.key) {
+                    dos.writeUTF(k);
+                }
+                dos.writeUTF(section.id);
+                dos.writeInt(section.text.length);
+                dos.write(section.text);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * K-way merge of sorted fragments. Only the current section of each fragment is kept in memory.
+     * Sections with the same key in more fragments are passed only once.
+     * @param fragments
+     * @param sink
+     * @return number of merged sections
+     */
+    public static int merge(List<File> fragments, Sink sink) throws IOException {
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Math.max(1, fragments.size()),
+                (c1, c2) -> KEY_ORDER.compare(c1.current.key, c2.current.key));
+        List<Cursor> cursors = new ArrayList<>(fragments.size());
+        try {
+            for (File fragment : fragments) {
+                Cursor cursor = new Cursor(fragment);
+                cursors.add(cursor);
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            int count = 0;
+            String[] last = null;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                Section section = cursor.current;
+                if (last == null || KEY_ORDER.compare(last, section.key) != 0) {
+                    sink.section(section);
+                    last = section.key;
+                    count++;
+                }
+                if (cursor.next()) {
+                    queue.add(cursor);
+                }
+            }
+            return count;
+        } finally {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Receives merged sections in report order
+     */
+    public interface Sink {
+        void section(Section section) throws IOException;
+    }
+
+    /**
+     * Report section of single artifact
+     */
+    public static class Section {
+
+        private final String[] key;
+        private final String id;
+        private final byte[] text;
+
+        public Section(String[] key, String id, byte[] text) {
+            this.key = key;
+            this.id = id;
+            this.text = text;
+        }
+
+        /**
+         * @return {@code groupId}, {@code artifactId}, {@code version}, {@code type} and {@code classifier}
+         */
+        public String[] getKey() {
+            return key;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public byte[] getText() {
+            return text;
+        }
+
+    }
+
+    /**
+     * Reads sections of single fragment one by one
+     */
+    private static class Cursor implements Closeable {
+
+        private final File file;
+        private final DataInputStream dis;
+        private int remaining;
+        private Section current;
+
+        Cursor(File file) throws IOException {
+            this.file = file;
+            dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (dis.readInt() != VERSION) {
+                dis.close();
+                throw new IOException("Unsupported version of summary fragment " + file);
+            }
+            remaining = dis.readInt();
+        }
+
+        private boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            remaining--;
+            String[] key = new String[5];
+            for (int i = 0; i < key.length; i++) {
+                key[i] = dis.readUTF();
+            }
+            String id = dis.readUTF();
+            byte[] text = new byte[dis.readInt()];
+            dis.readFully(text);
+            if (current != null && KEY_ORDER.compare(current.key, key) > 0) {
+                throw new IOException("Summary fragment " + file + " is not sorted");
+            }
+            current = new Section(key, id, text);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            dis.close();
+        }
+
+    }
+
+}
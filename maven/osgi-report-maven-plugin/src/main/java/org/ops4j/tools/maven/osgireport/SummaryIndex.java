@@ -0,0 +1,182 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of artifact fingerprints (path, size, modification time and SHA-256 of the content) mapped to
+ * report sections (encoded with {@link ReportWriter#CHARSET}) rendered in previous run. Sections of artifacts with matching fingerprints are reused
+ * instead of being rendered again. The index also stores a format identifier (e.g. version of the plugin) and an
+ * index with different format is ignored, so sections rendered by different formatting code are never reused.
+ */
+public class SummaryIndex {
+
+    private static final int VERSION = 2;
+
+    private final String format;
+
+    /** Entries loaded from previous run - never modified */
+    private final Map<String, Entry> previous;
+
+    /** Entries for artifacts processed in current run - only these are stored */
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    /**
+     * @param format identifier of the code rendering the sections
+     */
+    public SummaryIndex(String format) {
+        this(format, Collections.emptyMap());
+    }
+
+    private SummaryIndex(String format, Map<String, Entry> previous) {
+        this.format = format;
+        this.previous = previous;
+    }
+
+    /**
+     * Loads an index stored by {@link #save(File)}. Missing file or an index with different version or format
+     * results in empty index.
+     * @param file
+     * @param format identifier of the code rendering the sections
+     * @return
+     */
+    public static SummaryIndex load(File file, String format) throws IOException {
+        if (!file.isFile()) {
+            return new SummaryIndex(format);
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (dis.readInt() != VERSION || !format.equals(dis.readUTF())) {
+                return new SummaryIndex(format);
+            }
+            int count = dis.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = dis.readUTF();
+                String path = dis.readUTF();
+                long size = dis.readLong();
+                long lastModified = dis.readLong();
+                String hash = dis.readUTF();
+                byte[] section = new byte[dis.readInt()];
+                dis.readFully(section);
+                entries.put(key, new Entry(path, size, lastModified, hash, section));
+            }
+        }
+        return new SummaryIndex(format, entries);
+    }
+
+    /**
+     * Stores entries of current run (artifacts not seen in current run are dropped).
+     * @param file
+     */
+    public void save(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            Map<String, Entry> sorted = new TreeMap<>(current);
+            dos.writeInt(VERSION);
+            dos.writeUTF(format);
+            dos.writeInt(sorted.size());
+            for (Map.Entry<String, Entry> e : sorted.entrySet()) {
+                Entry entry = e.getValue();
+                dos.writeUTF(e.getKey());
+                dos.writeUTF(entry.path);
+                dos.writeLong(entry.size);
+                dos.writeLong(entry.lastModified);
+                dos.writeUTF(entry.hash);
+                dos.writeInt(entry.section.length);
+                dos.write(entry.section);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks (without reading the file) whether given file has the same path, size and modification
+     * time as in previous run.
+     * @param key
+     * @param file
+     * @return
+     */
+    public boolean isFresh(String key, File file) {
+        Entry entry = previous.get(key);
+        return entry != null && entry.path.equals(file.getAbsolutePath())
+                && entry.size == file.length() && entry.lastModified == file.lastModified();
+    }
+
+    /**
+     * Returns a section rendered in previous run if the file didn't change.
+     * @param key
+     * @param file
+     * @param checksum SHA-256 of the file - only needed when {@link #isFresh(String, File)} is {@code false}
+     * @return previous section or {@code null} if the file has to be processed again
+     */
+    public byte[] reuse(String key, File file, String checksum) {
+        Entry entry = previous.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (!isFresh(key, file)) {
+            if (checksum == null || !checksum.equals(entry.hash)) {
+                return null;
+            }
+            entry = new Entry(file.getAbsolutePath(), file.length(), file.lastModified(), checksum, entry.section);
+        }
+        current.put(key, entry);
+        return entry.section;
+    }
+
+    /**
+     * Records freshly rendered section of given file.
+     * @param key
+     * @param file
+     * @param checksum
+     * @param section
+     */
+    public void update(String key, File file, String checksum, byte[] section) {
+        current.put(key, new Entry(file.getAbsolutePath(), file.length(), file.lastModified(), checksum, section));
+    }
+
+    private static class Entry {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+        private final byte[] section;
+
+        Entry(String path, long size, long lastModified, String hash, byte[] section) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.section = section;
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Keeps the reports of {@link DirectorySummary} up to date with the content of watched directories (like
+ * Karaf's {@code deploy/}). After initial scan, directories are watched with {@link WatchService} and only
+ * added, changed or removed jars are read again. Sections of all jars are kept in memory, so the summary is
+ * rewritten without reading unchanged jars, and only separate reports of changed jars are written.</p>
+ * <p>Changes are batched - the reports are updated when there was no change for the debounce time (but at
+ * least once per ten debounce periods during continuous changes), so copying a jar or deploying many jars
+ * at once doesn't update the reports for every notification. A jar which can't be read (e.g. it's still being
+ * copied) is left out of the reports until it's changed again and a directory removed while being scanned is
+ * treated as removed.</p>
+ */
+public class SummaryWatch {
+
+    private static final WatchEvent.Kind<?>[] KINDS = new WatchEvent.Kind<?>[] {
+            StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY
+    };
+
+    private final List<Path> roots;
+    private final ForkJoinPool pool;
+    private final DirectorySummary.Reports reports;
+    private final long debounce;
+    private final PrintStream log;
+    private final HeaderCache headerCache = new HeaderCache();
+
+    /** watched directories */
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> directories = new HashSet<>();
+    /** current entries by jar file */
+    private final Map<Path, DirectorySummary.Entry> entries = new HashMap<>();
+
+    /**
+     * @param roots watched directories
+     * @param pool
+     * @param reports
+     * @param debounce time in milliseconds without changes, after which the reports are updated
+     * @param log optional stream for messages about updates
+     */
+    public SummaryWatch(List<Path> roots, ForkJoinPool pool, DirectorySummary.Reports reports, long debounce, PrintStream log) {
+        this.roots = roots;
+        this.pool = pool;
+        this.reports = reports;
+        this.debounce = debounce;
+        this.log = log;
+    }
+
+    /**
+     * Scans the directories, writes the reports and updates them until the thread is interrupted
+     */
+    public void run() throws IOException, InterruptedException {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            // register before scanning, so no change is missed
+            for (Path root : roots) {
+                if (!register(watcher, root)) {
+                    throw new NoSuchFileException(root.toString());
+                }
+            }
+            long start = System.currentTimeMillis();
+            for (DirectorySummary.Entry e : DirectorySummary.scan(roots, pool, headerCache)) {
+                entries.put(e.getFile(), e);
+                report(e);
+                reports.separate(e);
+            }
+            reports.write(DirectorySummary.sort(entries.values()), pool);
+            info("Summarized " + entries.size() + " jar(s) in " + (System.currentTimeMillis() - start) + " ms, watching "
+                    + keys.size() + " director(y/ies)");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Set<Path> changed = new LinkedHashSet<>();
+                Set<Path> created = new HashSet<>();
+                boolean overflow = collect(watcher.take(), changed, created);
+                long first = System.currentTimeMillis();
+                long last = first;
+                long now = first;
+                while (now - last < debounce && now - first < 10 * debounce) {
+                    WatchKey key = watcher.poll(Math.min(debounce - (now - last), 10 * debounce - (now - first)),
+                            TimeUnit.MILLISECONDS);
+                    now = System.currentTimeMillis();
+                    if (key != null) {
+                        overflow |= collect(key, changed, created);
+                        last = now;
+                    }
+                }
+                try {
+                    update(watcher, overflow ? null : changed, created);
+                } catch (IOException e) {
+                    // the reports are written again after next change
+                    info("Can't update the reports: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Collects paths changed in a watched directory
+     * @param key
+     * @param changed
+     * @param created paths with {@code ENTRY_CREATE} event
+     * @return whether some events were lost
+     */
+    private boolean collect(WatchKey key, Set<Path> changed, Set<Path> created) {
+        boolean overflow = false;
+        Path directory = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                Path path = directory.resolve((Path) event.context());
+                changed.add(path);
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                    created.add(path);
+                }
+            }
+        }
+        if (!key.reset()) {
+            // directory no longer accessible - its removal is reported in the parent directory. Even if there's
+            // a directory with the same path again, it's a new one, registered when its creation is processed
+            Path removed = keys.remove(key);
+            if (removed != null) {
+                directories.remove(removed);
+            }
+        }
+        return overflow;
+    }
+
+    /**
+     * Reads changed jars again and updates the reports
+     * @param watcher
+     * @param changed changed paths or {@code null} to rescan everything
+     * @param created paths with {@code ENTRY_CREATE} event
+     */
+    private void update(WatchService watcher, Set<Path> changed, Set<Path> created) throws IOException {
+        long start = System.currentTimeMillis();
+        Set<Path> read = new LinkedHashSet<>();
+        Set<Path> removed = new LinkedHashSet<>();
+        if (changed == null) {
+            info("Change notifications were lost, rescanning");
+            for (Path root : roots) {
+                // jars of a removed root are not read, so they're removed below
+                if (register(watcher, root)) {
+                    jars(root, read);
+                }
+            }
+            for (Path file : entries.keySet()) {
+                if (!read.contains(file)) {
+                    removed.add(file);
+                }
+            }
+        } else {
+            for (Path path : changed) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    if (created.contains(path)) {
+                        // may replace a removed directory with the same path, whose keys are not invalidated yet
+                        directories.removeIf(d -> d.startsWith(path));
+                    }
+                    // new (or moved) directory may already contain jars, unless it's removed while being read
+                    if (directories.contains(path) || register(watcher, path) && jars(path, read)) {
+                        continue;
+                    }
+                } else if (DirectorySummary.isJar(path)) {
+                    read.add(path);
+                    continue;
+                }
+                // removed jar or directory
+                directories.removeIf(d -> d.startsWith(path));
+                read.removeIf(file -> file.startsWith(path));
+                for (Path file : entries.keySet()) {
+                    if (file.startsWith(path) && !Files.exists(file)) {
+                        removed.add(file);
+                    }
+                }
+            }
+        }
+
+        int added = 0;
+        int updated = 0;
+        int deleted = 0;
+        for (Path file : removed) {
+            DirectorySummary.Entry e = entries.remove(file);
+            if (e.getText() != null) {
+                reports.remove(e);
+                deleted++;
+            }
+        }
+        List<ForkJoinTask<DirectorySummary.Entry>> tasks = new ArrayList<>(read.size());
+        for (Path file : read) {
+            Path root = root(file);
+            tasks.add(pool.submit(() -> DirectorySummary.read(root, file, headerCache)));
+        }
+        for (ForkJoinTask<DirectorySummary.Entry> task : tasks) {
+            DirectorySummary.Entry e = task.join();
+            DirectorySummary.Entry previous = entries.put(e.getFile(), e);
+            report(e);
+            byte[] text = previous == null ? null : previous.getText();
+            if (Arrays.equals(text, e.getText())) {
+                // not a bundle or the same section
+                continue;
+            }
+            if (text == null) {
+                added++;
+            } else if (e.getText() == null) {
+                deleted++;
+            } else {
+                updated++;
+            }
+            reports.separate(e);
+        }
+        if (added + updated + deleted > 0) {
+            reports.write(DirectorySummary.sort(entries.values()), pool);
+            info("Updated summary: " + added + " added, " + updated + " changed, " + deleted + " removed bundle(s) in "
+                    + (System.currentTimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Watches given directory and its subdirectories. Subdirectories removed in the meantime are skipped - their
+     * removal is reported in their parent directories.
+     * @param watcher
+     * @param directory
+     * @return {@code false} if the directory was removed (or can't be read)
+     */
+    private boolean register(WatchService watcher, Path directory) {
+        try {
+            if (!directories.contains(directory)) {
+                keys.put(directory.register(watcher, KINDS), directory);
+                directories.add(directory);
+            }
+            try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+                for (Path path : paths) {
+                    if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                        register(watcher, path);
+                    }
+                }
+            }
+            return true;
+        } catch (IOException | DirectoryIteratorException e) {
+            if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                info("Can't watch " + directory + ": " + e.getMessage());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Finds all jars in given directory. Subdirectories removed in the meantime are skipped.
+     * @param directory
+     * @param jars
+     * @return {@code false} if the directory was removed (or can't be read)
+     */
+    private static boolean jars(Path directory, Set<Path> jars) {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    jars(path, jars);
+                } else if (DirectorySummary.isJar(path)) {
+                    jars.add(path);
+                }
+            }
+            return true;
+        } catch (IOException | DirectoryIteratorException e) {
+            return false;
+        }
+    }
+
+    private Path root(Path file) {
+        for (Path root : roots) {
+            if (file.startsWith(root)) {
+                return root;
+            }
+        }
+        return roots.get(0);
+    }
+
+    private void report(DirectorySummary.Entry e) {
+        if (e.getError() != null) {
+            info("Can't process " + e.getFile() + ": " + e.getError());
+        }
+    }
+
+    private void info(String message) {
+        if (log != null) {
+            log.println(message);
+        }
+    }
+
+}
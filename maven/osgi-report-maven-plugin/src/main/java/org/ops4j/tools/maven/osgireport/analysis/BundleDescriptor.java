@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.utils.manifest.Attribute;
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Directive;
+import org.apache.felix.utils.manifest.Parser;
+import org.apache.felix.utils.version.VersionRange;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+import org.osgi.framework.Version;
+
+/**
+ * Single bundle taking part in the analysis - its identity together with capabilities and requirements
+ * derived from already parsed {@link ManifestHeaders}. {@code DynamicImport-Package} and requirements
+ * not {@code effective:=resolve} are not taken into account.
+ */
+public class BundleDescriptor {
+
+    private final String id;
+    private final ManifestHeaders headers;
+    private final String symbolicName;
+    private final Version version;
+    private final boolean fragment;
+
+    private final List<Capability> capabilities = new ArrayList<>();
+    private final List<Requirement> requirements = new ArrayList<>();
+
+    /**
+     * Creates a descriptor for given (not necessarily bundle) manifest
+     * @param id identifier used in reports (e.g., artifact coordinates)
+     * @param headers
+     */
+    public BundleDescriptor(String id, ManifestHeaders headers) {
+        this.id = id;
+        this.headers = headers;
+        String bsn = headers.getHeader("Bundle-SymbolicName");
+        Clause[] bsnClauses = bsn == null ? new Clause[0] : Parser.parseHeader(bsn);
+        symbolicName = bsnClauses.length == 0 ? null : bsnClauses[0].getName();
+        version = version(headers.getHeader("Bundle-Version"));
+        fragment = headers.getHeader("Fragment-Host") != null;
+        if (headers.isBundle()) {
+            collectCapabilities();
+            collectRequirements();
+        }
+    }
+
+    /**
+     * Parses a version, returning {@link Version#emptyVersion} for missing or invalid values
+     * @param value
+     * @return
+     */
+    public static Version version(String value) {
+        if (value == null) {
+            return Version.emptyVersion;
+        }
+        try {
+            return Version.parseVersion(value.trim());
+        } catch (IllegalArgumentException e) {
+            return Version.emptyVersion;
+        }
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ManifestHeaders getHeaders() {
+        return headers;
+    }
+
+    public String getSymbolicName() {
+        return symbolicName;
+    }
+
+    public Version getVersion() {
+        return version;
+    }
+
+    public boolean isFragment() {
+        return fragment;
+    }
+
+    public List<Capability> getCapabilities() {
+        return capabilities;
+    }
+
+    public List<Requirement> getRequirements() {
+        return requirements;
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+
+    private void collectCapabilities() {
+        if (symbolicName != null && !fragment) {
+            for (String namespace : new String[] { Capability.BUNDLE_NAMESPACE, Capability.HOST_NAMESPACE }) {
+                Map<String, Object> attributes = new LinkedHashMap<>();
+                attributes.put(namespace, symbolicName);
+                attributes.put("bundle-version", version);
+                capabilities.add(new Capability(this, namespace, attributes, Collections.emptyMap()));
+            }
+        }
+
+        for (Clause c : headers.getClauses("Export-Package")) {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put(Capability.PACKAGE_NAMESPACE, c.getName());
+            String v = c.getAttribute("version");
+            attributes.put("version", version(v == null ? c.getAttribute("specification-version") : v));
+            if (symbolicName != null) {
+                attributes.put("bundle-symbolic-name", symbolicName);
+                attributes.put("bundle-version", version);
+            }
+            for (Attribute a : c.getAttributes()) {
+                if (!attributes.containsKey(a.getName()) && !"specification-version".equals(a.getName())) {
+                    attributes.put(a.getName(), a.getValue());
+                }
+            }
+            capabilities.add(new Capability(this, Capability.PACKAGE_NAMESPACE, attributes, directives(c)));
+        }
+
+        for (Clause c : headers.getClauses("Provide-Capability")) {
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            for (Attribute a : c.getAttributes()) {
+                int colon = a.getName().indexOf(':');
+                if (colon < 0) {
+                    attributes.put(a.getName(), a.getValue());
+                } else {
+                    attributes.put(a.getName().substring(0, colon).trim(),
+                            Capability.typed(a.getName().substring(colon + 1), a.getValue()));
+                }
+            }
+            capabilities.add(new Capability(this, c.getName(), attributes, directives(c)));
+        }
+    }
+
+    private void collectRequirements() {
+        for (Clause c : headers.getClauses("Import-Package")) {
+            requirements.add(wiring("Import-Package", Capability.PACKAGE_NAMESPACE, c));
+        }
+        for (Clause c : headers.getClauses("Require-Bundle")) {
+            requirements.add(wiring("Require-Bundle", Capability.BUNDLE_NAMESPACE, c));
+        }
+        String host = headers.getHeader("Fragment-Host");
+        if (host != null) {
+            for (Clause c : Parser.parseHeader(host)) {
+                requirements.add(wiring("Fragment-Host", Capability.HOST_NAMESPACE, c));
+            }
+        }
+        for (Clause c : headers.getClauses("Require-Capability")) {
+            String effective = c.getDirective("effective");
+            if (effective == null || "resolve".equals(effective)) {
+                requirements.add(new Requirement(this, "Require-Capability", c.toString(), c.getName(),
+                        Collections.emptyMap(), Collections.emptyMap(), c.getDirective("filter"), optional(c), null));
+            }
+        }
+    }
+
+    /**
+     * Creates a requirement matched by attributes and version ranges. For {@code Import-Package},
+     * {@code specification-version} is an alias of {@code version}.
+     * @param header
+     * @param namespace
+     * @param clause
+     * @return
+     */
+    private Requirement wiring(String header, String namespace, Clause clause) {
+        Map<String, String> attributes = new LinkedHashMap<>();
+        attributes.put(namespace, clause.getName());
+        Map<String, VersionRange> ranges = new LinkedHashMap<>();
+        String error = null;
+        for (Attribute a : clause.getAttributes()) {
+            String name = a.getName();
+            if ("version".equals(name) || "specification-version".equals(name) || "bundle-version".equals(name)) {
+                try {
+                    ranges.put("specification-version".equals(name) ? "version" : name,
+                            VersionRange.parseVersionRange(a.getValue().trim()));
+                } catch (IllegalArgumentException e) {
+                    error = "invalid version range \"" + a.getValue() + "\"";
+                }
+            } else {
+                attributes.put(name, a.getValue());
+            }
+        }
+        return new Requirement(this, header, clause.toString(), namespace, attributes, ranges, null, optional(clause), error);
+    }
+
+    private static boolean optional(Clause clause) {
+        return "optional".equals(clause.getDirective("resolution"));
+    }
+
+    private static Map<String, String> directives(Clause clause) {
+        if (clause.getDirectives().length == 0) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> directives = new LinkedHashMap<>();
+        for (Directive d : clause.getDirectives()) {
+            directives.put(d.getName(), d.getValue());
+        }
+        return directives;
+    }
+
+}
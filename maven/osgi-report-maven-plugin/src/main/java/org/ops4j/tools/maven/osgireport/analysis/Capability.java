@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.osgi.framework.Version;
+
+/**
+ * Single capability provided by a bundle. Exported packages and bundles themselves are represented
+ * the same way as generic capabilities from {@code Provide-Capability} - using {@code osgi.wiring.package},
+ * {@code osgi.wiring.bundle} and {@code osgi.wiring.host} namespaces, as in OSGi Core, chapter 3.3.
+ */
+public class Capability {
+
+    public static final String PACKAGE_NAMESPACE = "osgi.wiring.package";
+    public static final String BUNDLE_NAMESPACE = "osgi.wiring.bundle";
+    public static final String HOST_NAMESPACE = "osgi.wiring.host";
+
+    private final BundleDescriptor bundle;
+    private final String namespace;
+    private final Map<String, Object> attributes;
+    private final Map<String, String> directives;
+
+    public Capability(BundleDescriptor bundle, String namespace, Map<String, Object> attributes, Map<String, String> directives) {
+        this.bundle = bundle;
+        this.namespace = namespace;
+        this.attributes = attributes;
+        this.directives = directives;
+    }
+
+    /**
+     * Converts attribute value to one of the types allowed in {@code Provide-Capability} header
+     * ({@code String}, {@code Version}, {@code Long}, {@code Double} and lists of these). Values which
+     * can't be converted are kept as strings.
+     * @param type type declared after attribute name (e.g., {@code version:Version}), may be {@code null}
+     * @param value
+     * @return
+     */
+    public static Object typed(String type, String value) {
+        if (type == null) {
+            return value;
+        }
+        String t = type.trim();
+        if (t.startsWith("List")) {
+            String elementType = t.startsWith("List<") && t.endsWith(">") ? t.substring(5, t.length() - 1) : null;
+            List<Object> result = new ArrayList<>();
+            for (String element : value.split(",")) {
+                result.add(typed(elementType, element.trim()));
+            }
+            return result;
+        }
+        try {
+            switch (t) {
+                case "Version":
+                    return Version.parseVersion(value.trim());
+                case "Long":
+                    return Long.valueOf(value.trim());
+                case "Double":
+                    return Double.valueOf(value.trim());
+                default:
+                    return value;
+            }
+        } catch (IllegalArgumentException e) {
+            return value;
+        }
+    }
+
+    public BundleDescriptor getBundle() {
+        return bundle;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    public Map<String, String> getDirectives() {
+        return directives;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(namespace);
+        for (Map.Entry<String, Object> e : attributes.entrySet()) {
+            sb.append(";").append(e.getKey()).append("=\"").append(e.getValue()).append("\"");
+        }
+        return sb.toString();
+    }
+
+}
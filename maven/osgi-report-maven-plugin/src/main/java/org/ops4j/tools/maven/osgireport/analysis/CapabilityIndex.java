@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.utils.filter.FilterImpl;
+import org.apache.felix.utils.version.VersionRange;
+import org.osgi.framework.Filter;
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+
+/**
+ * <p>In-memory store of capabilities, indexed by namespace and by value of the attribute named after the
+ * namespace (package name for {@code osgi.wiring.package}, symbolic name for {@code osgi.wiring.bundle},
+ * {@code osgi.ee} for {@code osgi.ee}, ...).</p>
+ * <p>Lookup takes candidates from the index and checks only these. For generic requirements the value is
+ * taken from the filter, if it's a top-level equality (like in {@code (&(osgi.ee=JavaSE)(version=1.8))});
+ * only filters without such equality are checked against all capabilities of the namespace. Each distinct
+ * filter is parsed once.</p>
+ */
+public class CapabilityIndex {
+
+    private final Map<String, List<Capability>> byNamespace = new HashMap<>();
+    private final Map<String, Map<String, List<Capability>>> byValue = new HashMap<>();
+    private final Map<String, Filter> filters = new HashMap<>();
+
+    private int size;
+
+    /**
+     * Adds all capabilities of given bundle
+     * @param bundle
+     */
+    public void add(BundleDescriptor bundle) {
+        for (Capability c : bundle.getCapabilities()) {
+            add(c);
+        }
+    }
+
+    public void add(Capability capability) {
+        String namespace = capability.getNamespace();
+        byNamespace.computeIfAbsent(namespace, ns -> new ArrayList<>()).add(capability);
+        Map<String, List<Capability>> values = byValue.computeIfAbsent(namespace, ns -> new HashMap<>());
+        Object value = capability.getAttributes().get(namespace);
+        if (value instanceof Collection) {
+            for (Object v : (Collection<?>) value) {
+                values.computeIfAbsent(v.toString(), k -> new ArrayList<>()).add(capability);
+            }
+        } else if (value != null) {
+            values.computeIfAbsent(value.toString(), k -> new ArrayList<>()).add(capability);
+        }
+        size++;
+    }
+
+    /**
+     * Number of indexed capabilities
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns all capabilities matching given requirement, in the order they were added.
+     * @param requirement
+     * @return
+     */
+    public List<Capability> providers(Requirement requirement) throws InvalidSyntaxException {
+        String namespace = requirement.getNamespace();
+        Filter filter = requirement.getFilter() == null ? null : filter(requirement.getFilter());
+        String value = requirement.getAttributes().get(namespace);
+        if (value == null && requirement.getFilter() != null) {
+            value = namespaceValue(namespace, requirement.getFilter());
+        }
+        List<Capability> candidates;
+        if (value != null) {
+            candidates = byValue.getOrDefault(namespace, Collections.emptyMap()).get(value);
+        } else {
+            candidates = byNamespace.get(namespace);
+        }
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+        List<Capability> result = new ArrayList<>(1);
+        for (Capability c : candidates) {
+            if (matches(requirement, filter, c)) {
+                result.add(c);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns parsed filter - each distinct filter is parsed once.
+     * @param filter
+     * @return
+     */
+    public Filter filter(String filter) throws InvalidSyntaxException {
+        Filter result = filters.get(filter);
+        if (result == null) {
+            result = FilterImpl.newInstance(filter);
+            filters.put(filter, result);
+        }
+        return result;
+    }
+
+    /**
+     * Finds a value of {@code (namespace=value)} operand of top-level conjunction (or of the filter itself).
+     * Returns {@code null} if there's no such operand or the value contains wildcards or escapes.
+     * @param namespace
+     * @param filter
+     * @return
+     */
+    static String namespaceValue(String namespace, String filter) {
+        String f = filter.trim();
+        if (!f.startsWith("(") || !f.endsWith(")")) {
+            return null;
+        }
+        if (!f.startsWith("(&")) {
+            return equality(namespace, f.substring(1, f.length() - 1));
+        }
+        int depth = 0;
+        int start = -1;
+        boolean escaped = false;
+        for (int i = 2; i < f.length() - 1; i++) {
+            char c = f.charAt(i);
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '(') {
+                if (depth++ == 0) {
+                    start = i + 1;
+                }
+            } else if (c == ')' && --depth == 0) {
+                String value = equality(namespace, f.substring(start, i));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String equality(String namespace, String operand) {
+        int eq = operand.indexOf('=');
+        if (eq <= 0 || !namespace.equals(operand.substring(0, eq).trim())) {
+            return null;
+        }
+        String value = operand.substring(eq + 1).trim();
+        if (value.isEmpty() || value.indexOf('*') >= 0 || value.indexOf('\\') >= 0 || value.indexOf('(') >= 0) {
+            return null;
+        }
+        return value;
+    }
+
+    /**
+     * Checks a candidate. Attributes required by {@code mandatory} directive of the capability have to be
+     * specified by "wiring" requirements.
+     * @param requirement
+     * @param filter
+     * @param capability
+     * @return
+     */
+    private static boolean matches(Requirement requirement, Filter filter, Capability capability) {
+        Map<String, Object> attributes = capability.getAttributes();
+        if (filter != null) {
+            return filter.matches(attributes);
+        }
+        for (Map.Entry<String, String> e : requirement.getAttributes().entrySet()) {
+            Object value = attributes.get(e.getKey());
+            if (value == null || !e.getValue().equals(value.toString())) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, VersionRange> e : requirement.getRanges().entrySet()) {
+            Object value = attributes.get(e.getKey());
+            if (!(value instanceof Version) || !e.getValue().contains((Version) value)) {
+                return false;
+            }
+        }
+        String mandatory = capability.getDirectives().get("mandatory");
+        if (mandatory != null) {
+            for (String attribute : mandatory.split("\\s*,\\s*")) {
+                String name = attribute.trim();
+                if (!requirement.getAttributes().containsKey(name) && !requirement.getRanges().containsKey(name)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.Map;
+
+import org.apache.felix.utils.version.VersionRange;
+
+/**
+ * <p>Single requirement of a bundle - a clause of {@code Import-Package}, {@code Require-Bundle},
+ * {@code Fragment-Host} or {@code Require-Capability}.</p>
+ * <p>Requirements from "wiring" headers are matched by attribute equality and version ranges (the
+ * namespace attribute, like {@code osgi.wiring.package}, is always one of the attributes), generic
+ * requirements are matched using their {@code filter} directive.</p>
+ */
+public class Requirement {
+
+    private final BundleDescriptor bundle;
+    private final String header;
+    private final String clause;
+    private final String namespace;
+    private final Map<String, String> attributes;
+    private final Map<String, VersionRange> ranges;
+    private final String filter;
+    private final boolean optional;
+    private final String error;
+
+    public Requirement(BundleDescriptor bundle, String header, String clause, String namespace,
+                       Map<String, String> attributes, Map<String, VersionRange> ranges, String filter,
+                       boolean optional, String error) {
+        this.bundle = bundle;
+        this.header = header;
+        this.clause = clause;
+        this.namespace = namespace;
+        this.attributes = attributes;
+        this.ranges = ranges;
+        this.filter = filter;
+        this.optional = optional;
+        this.error = error;
+    }
+
+    public BundleDescriptor getBundle() {
+        return bundle;
+    }
+
+    /**
+     * Name of the manifest header declaring this requirement
+     * @return
+     */
+    public String getHeader() {
+        return header;
+    }
+
+    /**
+     * Original clause, as it could be found in the manifest
+     * @return
+     */
+    public String getClause() {
+        return clause;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Attributes which have to be equal to capability attributes
+     * @return
+     */
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Version ranges which have to contain {@link org.osgi.framework.Version} attributes of capability
+     * @return
+     */
+    public Map<String, VersionRange> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * LDAP filter of generic requirement, {@code null} for "wiring" requirements
+     * @return
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    public boolean isOptional() {
+        return optional;
+    }
+
+    /**
+     * Problem found when parsing the requirement (like invalid version range). Such requirement
+     * can't be satisfied.
+     * @return
+     */
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return header + ": " + clause;
+    }
+
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.osgi.framework.InvalidSyntaxException;
+
+/**
+ * <p>Offline check whether requirements of a set of bundles can be satisfied by capabilities of these
+ * bundles and of the system bundle (see {@link SystemProfile}). This is not a full resolver - each
+ * requirement is checked on its own (without {@code uses} constraints, singletons or transitive
+ * failures), which is enough to find missing and ambiguous providers before deployment.</p>
+ * <p>A requirement is ambiguous, if it's satisfied by capabilities of more than one bundle. Capabilities
+ * of the requiring bundle itself are not counted - a bundle importing a package it also exports (substitutable
+ * export) isn't ambiguous just because of its own export.</p>
+ */
+public class ResolutionCheck {
+
+    private final CapabilityIndex index = new CapabilityIndex();
+    private final BundleDescriptor system;
+    private final List<BundleDescriptor> bundles = new ArrayList<>();
+
+    private final List<Problem> unresolved = new ArrayList<>();
+    private final List<Problem> unresolvedOptional = new ArrayList<>();
+    private final List<Problem> ambiguous = new ArrayList<>();
+    private int requirements;
+
+    public ResolutionCheck(BundleDescriptor system) {
+        this.system = system;
+        index.add(system);
+    }
+
+    public void add(BundleDescriptor bundle) {
+        bundles.add(bundle);
+        index.add(bundle);
+    }
+
+    /**
+     * Checks all requirements of all added bundles
+     */
+    public void check() {
+        unresolved.clear();
+        unresolvedOptional.clear();
+        ambiguous.clear();
+        requirements = 0;
+        for (BundleDescriptor bundle : bundles) {
+            for (Requirement requirement : bundle.getRequirements()) {
+                requirements++;
+                check(requirement);
+            }
+        }
+    }
+
+    public BundleDescriptor getSystem() {
+        return system;
+    }
+
+    public CapabilityIndex getIndex() {
+        return index;
+    }
+
+    public List<BundleDescriptor> getBundles() {
+        return bundles;
+    }
+
+    public int getRequirementCount() {
+        return requirements;
+    }
+
+    /**
+     * Mandatory requirements without any provider
+     * @return
+     */
+    public List<Problem> getUnresolved() {
+        return unresolved;
+    }
+
+    /**
+     * Optional requirements without any provider
+     * @return
+     */
+    public List<Problem> getUnresolvedOptional() {
+        return unresolvedOptional;
+    }
+
+    /**
+     * Requirements satisfied by more than one bundle (other than the requiring bundle)
+     * @return
+     */
+    public List<Problem> getAmbiguous() {
+        return ambiguous;
+    }
+
+    /**
+     * Writes results of {@link #check()} as text report
+     * @param out
+     */
+    public void write(Writer out) throws IOException {
+        out.write("= Resolution report\n\n");
+        out.write("Bundles: " + bundles.size() + "\n");
+        out.write("Capabilities: " + index.size() + " (including " + system.getId() + ")\n");
+        out.write("Requirements: " + requirements + "\n");
+        out.write("Unresolved: " + unresolved.size() + "\n");
+        out.write("Unresolved optional: " + unresolvedOptional.size() + "\n");
+        out.write("Ambiguous: " + ambiguous.size() + "\n");
+
+        write(out, "Unresolved requirements", unresolved);
+        write(out, "Unresolved optional requirements", unresolvedOptional);
+        write(out, "Ambiguous requirements", ambiguous);
+    }
+
+    private void write(Writer out, String title, List<Problem> problems) throws IOException {
+        out.write("\n== " + title + "\n");
+        BundleDescriptor current = null;
+        for (Problem p : problems) {
+            if (p.getRequirement().getBundle() != current) {
+                current = p.getRequirement().getBundle();
+                out.write("\n= " + current.getId() + "\n");
+            }
+            out.write("    " + p.getRequirement());
+            if (p.getReason() != null) {
+                out.write(" (" + p.getReason() + ")");
+            }
+            out.write("\n");
+            for (Capability c : p.getProviders()) {
+                out.write("        provided by " + c.getBundle().getId() + ": " + c + "\n");
+            }
+        }
+    }
+
+    private void check(Requirement requirement) {
+        if (requirement.getError() != null) {
+            failed(new Problem(requirement, Collections.emptyList(), requirement.getError()));
+            return;
+        }
+        if (Capability.PACKAGE_NAMESPACE.equals(requirement.getNamespace())) {
+            String pkg = requirement.getAttributes().get(Capability.PACKAGE_NAMESPACE);
+            if (pkg.startsWith("java.")) {
+                // always delegated to boot class loader
+                return;
+            }
+        }
+        List<Capability> providers;
+        try {
+            providers = index.providers(requirement);
+        } catch (InvalidSyntaxException e) {
+            failed(new Problem(requirement, Collections.emptyList(), "invalid filter: " + e.getMessage()));
+            return;
+        }
+        if (providers.isEmpty()) {
+            failed(new Problem(requirement, providers, null));
+            return;
+        }
+        Set<BundleDescriptor> providingBundles = new LinkedHashSet<>();
+        for (Capability c : providers) {
+            if (c.getBundle() != requirement.getBundle()) {
+                providingBundles.add(c.getBundle());
+            }
+        }
+        if (providingBundles.size() > 1) {
+            ambiguous.add(new Problem(requirement, providers, null));
+        }
+    }
+
+    private void failed(Problem problem) {
+        if (problem.getRequirement().isOptional()) {
+            unresolvedOptional.add(problem);
+        } else {
+            unresolved.add(problem);
+        }
+    }
+
+    /**
+     * Requirement which can't be satisfied or which has more than one provider
+     */
+    public static class Problem {
+
+        private final Requirement requirement;
+        private final List<Capability> providers;
+        private final String reason;
+
+        public Problem(Requirement requirement, List<Capability> providers, String reason) {
+            this.requirement = requirement;
+            this.providers = providers;
+            this.reason = reason;
+        }
+
+        public Requirement getRequirement() {
+            return requirement;
+        }
+
+        public List<Capability> getProviders() {
+            return providers;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.felix.utils.properties.InterpolationHelper;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+
+/**
+ * <p>Capabilities of the system bundle, which are not provided by any bundle of the reactor. These can
+ * be loaded from properties file like Karaf's {@code etc/config.properties} (with
+ * {@code ${...}} placeholders resolved against the file itself and system properties):</p>
+ * <ul>
+ *     <li>{@code org.osgi.framework.system.packages} and {@code org.osgi.framework.system.packages.extra}</li>
+ *     <li>{@code org.osgi.framework.system.capabilities} and {@code org.osgi.framework.system.capabilities.extra}</li>
+ * </ul>
+ * <p>Without a profile (or without {@code org.osgi.framework.system.packages} and
+ * {@code org.osgi.framework.system.capabilities} properties), the system bundle exports OSGi Core framework
+ * packages and packages of the Java SE platform of current JVM and provides {@code osgi.ee} capability of
+ * current JVM - like the framework itself.
+ * {@code java.*} packages are always available.</p>
+ */
+public final class SystemProfile {
+
+    public static final String SYSTEM_BUNDLE = "system.bundle";
+
+    public static final String SYSTEM_PACKAGES = "org.osgi.framework.system.packages";
+    public static final String SYSTEM_PACKAGES_EXTRA = "org.osgi.framework.system.packages.extra";
+    public static final String SYSTEM_CAPABILITIES = "org.osgi.framework.system.capabilities";
+    public static final String SYSTEM_CAPABILITIES_EXTRA = "org.osgi.framework.system.capabilities.extra";
+
+    private static final String DEFAULT_PACKAGES = "system-packages.properties";
+
+    private SystemProfile() {
+    }
+
+    /**
+     * Loads system bundle capabilities from properties file
+     * @param file
+     * @return
+     */
+    public static BundleDescriptor load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = new FileInputStream(file)) {
+            properties.load(is);
+        }
+        Map<String, String> values = new LinkedHashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            values.put(name, properties.getProperty(name));
+        }
+        InterpolationHelper.performSubstitution(values);
+        String packages = values.get(SYSTEM_PACKAGES);
+        if (packages == null) {
+            packages = defaultPackages(System.getProperty("java.specification.version"));
+        }
+        String capabilities = values.get(SYSTEM_CAPABILITIES);
+        if (capabilities == null) {
+            // same default as used by the framework itself
+            capabilities = executionEnvironment(System.getProperty("java.specification.version"));
+        }
+        return system(file.getName(),
+                join(packages, values.get(SYSTEM_PACKAGES_EXTRA)),
+                join(capabilities, values.get(SYSTEM_CAPABILITIES_EXTRA)));
+    }
+
+    /**
+     * System bundle exporting framework and Java SE packages and providing {@code osgi.ee} capability of
+     * current JVM
+     * @return
+     */
+    public static BundleDescriptor defaultProfile() throws IOException {
+        String version = System.getProperty("java.specification.version");
+        return system("default profile", defaultPackages(version), executionEnvironment(version));
+    }
+
+    /**
+     * OSGi Core framework packages and non-{@code java.*} packages of Java SE platform of given version. For
+     * versions without own list, the list of the nearest lower version is used.
+     * @param specificationVersion value of {@code java.specification.version} property
+     * @return value of {@code org.osgi.framework.system.packages}
+     */
+    public static String defaultPackages(String specificationVersion) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream is = SystemProfile.class.getResourceAsStream(DEFAULT_PACKAGES)) {
+            if (is == null) {
+                throw new IOException("Can't find " + DEFAULT_PACKAGES);
+            }
+            properties.load(is);
+        }
+        int current = javaVersion(specificationVersion);
+        String jre = null;
+        for (int v = current; jre == null && v >= 8; v--) {
+            jre = properties.getProperty(v < 9 ? "jre-1." + v : "jre-" + v);
+        }
+        return join(properties.getProperty("framework"), jre);
+    }
+
+    /**
+     * Creates system bundle with given {@code Export-Package} and {@code Provide-Capability} headers
+     * @param name
+     * @param packages
+     * @param capabilities
+     * @return
+     */
+    public static BundleDescriptor system(String name, String packages, String capabilities) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-SymbolicName", SYSTEM_BUNDLE);
+        if (packages != null && !packages.trim().isEmpty()) {
+            main.putValue("Export-Package", packages);
+        }
+        if (capabilities != null && !capabilities.trim().isEmpty()) {
+            main.putValue("Provide-Capability", capabilities);
+        }
+        return new BundleDescriptor(SYSTEM_BUNDLE + " (" + name + ")", ManifestHeaders.parse(manifest));
+    }
+
+    /**
+     * {@code osgi.ee} capability for {@code JavaSE} of given version and all previous versions
+     * @param specificationVersion value of {@code java.specification.version} property
+     * @return
+     */
+    public static String executionEnvironment(String specificationVersion) {
+        int current = javaVersion(specificationVersion);
+        StringBuilder versions = new StringBuilder();
+        for (int v = 0; v <= current; v++) {
+            if (v > 0) {
+                versions.append(",");
+            }
+            versions.append(v < 9 ? "1." + v : Integer.toString(v));
+        }
+        return "osgi.ee;osgi.ee=\"JavaSE\";version:List<Version>=\"" + versions + "\"";
+    }
+
+    /**
+     * Major Java version ({@code 8} for {@code 1.8}), {@code 8} if unknown
+     * @param specificationVersion
+     * @return
+     */
+    private static int javaVersion(String specificationVersion) {
+        if (specificationVersion != null) {
+            String v = specificationVersion.startsWith("1.") ? specificationVersion.substring(2) : specificationVersion;
+            try {
+                return Integer.parseInt(v);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return 8;
+    }
+
+    private static String join(String value, String extra) {
+        if (value == null || value.trim().isEmpty()) {
+            return extra;
+        }
+        if (extra == null || extra.trim().isEmpty()) {
+            return value;
+        }
+        return value + "," + extra;
+    }
+
+}
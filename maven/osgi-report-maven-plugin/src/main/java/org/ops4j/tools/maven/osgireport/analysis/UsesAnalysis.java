@@ -0,0 +1,461 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.InvalidSyntaxException;
+import org.osgi.framework.Version;
+
+/**
+ * <p>Finds potential class space inconsistencies caused by {@code uses} directives of exported packages.</p>
+ * <p>First, each bundle gets a package space - imported packages are wired to preferred provider (highest
+ * version, then first collected bundle), packages of required bundles and own exports are added if not
+ * imported. Then every exported package gets its transitive {@code uses} closure - the set of exported
+ * packages which have to be shared by everyone importing it. The closure is computed once per strongly
+ * connected component of "uses" graph (Tarjan's algorithm, components are finished in reverse topological
+ * order, so closures of successors are always ready).</p>
+ * <p>A bundle has a conflict, if closures of packages it imports require a package from a different
+ * provider than the one it's wired to (or than required by another imported package). If the bundle's own
+ * import could be wired to the required provider instead, it's not reported.</p>
+ */
+public class UsesAnalysis {
+
+    private final ResolutionCheck check;
+
+    /** Exported packages of all bundles (including system bundle), indexed by position */
+    private final List<Capability> exports = new ArrayList<>();
+    private final Map<Capability, Integer> ids = new IdentityHashMap<>();
+    private final Map<BundleDescriptor, Map<String, Capability>> spaces = new IdentityHashMap<>();
+    private final Map<BundleDescriptor, List<Capability>> wires = new IdentityHashMap<>();
+
+    private int[][] closures;
+    private int withUses;
+    private final List<Conflict> conflicts = new ArrayList<>();
+
+    /**
+     * Creates analysis of bundles and system bundle known to given (not necessarily performed) check.
+     * @param check
+     */
+    public UsesAnalysis(ResolutionCheck check) {
+        this.check = check;
+    }
+
+    /**
+     * Prefers capability with highest version ({@code version} for packages, {@code bundle-version} for
+     * bundles), then the one added first.
+     * @param capabilities
+     * @return
+     */
+    public static Capability preferred(List<Capability> capabilities) {
+        Capability result = null;
+        Version best = null;
+        for (Capability c : capabilities) {
+            String attribute = Capability.PACKAGE_NAMESPACE.equals(c.getNamespace()) ? "version" : "bundle-version";
+            Object v = c.getAttributes().get(attribute);
+            Version version = v instanceof Version ? (Version) v : Version.emptyVersion;
+            if (best == null || version.compareTo(best) > 0) {
+                result = c;
+                best = version;
+            }
+        }
+        return result;
+    }
+
+    public void analyze() {
+        List<BundleDescriptor> all = new ArrayList<>();
+        all.add(check.getSystem());
+        all.addAll(check.getBundles());
+        for (BundleDescriptor bundle : all) {
+            for (Capability c : bundle.getCapabilities()) {
+                if (Capability.PACKAGE_NAMESPACE.equals(c.getNamespace())) {
+                    ids.put(c, exports.size());
+                    exports.add(c);
+                }
+            }
+        }
+        for (BundleDescriptor bundle : all) {
+            wire(bundle);
+        }
+        closures = closures(graph());
+        conflicts.clear();
+        for (BundleDescriptor bundle : check.getBundles()) {
+            findConflicts(bundle);
+        }
+    }
+
+    public List<Conflict> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * Package space of given bundle (after {@link #analyze()})
+     * @param bundle
+     * @return
+     */
+    public Map<String, Capability> getSpace(BundleDescriptor bundle) {
+        return spaces.get(bundle);
+    }
+
+    /**
+     * Transitive {@code uses} closure of given exported package (including the package itself)
+     * @param export
+     * @return
+     */
+    public List<Capability> getClosure(Capability export) {
+        List<Capability> result = new ArrayList<>();
+        Integer id = ids.get(export);
+        if (id != null) {
+            for (int c : closures[id]) {
+                result.add(exports.get(c));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes results of {@link #analyze()} as text report
+     * @param out
+     */
+    public void write(Writer out) throws IOException {
+        out.write("= Uses constraints report\n\n");
+        out.write("Bundles: " + check.getBundles().size() + "\n");
+        out.write("Exported packages: " + exports.size() + " (" + withUses + " with uses directive)\n");
+        out.write("Potential conflicts: " + conflicts.size() + "\n");
+        BundleDescriptor current = null;
+        for (Conflict c : conflicts) {
+            if (c.getBundle() != current) {
+                current = c.getBundle();
+                out.write("\n= " + current.getId() + "\n");
+            }
+            out.write("    " + c.getPackageName() + "\n");
+            out.write("        " + describe(c.getSource(), c.getSourceVia()) + "\n");
+            out.write("        " + describe(c.getConflicting(), c.getConflictingVia()) + "\n");
+        }
+    }
+
+    private static String describe(Capability source, Capability via) {
+        String provider = source.getBundle().getId() + " (version " + source.getAttributes().get("version") + ")";
+        if (via == null) {
+            return "wired to " + provider;
+        }
+        return "used by " + via.getAttributes().get(Capability.PACKAGE_NAMESPACE) + " from "
+                + via.getBundle().getId() + " as " + provider;
+    }
+
+    /**
+     * Builds package space of single bundle: imports first, then required bundles, then own exports.
+     * @param bundle
+     */
+    private void wire(BundleDescriptor bundle) {
+        Map<String, Capability> space = new LinkedHashMap<>();
+        List<Capability> imported = new ArrayList<>();
+        List<Capability> required = new ArrayList<>();
+        for (Requirement r : bundle.getRequirements()) {
+            boolean pkg = Capability.PACKAGE_NAMESPACE.equals(r.getNamespace());
+            if ((!pkg && !Capability.BUNDLE_NAMESPACE.equals(r.getNamespace())) || r.getError() != null) {
+                continue;
+            }
+            Capability provider;
+            try {
+                provider = preferred(check.getIndex().providers(r));
+            } catch (InvalidSyntaxException e) {
+                provider = null;
+            }
+            if (provider == null) {
+                continue;
+            }
+            if (pkg) {
+                String name = (String) provider.getAttributes().get(Capability.PACKAGE_NAMESPACE);
+                if (!space.containsKey(name)) {
+                    space.put(name, provider);
+                    imported.add(provider);
+                }
+            } else {
+                for (Capability c : provider.getBundle().getCapabilities()) {
+                    if (Capability.PACKAGE_NAMESPACE.equals(c.getNamespace())) {
+                        required.add(c);
+                    }
+                }
+            }
+        }
+        for (Capability c : required) {
+            String name = (String) c.getAttributes().get(Capability.PACKAGE_NAMESPACE);
+            if (!space.containsKey(name)) {
+                space.put(name, c);
+                imported.add(c);
+            }
+        }
+        for (Capability c : bundle.getCapabilities()) {
+            if (Capability.PACKAGE_NAMESPACE.equals(c.getNamespace())) {
+                space.putIfAbsent((String) c.getAttributes().get(Capability.PACKAGE_NAMESPACE), c);
+            }
+        }
+        spaces.put(bundle, space);
+        wires.put(bundle, imported);
+    }
+
+    /**
+     * Edges of "uses" graph - from exported package to providers of used packages in exporter's space
+     * @return
+     */
+    private int[][] graph() {
+        int[][] graph = new int[exports.size()][];
+        withUses = 0;
+        for (int i = 0; i < graph.length; i++) {
+            Capability export = exports.get(i);
+            String uses = export.getDirectives().get("uses");
+            if (uses == null) {
+                graph[i] = new int[0];
+                continue;
+            }
+            withUses++;
+            Map<String, Capability> space = spaces.get(export.getBundle());
+            String[] used = export.getBundle().getHeaders().getUses(uses);
+            int[] edges = new int[used.length];
+            int count = 0;
+            for (String pkg : used) {
+                Capability target = space.get(pkg);
+                if (target != null && target != export) {
+                    edges[count++] = ids.get(target);
+                }
+            }
+            graph[i] = Arrays.copyOf(edges, count);
+        }
+        return graph;
+    }
+
+    /**
+     * Computes transitive closures (sorted arrays of export ids) for all nodes, using iterative Tarjan's
+     * algorithm, so deep "uses" chains don't overflow the stack.
+     * @param graph
+     * @return
+     */
+    private static int[][] closures(int[][] graph) {
+        int n = graph.length;
+        int[][] result = new int[n][];
+        int[] index = new int[n];
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        Arrays.fill(index, -1);
+        int[] stack = new int[n];
+        int sp = 0;
+        int[] callStack = new int[n];
+        int[] edgePosition = new int[n];
+        int counter = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) {
+                continue;
+            }
+            int csp = 0;
+            callStack[csp++] = root;
+            index[root] = counter;
+            low[root] = counter++;
+            stack[sp++] = root;
+            onStack[root] = true;
+            edgePosition[root] = 0;
+            while (csp > 0) {
+                int v = callStack[csp - 1];
+                if (edgePosition[v] < graph[v].length) {
+                    int w = graph[v][edgePosition[v]++];
+                    if (index[w] == -1) {
+                        index[w] = counter;
+                        low[w] = counter++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        edgePosition[w] = 0;
+                        callStack[csp++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                csp--;
+                if (csp > 0) {
+                    int parent = callStack[csp - 1];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+                if (low[v] == index[v]) {
+                    // v is a root of strongly connected component - all successors outside are finished
+                    List<Integer> members = new ArrayList<>();
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        members.add(w);
+                    } while (w != v);
+                    int[] closure = closure(graph, result, members);
+                    for (int m : members) {
+                        result[m] = closure;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int[] closure(int[][] graph, int[][] closures, List<Integer> members) {
+        int size = members.size();
+        for (int m : members) {
+            for (int w : graph[m]) {
+                if (closures[w] != null) {
+                    size += closures[w].length;
+                }
+            }
+        }
+        int[] all = new int[size];
+        int pos = 0;
+        for (int m : members) {
+            all[pos++] = m;
+            for (int w : graph[m]) {
+                if (closures[w] != null) {
+                    System.arraycopy(closures[w], 0, all, pos, closures[w].length);
+                    pos += closures[w].length;
+                }
+            }
+        }
+        Arrays.sort(all, 0, pos);
+        int unique = 0;
+        for (int i = 0; i < pos; i++) {
+            if (unique == 0 || all[unique - 1] != all[i]) {
+                all[unique++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, unique);
+    }
+
+    private void findConflicts(BundleDescriptor bundle) {
+        Map<String, Capability> space = spaces.get(bundle);
+        // package -> required provider and the imported package which requires it (null for own wiring)
+        Map<String, Capability> sources = new HashMap<>(space);
+        Map<String, Capability> via = new HashMap<>();
+        Map<String, Conflict> found = new LinkedHashMap<>();
+        // packages of the same strongly connected component share the closure
+        Set<int[]> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Capability imported : wires.get(bundle)) {
+            int[] closure = closures[ids.get(imported)];
+            if (!visited.add(closure)) {
+                continue;
+            }
+            for (int id : closure) {
+                Capability required = exports.get(id);
+                String pkg = (String) required.getAttributes().get(Capability.PACKAGE_NAMESPACE);
+                Capability existing = sources.putIfAbsent(pkg, required);
+                if (existing == null) {
+                    via.put(pkg, imported);
+                } else if (existing != required && !found.containsKey(pkg)
+                        && (via.get(pkg) != null || !rewirable(bundle, pkg, required))) {
+                    found.put(pkg, new Conflict(bundle, pkg, existing, via.get(pkg), required, imported));
+                }
+            }
+        }
+        conflicts.addAll(found.values());
+    }
+
+    /**
+     * Whether bundle's own import of given package could be wired to given provider instead, which
+     * resolver would do to satisfy the constraint.
+     * @param bundle
+     * @param pkg
+     * @param provider
+     * @return
+     */
+    private boolean rewirable(BundleDescriptor bundle, String pkg, Capability provider) {
+        for (Requirement r : bundle.getRequirements()) {
+            if (Capability.PACKAGE_NAMESPACE.equals(r.getNamespace())
+                    && pkg.equals(r.getAttributes().get(Capability.PACKAGE_NAMESPACE)) && r.getError() == null) {
+                try {
+                    return check.getIndex().providers(r).contains(provider);
+                } catch (InvalidSyntaxException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Two different providers of the same package required in class space of single bundle
+     */
+    public static class Conflict {
+
+        private final BundleDescriptor bundle;
+        private final String packageName;
+        private final Capability source;
+        private final Capability sourceVia;
+        private final Capability conflicting;
+        private final Capability conflictingVia;
+
+        public Conflict(BundleDescriptor bundle, String packageName, Capability source, Capability sourceVia,
+                        Capability conflicting, Capability conflictingVia) {
+            this.bundle = bundle;
+            this.packageName = packageName;
+            this.source = source;
+            this.sourceVia = sourceVia;
+            this.conflicting = conflicting;
+            this.conflictingVia = conflictingVia;
+        }
+
+        public BundleDescriptor getBundle() {
+            return bundle;
+        }
+
+        public String getPackageName() {
+            return packageName;
+        }
+
+        /**
+         * Provider of the package in bundle's space (or required by {@link #getSourceVia()})
+         * @return
+         */
+        public Capability getSource() {
+            return source;
+        }
+
+        /**
+         * Imported package which requires {@link #getSource()}, {@code null} if it's bundle's own wiring
+         * @return
+         */
+        public Capability getSourceVia() {
+            return sourceVia;
+        }
+
+        public Capability getConflicting() {
+            return conflicting;
+        }
+
+        /**
+         * Imported package which requires {@link #getConflicting()}
+         * @return
+         */
+        public Capability getConflictingVia() {
+            return conflictingVia;
+        }
+
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Reads API of classes from selected packages of a jar. Entries are found through zip central directory and
+ * each class is decompressed and parsed as separate task, so big jars are scanned in parallel.
+ */
+public final class ApiScanner {
+
+    private ApiScanner() {
+    }
+
+    /**
+     * Returns public classes of given packages
+     * @param jar
+     * @param packages package names ({@code org.example})
+     * @param executor optional executor used to parse classes in parallel
+     * @return package name &rarr; class name &rarr; class API
+     */
+    public static Map<String, Map<String, ClassInfo>> scan(File jar, Set<String> packages, ExecutorService executor)
+            throws IOException {
+        Map<String, Map<String, ClassInfo>> result = new TreeMap<>();
+        try (ZipFile zip = new ZipFile(jar)) {
+            List<FutureTask<ClassInfo>> tasks = new ArrayList<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                String name = entry.getName();
+                if (!name.endsWith(".class") || name.endsWith("package-info.class") || name.startsWith("META-INF/")) {
+                    continue;
+                }
+                int slash = name.lastIndexOf('/');
+                String pkg = slash < 0 ? "" : name.substring(0, slash).replace('/', '.');
+                if (packages.contains(pkg)) {
+                    FutureTask<ClassInfo> task = new FutureTask<>(() -> ClassParser.parse(read(zip, entry)));
+                    if (executor != null) {
+                        executor.execute(task);
+                    }
+                    tasks.add(task);
+                }
+            }
+            for (FutureTask<ClassInfo> task : tasks) {
+                ClassInfo info = get(task);
+                if (info.isApi()) {
+                    result.computeIfAbsent(info.getPackageName().replace('/', '.'), p -> new TreeMap<>())
+                            .put(info.getName(), info);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream is = zip.getInputStream(entry)) {
+            if (entry.getSize() >= 0) {
+                byte[] bytes = new byte[(int) entry.getSize()];
+                int pos = 0;
+                int read = 0;
+                while (pos < bytes.length && read >= 0) {
+                    read = is.read(bytes, pos, bytes.length - pos);
+                    pos += Math.max(read, 0);
+                }
+                return bytes;
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                baos.write(buffer, 0, read);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Runs the task in calling thread, if it wasn't picked by the executor yet and returns its result
+     * @param task
+     * @return
+     */
+    private static ClassInfo get(FutureTask<ClassInfo> task) throws IOException {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading classes", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+}
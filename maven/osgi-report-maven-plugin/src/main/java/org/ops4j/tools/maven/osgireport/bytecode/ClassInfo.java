@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.util.Map;
+
+/**
+ * API of single class, as read by {@link ClassParser}. Only public and protected members are included,
+ * names are in internal form ({@code org/example/Type}).
+ */
+public class ClassInfo {
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_BRIDGE = 0x0040;
+    public static final int ACC_INTERFACE = 0x0200;
+    public static final int ACC_ABSTRACT = 0x0400;
+    public static final int ACC_SYNTHETIC = 0x1000;
+    public static final int ACC_ANNOTATION = 0x2000;
+    public static final int ACC_ENUM = 0x4000;
+
+    /** Access flags which are part of the API contract */
+    public static final int API_FLAGS = ACC_PUBLIC | ACC_PROTECTED | ACC_STATIC | ACC_FINAL | ACC_INTERFACE
+            | ACC_ABSTRACT | ACC_ANNOTATION | ACC_ENUM;
+
+    private final String name;
+    private final int access;
+    private final String superName;
+    private final String[] interfaces;
+    private final Map<String, Integer> members;
+    private final boolean providerType;
+
+    public ClassInfo(String name, int access, String superName, String[] interfaces, Map<String, Integer> members,
+                     boolean providerType) {
+        this.name = name;
+        this.access = access;
+        this.superName = superName;
+        this.interfaces = interfaces;
+        this.members = members;
+        this.providerType = providerType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Name of the package in internal form ({@code org/example})
+     * @return
+     */
+    public String getPackageName() {
+        int slash = name.lastIndexOf('/');
+        return slash < 0 ? "" : name.substring(0, slash);
+    }
+
+    public int getAccess() {
+        return access;
+    }
+
+    public String getSuperName() {
+        return superName;
+    }
+
+    public String[] getInterfaces() {
+        return interfaces;
+    }
+
+    /**
+     * Public and protected members - methods as {@code name(descriptor)return}, fields as
+     * {@code name:descriptor} - mapped to their {@link #API_FLAGS access flags}.
+     * @return
+     */
+    public Map<String, Integer> getMembers() {
+        return members;
+    }
+
+    /**
+     * Whether the class is annotated with {@code org.osgi.annotation.versioning.ProviderType}, so adding
+     * abstract methods is not a breaking change for consumers.
+     * @return
+     */
+    public boolean isProviderType() {
+        return providerType;
+    }
+
+    /**
+     * Whether the class is visible outside of its package
+     * @return
+     */
+    public boolean isApi() {
+        return (access & ACC_PUBLIC) != 0 && (access & ACC_SYNTHETIC) == 0;
+    }
+
+    public boolean isInterface() {
+        return (access & ACC_INTERFACE) != 0;
+    }
+
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Minimal reader of class files (JVMS, chapter 4). Classes are never loaded - the constant pool is only
+ * scanned for offsets of its entries and {@code CONSTANT_Utf8} entries are decoded only when referenced
+ * by class name, member names, descriptors or annotation types. Method bodies and other attributes are
+ * skipped.</p>
+ */
+public final class ClassParser {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final String PROVIDER_TYPE = "Lorg/osgi/annotation/versioning/ProviderType;";
+
+    private final byte[] b;
+    private int[] offsets;
+
+    private ClassParser(byte[] bytes) {
+        this.b = bytes;
+    }
+
+    /**
+     * Reads API of given class
+     * @param bytes content of {@code .class} file
+     * @return
+     */
+    public static ClassInfo parse(byte[] bytes) throws IOException {
+        try {
+            return new ClassParser(bytes).read();
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated class file", e);
+        }
+    }
+
+    private ClassInfo read() throws IOException {
+        if (u4(0) != MAGIC) {
+            throw new IOException("Not a class file");
+        }
+        int p = constantPool(8);
+        int access = u2(p);
+        String name = className(u2(p + 2));
+        int superIndex = u2(p + 4);
+        String superName = superIndex == 0 ? null : className(superIndex);
+        int interfaceCount = u2(p + 6);
+        String[] interfaces = new String[interfaceCount];
+        p += 8;
+        for (int i = 0; i < interfaceCount; i++) {
+            interfaces[i] = className(u2(p));
+            p += 2;
+        }
+
+        Map<String, Integer> members = new LinkedHashMap<>();
+        boolean api = (access & ClassInfo.ACC_FINAL) == 0;
+        p = members(p, members, false, api);
+        p = members(p, members, true, api);
+
+        boolean providerType = false;
+        int attributes = u2(p);
+        p += 2;
+        for (int i = 0; i < attributes; i++) {
+            String attribute = utf8(u2(p));
+            int length = u4(p + 2);
+            if ("RuntimeInvisibleAnnotations".equals(attribute) || "RuntimeVisibleAnnotations".equals(attribute)) {
+                providerType |= hasAnnotation(p + 6, PROVIDER_TYPE);
+            }
+            p += 6 + length;
+        }
+        return new ClassInfo(name, access & ClassInfo.API_FLAGS | access & ClassInfo.ACC_SYNTHETIC, superName,
+                interfaces, members, providerType);
+    }
+
+    /**
+     * Records offsets of constant pool entries
+     * @param start
+     * @return offset of the first byte after constant pool
+     */
+    private int constantPool(int start) throws IOException {
+        int count = u2(start);
+        offsets = new int[count];
+        int p = start + 2;
+        int i = 1;
+        while (i < count) {
+            int tag = b[p] & 0xff;
+            offsets[i] = p + 1;
+            switch (tag) {
+                case 1:
+                    // Utf8
+                    p += 3 + u2(p + 1);
+                    break;
+                case 3:
+                case 4:
+                    // Integer, Float
+                    p += 5;
+                    break;
+                case 5:
+                case 6:
+                    // Long, Double take two entries
+                    p += 9;
+                    i++;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    // Class, String, MethodType, Module, Package
+                    p += 3;
+                    break;
+                case 15:
+                    // MethodHandle
+                    p += 4;
+                    break;
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    // Fieldref, Methodref, InterfaceMethodref, NameAndType, Dynamic, InvokeDynamic
+                    p += 5;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+            i++;
+        }
+        return p;
+    }
+
+    /**
+     * Reads fields or methods, collecting public and protected (if the class may be extended) ones.
+     * @param start
+     * @param members
+     * @param methods
+     * @param extensible
+     * @return offset of the first byte after the members
+     */
+    private int members(int start, Map<String, Integer> members, boolean methods, boolean extensible) throws IOException {
+        int count = u2(start);
+        int p = start + 2;
+        for (int i = 0; i < count; i++) {
+            int access = u2(p);
+            int attributes = u2(p + 6);
+            boolean visible = (access & ClassInfo.ACC_PUBLIC) != 0 || extensible && (access & ClassInfo.ACC_PROTECTED) != 0;
+            boolean generated = (access & ClassInfo.ACC_SYNTHETIC) != 0 || methods && (access & ClassInfo.ACC_BRIDGE) != 0;
+            if (visible && !generated) {
+                String name = utf8(u2(p + 2));
+                String descriptor = utf8(u2(p + 4));
+                members.put(methods ? name + descriptor : name + ":" + descriptor, access & ClassInfo.API_FLAGS);
+            }
+            p += 8;
+            for (int a = 0; a < attributes; a++) {
+                p += 6 + u4(p + 2);
+            }
+        }
+        return p;
+    }
+
+    /**
+     * Checks {@code Runtime(In)VisibleAnnotations} attribute for annotation of given type
+     * @param start
+     * @param type
+     * @return
+     */
+    private boolean hasAnnotation(int start, String type) throws IOException {
+        int count = u2(start);
+        int p = start + 2;
+        for (int i = 0; i < count; i++) {
+            if (type.equals(utf8(u2(p)))) {
+                return true;
+            }
+            p = skipAnnotation(p);
+        }
+        return false;
+    }
+
+    private int skipAnnotation(int start) {
+        int pairs = u2(start + 2);
+        int p = start + 4;
+        for (int i = 0; i < pairs; i++) {
+            p = skipElementValue(p + 2);
+        }
+        return p;
+    }
+
+    private int skipElementValue(int start) {
+        char tag = (char) (b[start] & 0xff);
+        switch (tag) {
+            case 'e':
+                return start + 5;
+            case '@':
+                return skipAnnotation(start + 1);
+            case '[':
+                int count = u2(start + 1);
+                int p = start + 3;
+                for (int i = 0; i < count; i++) {
+                    p = skipElementValue(p);
+                }
+                return p;
+            default:
+                // constants and class literals
+                return start + 3;
+        }
+    }
+
+    private String className(int index) throws IOException {
+        return utf8(u2(offsets[index]));
+    }
+
+    /**
+     * Decodes {@code CONSTANT_Utf8} entry (modified UTF-8), with fast path for ASCII names
+     * @param index
+     * @return
+     */
+    private String utf8(int index) throws IOException {
+        int offset = offsets[index];
+        int length = u2(offset);
+        for (int i = offset + 2; i < offset + 2 + length; i++) {
+            if (b[i] < 0 || b[i] == 0) {
+                return new DataInputStream(new ByteArrayInputStream(b, offset, length + 2)).readUTF();
+            }
+        }
+        return new String(b, offset + 2, length, StandardCharsets.ISO_8859_1);
+    }
+
+    private int u2(int p) {
+        return (b[p] & 0xff) << 8 | b[p + 1] & 0xff;
+    }
+
+    private int u4(int p) {
+        return (b[p] & 0xff) << 24 | (b[p + 1] & 0xff) << 16 | (b[p + 2] & 0xff) << 8 | b[p + 3] & 0xff;
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+import org.ops4j.tools.maven.osgireport.NestedArchives;
+import org.ops4j.tools.maven.osgireport.content.BundleContent;
+
+/**
+ * <p>Compares packages referenced by classes of bundles (see {@link ReferenceScanner}) with their
+ * {@code Import-Package} and {@code DynamicImport-Package} headers:</p>
+ * <ul>
+ *     <li><em>unused imports</em> - imported packages not referenced by any class. They may still be needed
+ *     by classes loaded reflectively (Blueprint, Spring XML, {@code Class.forName()}),</li>
+ *     <li><em>missing imports</em> - referenced packages which are neither contained in the bundle, nor
+ *     imported statically or dynamically. {@code java.*} packages are never imported. For bundles with
+ *     {@code Require-Bundle} and for fragments the packages may be provided by other bundles, so they're
+ *     listed, but not counted as missing.</li>
+ * </ul>
+ * <p>Classes on {@code Bundle-ClassPath} of the bundle - in its directories and in the embedded jars - are
+ * scanned (except {@code META-INF} and {@code OSGI-OPT} directories). Each bundle is scanned by single {@link #scan(BundleContent, File)} call,
+ * which may run in parallel with other bundles.</p>
+ */
+public class ImportAnalysis {
+
+    private final List<Result> results = new ArrayList<>();
+    private int bundles;
+    private int classes;
+    private int unused;
+    private int missing;
+
+    /**
+     * Scans classes of single bundle and compares the referenced packages with its imports. May be called
+     * concurrently.
+     * @param content
+     * @param file
+     * @return
+     */
+    public static Result scan(BundleContent content, File file) throws IOException {
+        ReferenceScanner scanner = new ReferenceScanner();
+        Result result = new Result(content.getId());
+        try (ZipFile zip = new ZipFile(file)) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                String name = entry.getName();
+                String path = path(content.getClassPathRoots(), name);
+                if (path != null && path.endsWith(".class") && !path.startsWith("META-INF/")
+                        && !path.startsWith("OSGI-OPT/")) {
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        scan(scanner, name, is, result);
+                    }
+                }
+            }
+            for (String jar : content.getEmbeddedJars()) {
+                try (InputStream is = zip.getInputStream(zip.getEntry(jar));
+                     ZipInputStream zis = NestedArchives.open(is)) {
+                    ZipEntry entry;
+                    while ((entry = zis.getNextEntry()) != null) {
+                        if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                            scan(scanner, jar + "!/" + entry.getName(), zis, result);
+                        }
+                    }
+                }
+            }
+        }
+        result.classes = scanner.getClasses();
+        compare(content, scanner.getPackages(), result);
+        return result;
+    }
+
+    /**
+     * Adds result of single bundle to the report
+     * @param result
+     */
+    public void add(Result result) {
+        bundles++;
+        classes += result.classes;
+        unused += result.unusedImports.size();
+        if (!result.indirect) {
+            missing += result.missingImports.size();
+        }
+        if (!result.unusedImports.isEmpty() || !result.missingImports.isEmpty() || !result.errors.isEmpty()) {
+            results.add(result);
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write("= Import report\n\n");
+        out.write("Bundles: " + bundles + "\n");
+        out.write("Classes: " + classes + "\n");
+        out.write("Unused imports: " + unused + "\n");
+        out.write("Missing imports: " + missing + "\n");
+
+        for (Result result : results) {
+            out.write("\n= " + result.id + "\n");
+            write(out, "Unused imports", result.unusedImports);
+            write(out, result.indirect ? "Not imported (may be provided by required or host bundle)" : "Missing imports",
+                    result.missingImports);
+            write(out, "Unreadable classes", result.errors);
+        }
+    }
+
+    public int getBundles() {
+        return bundles;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    public int getUnused() {
+        return unused;
+    }
+
+    public int getMissing() {
+        return missing;
+    }
+
+    private static void scan(ReferenceScanner scanner, String name, InputStream is, Result result) {
+        try {
+            scanner.scan(is);
+        } catch (IOException e) {
+            result.errors.add(name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Path of the entry relative to the most specific class path root containing it
+     * @param roots
+     * @param name
+     * @return {@code null} if the entry is not on the class path
+     */
+    private static String path(List<String> roots, String name) {
+        for (String root : roots) {
+            if (name.startsWith(root)) {
+                return name.substring(root.length());
+            }
+        }
+        return null;
+    }
+
+    private static void compare(BundleContent content, Set<String> referenced, Result result) {
+        ManifestHeaders headers = content.getHeaders();
+        Set<String> imports = new HashSet<>();
+        for (Clause c : headers.getClauses("Import-Package")) {
+            imports.add(c.getName());
+            if (!referenced.contains(c.getName())) {
+                result.unusedImports.add("optional".equals(c.getDirective("resolution"))
+                        ? c.getName() + " (optional)" : c.getName());
+            }
+        }
+        List<String> dynamicImports = new ArrayList<>();
+        for (Clause c : headers.getClauses("DynamicImport-Package")) {
+            dynamicImports.add(c.getName());
+        }
+        for (String pkg : referenced) {
+            if (!pkg.startsWith("java.") && !content.contains(pkg) && !imports.contains(pkg)
+                    && !matches(dynamicImports, pkg)) {
+                result.missingImports.add(pkg);
+            }
+        }
+        result.indirect = headers.getHeader("Require-Bundle") != null || headers.getHeader("Fragment-Host") != null;
+    }
+
+    /**
+     * Matches package against {@code DynamicImport-Package} patterns ({@code *}, {@code org.example.*} matches
+     * subpackages of {@code org.example})
+     * @param patterns
+     * @param pkg
+     * @return
+     */
+    private static boolean matches(List<String> patterns, String pkg) {
+        for (String pattern : patterns) {
+            if (pattern.equals(pkg) || pattern.equals("*")
+                    || pattern.endsWith(".*") && pkg.startsWith(pattern.substring(0, pattern.length() - 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void write(Writer out, String title, List<String> items) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+        out.write("    " + title + ":\n");
+        for (String item : items) {
+            out.write("        " + item + "\n");
+        }
+    }
+
+    /**
+     * Imports of single bundle
+     */
+    public static class Result {
+        private final String id;
+        private final List<String> unusedImports = new ArrayList<>();
+        private final List<String> missingImports = new ArrayList<>();
+        private final List<String> errors = new ArrayList<>();
+        private int classes;
+        private boolean indirect;
+
+        Result(String id) {
+            this.id = id;
+        }
+    }
+
+}
@@ -0,0 +1,382 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * <p>Collects packages referenced by class files: from {@code CONSTANT_Class}, {@code CONSTANT_NameAndType}
+ * and {@code CONSTANT_MethodType} entries of the constant pool, from descriptors of fields and methods and from
+ * runtime visible annotations. That's what the JVM may need to load, when the classes are used.</p>
+ * <p>The scanner is reused for all classes of a bundle and it's not thread safe. Class bytes, constant pool
+ * offsets and package names are kept in reusable buffers and package names are compared as bytes, so
+ * scanning allocates only for packages seen for the first time.</p>
+ */
+public class ReferenceScanner {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final byte[] VISIBLE_ANNOTATIONS = ascii("RuntimeVisibleAnnotations");
+    private static final byte[] VISIBLE_PARAMETER_ANNOTATIONS = ascii("RuntimeVisibleParameterAnnotations");
+    private static final byte[] ANNOTATION_DEFAULT = ascii("AnnotationDefault");
+
+    private byte[] b = new byte[16384];
+    private int[] offsets = new int[1024];
+
+    /** open addressing hash set of package names (internal form) */
+    private byte[][] packages = new byte[256][];
+    private int[] hashes = new int[256];
+    private int size;
+
+    private int classes;
+
+    /**
+     * Reads whole class file from a stream and scans it
+     * @param is
+     */
+    public void scan(InputStream is) throws IOException {
+        int length = 0;
+        int read = 0;
+        while (read >= 0) {
+            if (length == b.length) {
+                byte[] bigger = new byte[b.length * 2];
+                System.arraycopy(b, 0, bigger, 0, length);
+                b = bigger;
+            }
+            read = is.read(b, length, b.length - length);
+            length += Math.max(read, 0);
+        }
+        scan(length);
+    }
+
+    /**
+     * Packages referenced by all scanned classes (with {@code .} separators)
+     * @return
+     */
+    public Set<String> getPackages() {
+        Set<String> result = new TreeSet<>();
+        for (byte[] pkg : packages) {
+            if (pkg != null) {
+                result.add(new String(pkg, StandardCharsets.UTF_8).replace('/', '.'));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Number of scanned classes
+     * @return
+     */
+    public int getClasses() {
+        return classes;
+    }
+
+    private void scan(int length) throws IOException {
+        try {
+            if (length < 10 || u4(0) != MAGIC) {
+                throw new IOException("Not a class file");
+            }
+            classes++;
+            int p = constantPool();
+            int interfaces = u2(p + 6);
+            p += 8 + interfaces * 2;
+            p = members(p);
+            p = members(p);
+            // the buffer is reused, so reading past the end of the class doesn't always fail
+            if (attributes(p) > length) {
+                throw new IOException("Truncated class file");
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * Records offsets of constant pool entries and collects references from class names and descriptors
+     * @return offset of the first byte after constant pool
+     */
+    private int constantPool() throws IOException {
+        int count = u2(8);
+        if (offsets.length < count) {
+            offsets = new int[count * 2];
+        }
+        int p = 10;
+        int i = 1;
+        while (i < count) {
+            int tag = b[p] & 0xff;
+            offsets[i] = p;
+            switch (tag) {
+                case 1:
+                    p += 3 + u2(p + 1);
+                    break;
+                case 5:
+                case 6:
+                    p += 9;
+                    i++;
+                    break;
+                case 7:
+                case 8:
+                case 16:
+                case 19:
+                case 20:
+                    p += 3;
+                    break;
+                case 15:
+                    p += 4;
+                    break;
+                case 3:
+                case 4:
+                case 9:
+                case 10:
+                case 11:
+                case 12:
+                case 17:
+                case 18:
+                    p += 5;
+                    break;
+                default:
+                    throw new IOException("Unknown constant pool tag " + tag);
+            }
+            i++;
+        }
+        int end = p;
+
+        i = 1;
+        while (i < count) {
+            p = offsets[i];
+            switch (b[p]) {
+                case 7:
+                    className(u2(p + 1));
+                    break;
+                case 12:
+                    descriptor(u2(p + 3));
+                    break;
+                case 16:
+                    descriptor(u2(p + 1));
+                    break;
+                case 5:
+                case 6:
+                    i++;
+                    break;
+                default:
+                    break;
+            }
+            i++;
+        }
+        return end;
+    }
+
+    /**
+     * Collects references from descriptors and annotations of fields or methods
+     * @param start
+     * @return offset of the first byte after the members
+     */
+    private int members(int start) {
+        int count = u2(start);
+        int p = start + 2;
+        for (int i = 0; i < count; i++) {
+            descriptor(u2(p + 4));
+            p = attributes(p + 6);
+        }
+        return p;
+    }
+
+    private int attributes(int start) {
+        int count = u2(start);
+        int p = start + 2;
+        for (int i = 0; i < count; i++) {
+            int name = u2(p);
+            int length = u4(p + 2);
+            if (utf8Equals(name, VISIBLE_ANNOTATIONS)) {
+                annotations(p + 6);
+            } else if (utf8Equals(name, VISIBLE_PARAMETER_ANNOTATIONS)) {
+                int parameters = b[p + 6] & 0xff;
+                int a = p + 7;
+                for (int j = 0; j < parameters; j++) {
+                    a = annotations(a);
+                }
+            } else if (utf8Equals(name, ANNOTATION_DEFAULT)) {
+                elementValue(p + 6);
+            }
+            p += 6 + length;
+        }
+        return p;
+    }
+
+    private int annotations(int start) {
+        int count = u2(start);
+        int p = start + 2;
+        for (int i = 0; i < count; i++) {
+            p = annotation(p);
+        }
+        return p;
+    }
+
+    private int annotation(int start) {
+        descriptor(u2(start));
+        int pairs = u2(start + 2);
+        int p = start + 4;
+        for (int i = 0; i < pairs; i++) {
+            p = elementValue(p + 2);
+        }
+        return p;
+    }
+
+    private int elementValue(int start) {
+        int p = start + 1;
+        switch (b[start]) {
+            case 'e':
+                descriptor(u2(p));
+                return p + 4;
+            case 'c':
+                descriptor(u2(p));
+                return p + 2;
+            case '@':
+                return annotation(p);
+            case '[':
+                int count = u2(p);
+                p += 2;
+                for (int i = 0; i < count; i++) {
+                    p = elementValue(p);
+                }
+                return p;
+            default:
+                return p + 2;
+        }
+    }
+
+    /**
+     * Collects package of a class name (internal form or array descriptor)
+     * @param index of {@code CONSTANT_Utf8}
+     */
+    private void className(int index) {
+        int p = offsets[index];
+        int length = u2(p + 1);
+        if (length > 0 && b[p + 3] == '[') {
+            descriptor(index);
+        } else {
+            reference(p + 3, p + 3 + length);
+        }
+    }
+
+    /**
+     * Collects packages of all {@code L...;} types of field or method descriptor
+     * @param index of {@code CONSTANT_Utf8}
+     */
+    private void descriptor(int index) {
+        int p = offsets[index];
+        int end = p + 3 + u2(p + 1);
+        int i = p + 3;
+        while (i < end) {
+            if (b[i] == 'L') {
+                int semicolon = i + 1;
+                while (semicolon < end && b[semicolon] != ';') {
+                    semicolon++;
+                }
+                reference(i + 1, semicolon);
+                i = semicolon;
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Adds package of a class name in internal form
+     * @param start
+     * @param end
+     */
+    private void reference(int start, int end) {
+        int slash = end - 1;
+        while (slash >= start && b[slash] != '/') {
+            slash--;
+        }
+        if (slash < start) {
+            // default package
+            return;
+        }
+        int hash = 1;
+        for (int i = start; i < slash; i++) {
+            hash = 31 * hash + b[i];
+        }
+        int mask = packages.length - 1;
+        int slot = hash & mask;
+        while (packages[slot] != null) {
+            if (hashes[slot] == hash && equals(packages[slot], start, slash)) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        byte[] pkg = new byte[slash - start];
+        System.arraycopy(b, start, pkg, 0, pkg.length);
+        packages[slot] = pkg;
+        hashes[slot] = hash;
+        if (++size * 2 > packages.length) {
+            rehash();
+        }
+    }
+
+    private void rehash() {
+        byte[][] oldPackages = packages;
+        int[] oldHashes = hashes;
+        packages = new byte[oldPackages.length * 2][];
+        hashes = new int[oldPackages.length * 2];
+        int mask = packages.length - 1;
+        for (int i = 0; i < oldPackages.length; i++) {
+            if (oldPackages[i] != null) {
+                int slot = oldHashes[i] & mask;
+                while (packages[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                packages[slot] = oldPackages[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private boolean equals(byte[] pkg, int start, int end) {
+        if (pkg.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < pkg.length; i++) {
+            if (pkg[i] != b[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean utf8Equals(int index, byte[] value) {
+        int p = offsets[index];
+        return u2(p + 1) == value.length && equals(value, p + 3, p + 3 + value.length);
+    }
+
+    private int u2(int p) {
+        return (b[p] & 0xff) << 8 | b[p + 1] & 0xff;
+    }
+
+    private int u4(int p) {
+        return (b[p] & 0xff) << 24 | (b[p + 1] & 0xff) << 16 | (b[p + 2] & 0xff) << 8 | b[p + 3] & 0xff;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+
+/**
+ * <p>Checks versions of exported packages against changes of their API, following OSGi semantic versioning
+ * (<em>Semantic Versioning</em> technical whitepaper):</p>
+ * <ul>
+ *     <li>changes breaking consumers of the API (removed classes or members, incompatible modifiers, new
+ *     abstract methods in types not annotated with {@code @ProviderType}) require major version increase,</li>
+ *     <li>backward compatible changes (new classes and members) require minor version increase.</li>
+ * </ul>
+ * <p>Micro version may change freely, as implementation changes are not checked.</p>
+ * <p>Packages are written as they're compared:</p>
+ * <pre>
+ * = org.example:bundle:bundle:1.1 (baseline: bundle-1.0.jar)
+ *     org.example.api 1.0.0 -&gt; 1.0.1: minor change, requires 1.1.0 (too low)
+ *         + org.example.api.Service#stop()V
+ * </pre>
+ * <p>Packages without changes and with correct versions are not written.</p>
+ */
+public class SemanticVersioning {
+
+    public enum Delta {
+        UNCHANGED, MINOR, MAJOR
+    }
+
+    private final Writer out;
+
+    private int packages;
+    private int tooLow;
+    private int excessive;
+    private int removed;
+
+    /**
+     * Creates the check and writes report header
+     * @param baseline
+     * @param out
+     */
+    public SemanticVersioning(File baseline, Writer out) throws IOException {
+        this.out = out;
+        out.write("= Semantic versioning report against " + baseline + "\n");
+    }
+
+    /**
+     * Compares exported packages of single bundle with its baseline
+     * @param id identifier of current bundle
+     * @param baselineId identifier of baseline bundle
+     * @param previousExports versions of packages exported by baseline bundle
+     * @param previousApi API of baseline bundle (see {@link ApiScanner})
+     * @param currentExports versions of packages exported by current bundle
+     * @param currentApi API of current bundle
+     */
+    public void bundle(String id, String baselineId, Map<String, Version> previousExports,
+                       Map<String, Map<String, ClassInfo>> previousApi, Map<String, Version> currentExports,
+                       Map<String, Map<String, ClassInfo>> currentApi) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, Version> e : previousExports.entrySet()) {
+            String pkg = e.getKey();
+            Version current = currentExports.get(pkg);
+            if (current == null) {
+                removed++;
+                lines.add("    " + pkg + " " + e.getValue() + ": no longer exported");
+                continue;
+            }
+            packages++;
+            List<String> changes = new ArrayList<>();
+            Delta delta = compare(api(previousApi, pkg), api(currentApi, pkg), changes);
+            Version previous = e.getValue();
+            int actual = level(previous, current);
+            String status = null;
+            if (actual < delta.ordinal()) {
+                tooLow++;
+                status = "too low";
+            } else if (actual > delta.ordinal()) {
+                excessive++;
+                status = "excessive";
+            }
+            if (status != null || !changes.isEmpty()) {
+                lines.add("    " + pkg + " " + previous + " -> " + current + ": " + describe(delta)
+                        + (delta == Delta.UNCHANGED ? "" : ", requires " + required(previous, delta))
+                        + (status == null ? "" : " (" + status + ")"));
+                for (String change : changes) {
+                    lines.add("        " + change);
+                }
+            }
+        }
+        if (!lines.isEmpty()) {
+            out.write("\n= " + id + " (baseline: " + baselineId + ")\n");
+            for (String line : lines) {
+                out.write(line + "\n");
+            }
+        }
+    }
+
+    /**
+     * Writes totals
+     */
+    public void finish() throws IOException {
+        out.write("\nPackages: " + packages + ", too low: " + tooLow + ", excessive: " + excessive
+                + ", no longer exported: " + removed + "\n");
+        out.flush();
+    }
+
+    /**
+     * Compares API of single package
+     * @param previous class name &rarr; API of baseline classes
+     * @param current class name &rarr; API of current classes
+     * @param changes collects descriptions of the changes
+     * @return
+     */
+    public static Delta compare(Map<String, ClassInfo> previous, Map<String, ClassInfo> current, List<String> changes) {
+        Delta delta = Delta.UNCHANGED;
+        for (ClassInfo p : previous.values()) {
+            ClassInfo c = current.get(p.getName());
+            if (c == null) {
+                changes.add("- " + name(p.getName()));
+                delta = Delta.MAJOR;
+            } else {
+                delta = max(delta, compare(p, c, changes));
+            }
+        }
+        for (ClassInfo c : current.values()) {
+            if (!previous.containsKey(c.getName())) {
+                changes.add("+ " + name(c.getName()));
+                delta = max(delta, Delta.MINOR);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Version required by given change of the API
+     * @param baseline
+     * @param delta
+     * @return
+     */
+    public static Version required(Version baseline, Delta delta) {
+        switch (delta) {
+            case MAJOR:
+                return new Version(baseline.getMajor() + 1, 0, 0);
+            case MINOR:
+                return new Version(baseline.getMajor(), baseline.getMinor() + 1, 0);
+            default:
+                return baseline;
+        }
+    }
+
+    public int getPackages() {
+        return packages;
+    }
+
+    public int getTooLow() {
+        return tooLow;
+    }
+
+    public int getExcessive() {
+        return excessive;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    private static Delta compare(ClassInfo previous, ClassInfo current, List<String> changes) {
+        String type = name(previous.getName());
+        Delta delta = modifiers(type, previous.getAccess(), current.getAccess(), changes);
+        if (previous.getSuperName() != null && !previous.getSuperName().equals(current.getSuperName())) {
+            changes.add("~ " + type + ": superclass " + name(previous.getSuperName()) + " -> "
+                    + (current.getSuperName() == null ? "none" : name(current.getSuperName())));
+            delta = Delta.MAJOR;
+        }
+        Set<String> interfaces = new HashSet<>(Arrays.asList(current.getInterfaces()));
+        for (String i : previous.getInterfaces()) {
+            if (!interfaces.remove(i)) {
+                changes.add("~ " + type + ": no longer implements " + name(i));
+                delta = Delta.MAJOR;
+            }
+        }
+        for (String i : interfaces) {
+            changes.add("~ " + type + ": implements " + name(i));
+            // new superinterface adds abstract methods to interfaces implemented by consumers
+            delta = max(delta, current.isInterface() && !current.isProviderType() ? Delta.MAJOR : Delta.MINOR);
+        }
+
+        Map<String, Integer> members = current.getMembers();
+        for (Map.Entry<String, Integer> e : previous.getMembers().entrySet()) {
+            Integer access = members.get(e.getKey());
+            if (access == null) {
+                changes.add("- " + type + "#" + e.getKey());
+                delta = Delta.MAJOR;
+            } else {
+                delta = max(delta, modifiers(type + "#" + e.getKey(), e.getValue(), access, changes));
+            }
+        }
+        boolean extensible = current.isInterface() || (current.getAccess() & ClassInfo.ACC_ABSTRACT) != 0;
+        for (Map.Entry<String, Integer> e : members.entrySet()) {
+            if (!previous.getMembers().containsKey(e.getKey())) {
+                changes.add("+ " + type + "#" + e.getKey());
+                boolean abstractMethod = (e.getValue() & ClassInfo.ACC_ABSTRACT) != 0;
+                delta = max(delta, extensible && abstractMethod && !current.isProviderType() ? Delta.MAJOR : Delta.MINOR);
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Compares access flags of a class or a member
+     * @param name
+     * @param previous
+     * @param current
+     * @param changes
+     * @return
+     */
+    private static Delta modifiers(String name, int previous, int current, List<String> changes) {
+        if (previous == current) {
+            return Delta.UNCHANGED;
+        }
+        Delta delta = Delta.MINOR;
+        List<String> modifiers = new ArrayList<>();
+        int kind = ClassInfo.ACC_INTERFACE | ClassInfo.ACC_ANNOTATION | ClassInfo.ACC_ENUM | ClassInfo.ACC_STATIC;
+        if ((previous & kind) != (current & kind)) {
+            modifiers.add("kind or static modifier changed");
+            delta = Delta.MAJOR;
+        }
+        if ((previous & ClassInfo.ACC_PUBLIC) != 0 && (current & ClassInfo.ACC_PUBLIC) == 0) {
+            modifiers.add("public -> protected");
+            delta = Delta.MAJOR;
+        } else if ((previous & ClassInfo.ACC_PUBLIC) == 0 && (current & ClassInfo.ACC_PUBLIC) != 0) {
+            modifiers.add("protected -> public");
+        }
+        for (int flag : new int[] { ClassInfo.ACC_FINAL, ClassInfo.ACC_ABSTRACT }) {
+            String modifier = flag == ClassInfo.ACC_FINAL ? "final" : "abstract";
+            if ((previous & flag) == 0 && (current & flag) != 0) {
+                modifiers.add(modifier + " added");
+                delta = Delta.MAJOR;
+            } else if ((previous & flag) != 0 && (current & flag) == 0) {
+                modifiers.add(modifier + " removed");
+            }
+        }
+        if (modifiers.isEmpty()) {
+            return Delta.UNCHANGED;
+        }
+        changes.add("~ " + name + ": " + String.join(", ", modifiers));
+        return delta;
+    }
+
+    /**
+     * Level of version change: -1 (lower), 0 (micro or qualifier), 1 (minor) or 2 (major)
+     * @param previous
+     * @param current
+     * @return
+     */
+    private static int level(Version previous, Version current) {
+        if (current.getMajor() != previous.getMajor()) {
+            return current.getMajor() > previous.getMajor() ? 2 : -1;
+        }
+        if (current.getMinor() != previous.getMinor()) {
+            return current.getMinor() > previous.getMinor() ? 1 : -1;
+        }
+        return current.compareTo(previous) < 0 ? -1 : 0;
+    }
+
+    private static Map<String, ClassInfo> api(Map<String, Map<String, ClassInfo>> api, String pkg) {
+        Map<String, ClassInfo> classes = api.get(pkg);
+        return classes == null ? Collections.emptyMap() : classes;
+    }
+
+    private static Delta max(Delta d1, Delta d2) {
+        return d1.compareTo(d2) >= 0 ? d1 : d2;
+    }
+
+    private static String describe(Delta delta) {
+        switch (delta) {
+            case MAJOR:
+                return "major change";
+            case MINOR:
+                return "minor change";
+            default:
+                return "no change";
+        }
+    }
+
+    private static String name(String internalName) {
+        return internalName.replace('/', '.');
+    }
+
+}
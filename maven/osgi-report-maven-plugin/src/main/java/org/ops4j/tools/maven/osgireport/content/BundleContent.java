@@ -0,0 +1,246 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.content;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Parser;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+import org.ops4j.tools.maven.osgireport.NestedArchives;
+
+/**
+ * <p>Packages and classes visible on {@code Bundle-ClassPath} of a bundle. The index is built from zip central
+ * directory only - names and CRCs of the entries are available there, so no entry is decompressed. Only jars
+ * embedded in the bundle and listed in {@code Bundle-ClassPath} have to be streamed to get their entries.</p>
+ * <p>Directories, which are not valid Java package names (like {@code META-INF} or {@code OSGI-INF}), are
+ * not indexed.</p>
+ */
+public class BundleContent {
+
+    private final String id;
+    private final ManifestHeaders headers;
+
+    /** package name &rarr; class file name &rarr; CRC-32 ({@code -1} if not known) */
+    private final Map<String, Map<String, Long>> classes = new TreeMap<>();
+    /** package name &rarr; number of non-class entries */
+    private final Map<String, Integer> resources = new TreeMap<>();
+
+    private final List<String> missingClassPath = new ArrayList<>();
+    private final List<String> embeddedJars = new ArrayList<>();
+    private final List<String> classPathRoots = new ArrayList<>();
+
+    public BundleContent(String id, ManifestHeaders headers) {
+        this.id = id;
+        this.headers = headers;
+    }
+
+    /**
+     * Indexes content of a bundle
+     * @param id
+     * @param file
+     * @param headers
+     * @return
+     */
+    public static BundleContent read(String id, File file, ManifestHeaders headers) throws IOException {
+        BundleContent content = new BundleContent(id, headers);
+        List<String> classPath = new ArrayList<>();
+        String bundleClassPath = headers.getHeader("Bundle-ClassPath");
+        if (bundleClassPath != null) {
+            // Bundle-* headers are not parsed into clauses
+            for (Clause c : Parser.parseHeader(bundleClassPath)) {
+                classPath.add(c.getName().equals("/") ? "." : c.getName());
+            }
+        }
+        if (classPath.isEmpty()) {
+            classPath.add(".");
+        }
+
+        try (ZipFile zip = new ZipFile(file)) {
+            // class path root (directory in the bundle) -> Bundle-ClassPath entry
+            Map<String, String> roots = new LinkedHashMap<>();
+            for (String entry : classPath) {
+                String path = entry.startsWith("/") ? entry.substring(1) : entry;
+                if (path.equals(".")) {
+                    roots.put("", entry);
+                    continue;
+                }
+                ZipEntry ze = zip.getEntry(path);
+                if (ze != null && !ze.isDirectory()) {
+                    content.embeddedJars.add(path);
+                    try (InputStream is = zip.getInputStream(ze)) {
+                        content.embedded(is);
+                    }
+                } else {
+                    // directory entries are optional in zip files
+                    roots.put(path.endsWith("/") ? path : path + "/", entry);
+                }
+            }
+            // entries are indexed only under the most specific root - classes/org/example/A.class is not
+            // treated as classes.org.example package, if both "." and "classes" are on Bundle-ClassPath
+            List<String> specific = new ArrayList<>(roots.keySet());
+            specific.sort(Comparator.comparingInt(String::length).reversed());
+            content.classPathRoots.addAll(specific);
+            Set<String> found = new HashSet<>();
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry entry = e.nextElement();
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                for (String root : specific) {
+                    if (entry.getName().startsWith(root)) {
+                        found.add(root);
+                        content.add(entry.getName().substring(root.length()), entry.getCrc());
+                        break;
+                    }
+                }
+            }
+            for (Map.Entry<String, String> root : roots.entrySet()) {
+                if (!root.getKey().isEmpty() && !found.contains(root.getKey())) {
+                    content.missingClassPath.add(root.getValue());
+                }
+            }
+        }
+        return content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ManifestHeaders getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Packages with classes, mapped to class file names and their CRC-32 ({@code -1} if not known)
+     * @return
+     */
+    public Map<String, Map<String, Long>> getClasses() {
+        return classes;
+    }
+
+    /**
+     * Whether the bundle contains any class or resource in given package
+     * @param pkg
+     * @return
+     */
+    public boolean contains(String pkg) {
+        return classes.containsKey(pkg) || resources.containsKey(pkg);
+    }
+
+    /**
+     * {@code Bundle-ClassPath} entries not found in the bundle
+     * @return
+     */
+    public List<String> getMissingClassPath() {
+        return missingClassPath;
+    }
+
+    /**
+     * Jars embedded in the bundle and listed in {@code Bundle-ClassPath} (paths of the entries)
+     * @return
+     */
+    public List<String> getEmbeddedJars() {
+        return embeddedJars;
+    }
+
+    /**
+     * Directories of the bundle listed in {@code Bundle-ClassPath} (empty string for the root of the bundle,
+     * other roots end with {@code /}), the most specific first
+     * @return
+     */
+    public List<String> getClassPathRoots() {
+        return classPathRoots;
+    }
+
+    /**
+     * Indexes entry of the bundle class path
+     * @param name path relative to class path root
+     * @param crc
+     */
+    void add(String name, long crc) {
+        int slash = name.lastIndexOf('/');
+        String pkg = slash < 0 ? "" : name.substring(0, slash).replace('/', '.');
+        if (!isPackageName(pkg)) {
+            return;
+        }
+        if (name.endsWith(".class")) {
+            String cls = name.substring(slash + 1);
+            if (!"package-info.class".equals(cls) && !"module-info.class".equals(cls)) {
+                classes.computeIfAbsent(pkg, p -> new TreeMap<>()).putIfAbsent(cls, crc);
+            }
+        } else {
+            resources.merge(pkg, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Indexes entries of a jar embedded in the bundle. CRCs are known only if they're stored in local headers.
+     * @param is
+     */
+    private void embedded(InputStream is) throws IOException {
+        try (ZipInputStream zis = NestedArchives.open(is)) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (!entry.isDirectory()) {
+                    add(entry.getName(), entry.getCrc());
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether all segments of given name are Java identifiers (default package is not a package)
+     * @param name
+     * @return
+     */
+    static boolean isPackageName(String name) {
+        if (name.isEmpty()) {
+            return false;
+        }
+        boolean start = true;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '.') {
+                if (start) {
+                    return false;
+                }
+                start = true;
+            } else if (start ? !Character.isJavaIdentifierStart(c) : !Character.isJavaIdentifierPart(c)) {
+                return false;
+            } else {
+                start = false;
+            }
+        }
+        return !start;
+    }
+
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.content;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.felix.utils.manifest.Clause;
+import org.apache.felix.utils.manifest.Parser;
+import org.ops4j.tools.maven.osgireport.analysis.BundleDescriptor;
+import org.ops4j.tools.maven.osgireport.diff.SectionEntries;
+
+/**
+ * <p>Reactor-wide index of packages and classes, built in single pass over {@link BundleContent contents}
+ * of the bundles. Each class is a key in a hash map (by entry name), so the cost grows linearly with
+ * the total number of entries. Reported problems:</p>
+ * <ul>
+ *     <li><em>symbolic name collisions</em> - more bundles with the same {@code Bundle-SymbolicName} and
+ *     {@code Bundle-Version},</li>
+ *     <li><em>split packages</em> - packages with classes in more than one bundle, where any class of the
+ *     package is missing in any of these bundles,</li>
+ *     <li><em>duplicated classes</em> - the same class in more than one bundle, <em>identical</em> or
+ *     <em>diverging</em> by CRC-32 from zip central directory (if CRCs are compared).</li>
+ * </ul>
+ * <p>Content is attributed to symbolic names and content of fragments to symbolic names of their hosts, so
+ * packages split between a host and its fragment and classes shared by different versions of the same bundle
+ * are not reported.</p>
+ */
+public class DuplicateAnalysis {
+
+    private final boolean compareCrc;
+
+    private final Map<String, List<String>> symbolicNames = new TreeMap<>();
+    /** package name &rarr; owner &rarr; class count */
+    private final Map<String, Map<String, Integer>> packages = new HashMap<>();
+    /** package name &rarr; exporting bundles */
+    private final Map<String, Set<String>> exporters = new HashMap<>();
+    /** class entry &rarr; occurrences */
+    private final Map<String, Occurrence> classes = new HashMap<>();
+    private final Set<String> duplicated = new HashSet<>();
+
+    private int bundles;
+
+    /**
+     * @param compareCrc whether duplicated classes should be compared by CRC-32
+     */
+    public DuplicateAnalysis(boolean compareCrc) {
+        this.compareCrc = compareCrc;
+    }
+
+    /**
+     * Indexes single bundle
+     * @param content
+     */
+    public void add(BundleContent content) {
+        bundles++;
+        String symbolicName = SectionEntries.symbolicName(content.getHeaders().getHeader("Bundle-SymbolicName"));
+        String owner = content.getId();
+        if (symbolicName != null) {
+            String version = BundleDescriptor.version(content.getHeaders().getHeader("Bundle-Version")).toString();
+            symbolicNames.computeIfAbsent(symbolicName + ";" + version, k -> new ArrayList<>()).add(content.getId());
+            owner = symbolicName;
+        }
+        String host = content.getHeaders().getHeader("Fragment-Host");
+        Clause[] hostClauses = host == null || host.trim().isEmpty() ? new Clause[0] : Parser.parseHeader(host);
+        if (hostClauses.length > 0) {
+            owner = hostClauses[0].getName();
+        }
+
+        for (Clause c : content.getHeaders().getClauses("Export-Package")) {
+            exporters.computeIfAbsent(c.getName(), p -> new HashSet<>()).add(content.getId());
+        }
+        for (Map.Entry<String, Map<String, Long>> e : content.getClasses().entrySet()) {
+            String pkg = e.getKey();
+            String prefix = pkg.replace('.', '/') + "/";
+            int count = 0;
+            for (Map.Entry<String, Long> cls : e.getValue().entrySet()) {
+                String name = prefix + cls.getKey();
+                Occurrence occurrence = new Occurrence(owner, content.getId(), cls.getValue());
+                Occurrence first = classes.putIfAbsent(name, occurrence);
+                if (first == null) {
+                    count++;
+                } else if (first.append(occurrence)) {
+                    duplicated.add(name);
+                    count++;
+                }
+            }
+            if (count > 0) {
+                packages.computeIfAbsent(pkg, p -> new LinkedHashMap<>()).merge(owner, count, Integer::sum);
+            }
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        Map<String, List<String>> collisions = new TreeMap<>();
+        for (Map.Entry<String, List<String>> e : symbolicNames.entrySet()) {
+            if (e.getValue().size() > 1) {
+                collisions.put(e.getKey(), e.getValue());
+            }
+        }
+        Map<String, Map<String, Integer>> split = splitPackages();
+        Map<String, Occurrence> identical = new TreeMap<>();
+        Map<String, Occurrence> diverging = new TreeMap<>();
+        for (String name : duplicated) {
+            Occurrence first = classes.get(name);
+            (compareCrc && !isIdentical(first) ? diverging : identical).put(name, first);
+        }
+
+        out.write("= Duplicates report\n\n");
+        out.write("Bundles: " + bundles + "\n");
+        out.write("Symbolic name collisions: " + collisions.size() + "\n");
+        out.write("Split packages: " + split.size() + "\n");
+        if (compareCrc) {
+            out.write("Identical duplicated classes: " + identical.size() + "\n");
+            out.write("Diverging duplicated classes: " + diverging.size() + "\n");
+        } else {
+            out.write("Duplicated classes: " + identical.size() + "\n");
+        }
+
+        out.write("\n== Symbolic name collisions\n");
+        for (Map.Entry<String, List<String>> e : collisions.entrySet()) {
+            out.write("\n    " + e.getKey() + "\n");
+            for (String id : e.getValue()) {
+                out.write("        " + id + "\n");
+            }
+        }
+        out.write("\n== Split packages\n");
+        for (Map.Entry<String, Map<String, Integer>> e : split.entrySet()) {
+            Set<String> exportedBy = exporters.get(e.getKey());
+            out.write("\n    " + e.getKey()
+                    + (exportedBy == null ? "" : " (exported by " + String.join(", ", new TreeSet<>(exportedBy)) + ")") + "\n");
+            for (Map.Entry<String, Integer> owner : e.getValue().entrySet()) {
+                out.write("        " + owner.getKey() + ": " + owner.getValue() + " classes\n");
+            }
+        }
+        if (compareCrc) {
+            write(out, "Diverging duplicated classes", diverging);
+            write(out, "Identical duplicated classes", identical);
+        } else {
+            write(out, "Duplicated classes", identical);
+        }
+    }
+
+    public int getBundles() {
+        return bundles;
+    }
+
+    public int getCollisions() {
+        int count = 0;
+        for (List<String> ids : symbolicNames.values()) {
+            if (ids.size() > 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getSplitPackages() {
+        return splitPackages().size();
+    }
+
+    public int getDuplicatedClasses() {
+        return duplicated.size();
+    }
+
+    /**
+     * Packages contained in more bundles, where any of the classes is missing in at least one of them. All
+     * owners of the package are compared at once, so classes overlapping only in pairs (A and B share one
+     * class, B and C another) are still reported as a split.
+     * @return
+     */
+    private Map<String, Map<String, Integer>> splitPackages() {
+        Map<String, Map<String, Integer>> split = new TreeMap<>();
+        for (Map.Entry<String, Occurrence> e : classes.entrySet()) {
+            String name = e.getKey();
+            String pkg = name.substring(0, name.lastIndexOf('/')).replace('/', '.');
+            Map<String, Integer> owners = packages.get(pkg);
+            if (owners.size() < 2 || split.containsKey(pkg)) {
+                continue;
+            }
+            int count = 0;
+            for (Occurrence o = e.getValue(); o != null; o = o.next) {
+                count++;
+            }
+            if (count < owners.size()) {
+                split.put(pkg, owners);
+            }
+        }
+        return split;
+    }
+
+    private void write(Writer out, String title, Map<String, Occurrence> duplicates) throws IOException {
+        out.write("\n== " + title + "\n");
+        for (Map.Entry<String, Occurrence> e : duplicates.entrySet()) {
+            out.write("\n    " + e.getKey().replace('/', '.') + "\n");
+            for (Occurrence o = e.getValue(); o != null; o = o.next) {
+                out.write("        " + o.bundle + (compareCrc ? " (CRC " + crc(o.crc) + ")" : "") + "\n");
+            }
+        }
+    }
+
+    private static boolean isIdentical(Occurrence first) {
+        for (Occurrence o = first.next; o != null; o = o.next) {
+            if (o.crc == -1 || o.crc != first.crc) {
+                return false;
+            }
+        }
+        return first.crc != -1;
+    }
+
+    private static String crc(long crc) {
+        return crc == -1 ? "unknown" : String.format("%08x", crc);
+    }
+
+    /**
+     * Occurrence of a class in single bundle, linked to further occurrences
+     */
+    private static class Occurrence {
+        private final String owner;
+        private final String bundle;
+        private final long crc;
+        private Occurrence next;
+
+        Occurrence(String owner, String bundle, long crc) {
+            this.owner = owner;
+            this.bundle = bundle;
+            this.crc = crc;
+        }
+
+        /**
+         * Appends an occurrence in a bundle with different owner
+         * @param occurrence
+         * @return {@code false} if the owner of given occurrence is already known
+         */
+        private boolean append(Occurrence occurrence) {
+            Occurrence last = this;
+            while (true) {
+                if (last.owner.equals(occurrence.owner)) {
+                    return false;
+                }
+                if (last.next == null) {
+                    last.next = occurrence;
+                    return true;
+                }
+                last = last.next;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.content;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.utils.manifest.Clause;
+
+/**
+ * <p>Compares {@code Export-Package} of bundles with their {@link BundleContent content}:</p>
+ * <ul>
+ *     <li><em>phantom exports</em> - exported packages without any class or resource in the bundle,</li>
+ *     <li><em>hidden packages</em> - packages with classes, which are neither exported nor listed in
+ *     {@code Private-Package} header (written by bnd). Bundles without this header aren't checked, because
+ *     there's no reliable way to tell private packages from hidden ones - they're only counted.</li>
+ * </ul>
+ * <p>{@code Bundle-ClassPath} entries which can't be found in the bundle are reported too.</p>
+ */
+public class ExportVerification {
+
+    private final List<Result> results = new ArrayList<>();
+    private int bundles;
+    private int phantom;
+    private int hidden;
+    private int unchecked;
+
+    /**
+     * Verifies single bundle
+     * @param content
+     */
+    public void verify(BundleContent content) {
+        bundles++;
+        Set<String> exports = new HashSet<>();
+        Result result = new Result(content);
+        for (Clause c : content.getHeaders().getClauses("Export-Package")) {
+            exports.add(c.getName());
+            if (!content.contains(c.getName())) {
+                result.phantomExports.add(c.getName());
+            }
+        }
+        if (content.getHeaders().getHeader("Private-Package") == null) {
+            unchecked++;
+        } else {
+            List<String> privatePatterns = new ArrayList<>();
+            for (Clause c : content.getHeaders().getClauses("Private-Package")) {
+                privatePatterns.add(c.getName());
+            }
+            for (Map.Entry<String, Map<String, Long>> e : content.getClasses().entrySet()) {
+                String pkg = e.getKey();
+                if (!exports.contains(pkg) && !matches(privatePatterns, pkg)) {
+                    result.hiddenPackages.add(pkg + " (" + e.getValue().size() + " classes)");
+                }
+            }
+        }
+        phantom += result.phantomExports.size();
+        hidden += result.hiddenPackages.size();
+        if (!result.phantomExports.isEmpty() || !result.hiddenPackages.isEmpty() || !content.getMissingClassPath().isEmpty()) {
+            results.add(result);
+        }
+    }
+
+    public void write(Writer out) throws IOException {
+        out.write("= Export verification report\n\n");
+        out.write("Bundles: " + bundles + "\n");
+        out.write("Phantom exports: " + phantom + "\n");
+        out.write("Hidden packages: " + hidden + "\n");
+        out.write("Bundles without Private-Package (hidden packages not checked): " + unchecked + "\n");
+
+        for (Result result : results) {
+            out.write("\n= " + result.content.getId() + "\n");
+            write(out, "Phantom exports", result.phantomExports);
+            write(out, "Hidden packages", result.hiddenPackages);
+            write(out, "Missing Bundle-ClassPath entries", result.content.getMissingClassPath());
+        }
+    }
+
+    public int getBundles() {
+        return bundles;
+    }
+
+    public int getPhantom() {
+        return phantom;
+    }
+
+    public int getHidden() {
+        return hidden;
+    }
+
+    public int getUnchecked() {
+        return unchecked;
+    }
+
+    private static void write(Writer out, String title, List<String> items) throws IOException {
+        if (items.isEmpty()) {
+            return;
+        }
+        out.write("    " + title + ":\n");
+        for (String item : items) {
+            out.write("        " + item + "\n");
+        }
+    }
+
+    /**
+     * Matches package against bnd-like patterns ({@code org.example}, {@code org.example.*})
+     * @param patterns
+     * @param pkg
+     * @return
+     */
+    private static boolean matches(List<String> patterns, String pkg) {
+        for (String pattern : patterns) {
+            if (pattern.equals(pkg) || pattern.equals("*")) {
+                return true;
+            }
+            if (pattern.endsWith(".*")) {
+                String prefix = pattern.substring(0, pattern.length() - 2);
+                if (pkg.equals(prefix) || pkg.startsWith(prefix + ".")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static class Result {
+        private final BundleContent content;
+        private final List<String> phantomExports = new ArrayList<>();
+        private final List<String> hiddenPackages = new ArrayList<>();
+
+        Result(BundleContent content) {
+            this.content = content;
+        }
+    }
+
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.diff;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+import org.ops4j.tools.maven.osgireport.ManifestReader;
+import org.ops4j.tools.maven.osgireport.SectionFormatter;
+
+/**
+ * <p>Previous state of the summary - either a summary file (e.g., {@code manifest-summary.txt} attached by
+ * previous release) or a directory with older versions of the bundles.</p>
+ * <p>Only hash indexes are kept in memory - by artifact key ({@code groupId:artifactId[:classifier]}, without
+ * version and type) and by {@code Bundle-SymbolicName}. For summary files, the index points to offset and
+ * length of each section, which is read only when its artifact is compared.</p>
+ */
+public class Baseline {
+
+    private static final Set<String> SCOPES = new HashSet<>(Arrays.asList("compile", "provided", "runtime", "test",
+            "system", "import"));
+
+    private static final byte[] SECTION = "= ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BSN = "Bundle-SymbolicName: ".getBytes(StandardCharsets.UTF_8);
+
+    private final File location;
+    private final ManifestReader reader;
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Entry> byKey = new HashMap<>();
+    private final Map<String, Entry> byName = new HashMap<>();
+
+    private Baseline(File location, ManifestReader reader) {
+        this.location = location;
+        this.reader = reader;
+    }
+
+    /**
+     * Indexes a summary file or a directory of bundles
+     * @param location
+     * @param reader used to read bundles from a directory
+     * @return
+     */
+    public static Baseline load(File location, ManifestReader reader) throws IOException {
+        Baseline baseline = new Baseline(location, reader);
+        if (location.isDirectory()) {
+            baseline.indexDirectory();
+        } else {
+            baseline.indexSummary();
+        }
+        return baseline;
+    }
+
+    /**
+     * Key used to match artifacts between baseline and current build
+     * @param groupId
+     * @param artifactId
+     * @param classifier
+     * @return
+     */
+    public static String key(String groupId, String artifactId, String classifier) {
+        return groupId + ":" + artifactId + (classifier == null || classifier.isEmpty() ? "" : ":" + classifier);
+    }
+
+    /**
+     * Key of artifact identified like in the summary ({@code groupId:artifactId:type[:classifier]:version[:scope]}).
+     * Path of nested bundle ({@code !/path}) is kept.
+     * @param id
+     * @return
+     */
+    public static String key(String id) {
+        int nested = id.indexOf("!/");
+        if (nested >= 0) {
+            return key(id.substring(0, nested)) + id.substring(nested);
+        }
+        String[] parts = id.split(":");
+        int length = parts.length;
+        if (length > 4 && SCOPES.contains(parts[length - 1])) {
+            length--;
+        }
+        if (length < 4) {
+            return id;
+        }
+        return key(parts[0], parts[1], length > 4 ? parts[3] : null);
+    }
+
+    public File getLocation() {
+        return location;
+    }
+
+    /**
+     * Finds baseline entry of an artifact by its key or by symbolic name (if its key isn't known). Found
+     * entry is marked as matched.
+     * @param key
+     * @param symbolicName
+     * @return
+     */
+    public Entry find(String key, String symbolicName) {
+        Entry entry = byKey.get(key);
+        if (entry == null && symbolicName != null) {
+            entry = byName.get(symbolicName);
+        }
+        if (entry != null) {
+            entry.matched = true;
+        }
+        return entry;
+    }
+
+    /**
+     * Entries not returned by {@link #find(String, String)} so far
+     * @return
+     */
+    public List<Entry> getUnmatched() {
+        return entries.stream().filter(e -> !e.matched).collect(Collectors.toList());
+    }
+
+    /**
+     * Reads (summary) or renders (bundle) the section of given entry
+     * @param entry
+     * @return
+     */
+    public String section(Entry entry) throws IOException {
+        if (entry.file != null) {
+            return SectionFormatter.section(entry.id, reader.headers(entry.file));
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(entry.length);
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            int read = 0;
+            while (bytes.hasRemaining() && read >= 0) {
+                read = channel.read(bytes, entry.offset + bytes.position());
+            }
+        }
+        return new String(bytes.array(), 0, bytes.position(), StandardCharsets.UTF_8);
+    }
+
+    private void add(Entry entry) {
+        entries.add(entry);
+        if (entry.key != null) {
+            byKey.putIfAbsent(entry.key, entry);
+        }
+        if (entry.symbolicName != null) {
+            byName.putIfAbsent(entry.symbolicName, entry);
+        }
+    }
+
+    /**
+     * Finds sections ({@code = id} lines after empty line) and {@code Bundle-SymbolicName} of each section
+     * without decoding whole file.
+     */
+    private void indexSummary() throws IOException {
+        try (FileChannel channel = FileChannel.open(location.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int size = buffer.limit();
+            Entry current = null;
+            boolean blank = true;
+            int lineStart = 0;
+            while (lineStart < size) {
+                int lineEnd = lineStart;
+                while (lineEnd < size && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (blank && startsWith(buffer, lineStart, lineEnd, SECTION)) {
+                    if (current != null) {
+                        current.length = lineStart - (int) current.offset;
+                        add(current);
+                    }
+                    String id = string(buffer, lineStart + 2, lineEnd);
+                    current = new Entry(id, key(id), null, null);
+                    current.offset = lineStart;
+                } else if (current != null && current.symbolicName == null && startsWith(buffer, lineStart, lineEnd, BSN)) {
+                    current.symbolicName = SectionEntries.symbolicName(string(buffer, lineStart + BSN.length, lineEnd));
+                }
+                blank = lineEnd == lineStart;
+                lineStart = lineEnd + 1;
+            }
+            if (current != null) {
+                current.length = size - (int) current.offset;
+                add(current);
+            }
+        }
+    }
+
+    /**
+     * Indexes all bundles in a directory (recursively). Artifact keys are taken from
+     * {@code META-INF/maven/&#42;/&#42;/pom.properties}, classifiers from file names.
+     */
+    private void indexDirectory() throws IOException {
+        List<Path> jars;
+        try (Stream<Path> files = Files.walk(location.toPath())) {
+            jars = files.filter(p -> Files.isRegularFile(p) && p.getFileName().toString().endsWith(".jar"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+        for (Path jar : jars) {
+            File file = jar.toFile();
+            ManifestHeaders headers = reader.headers(file);
+            if (!headers.isBundle()) {
+                continue;
+            }
+            String id = location.toPath().relativize(jar).toString();
+            Entry entry = new Entry(id, pomKey(file), SectionEntries.symbolicName(headers.getHeader("Bundle-SymbolicName")), file);
+            add(entry);
+        }
+    }
+
+    private static String pomKey(File file) throws IOException {
+        Properties pom = null;
+        try (ZipFile zip = new ZipFile(file)) {
+            for (Enumeration<? extends ZipEntry> e = zip.entries(); e.hasMoreElements();) {
+                ZipEntry ze = e.nextElement();
+                if (ze.getName().startsWith("META-INF/maven/") && ze.getName().endsWith("/pom.properties")) {
+                    if (pom != null) {
+                        // shaded jar - can't tell which one is the right one
+                        return null;
+                    }
+                    pom = new Properties();
+                    try (InputStream is = zip.getInputStream(ze)) {
+                        pom.load(is);
+                    }
+                }
+            }
+        }
+        if (pom == null || pom.getProperty("groupId") == null || pom.getProperty("artifactId") == null) {
+            return null;
+        }
+        String artifactId = pom.getProperty("artifactId");
+        String prefix = artifactId + "-" + pom.getProperty("version") + "-";
+        String name = file.getName();
+        String classifier = null;
+        if (name.startsWith(prefix) && name.lastIndexOf('.') > prefix.length()) {
+            classifier = name.substring(prefix.length(), name.lastIndexOf('.'));
+        }
+        return key(pom.getProperty("groupId"), artifactId, classifier);
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int start, int end, byte[] prefix) {
+        if (end - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String string(ByteBuffer buffer, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Single artifact of the baseline
+     */
+    public static class Entry {
+
+        private final String id;
+        private final String key;
+        private String symbolicName;
+        private final File file;
+        private long offset;
+        private int length;
+        private boolean matched;
+
+        Entry(String id, String key, String symbolicName, File file) {
+            this.id = id;
+            this.key = key;
+            this.symbolicName = symbolicName;
+            this.file = file;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getSymbolicName() {
+            return symbolicName;
+        }
+
+        /**
+         * Bundle file of the entry, {@code null} for entries read from a summary file
+         * @return
+         */
+        public File getFile() {
+            return file;
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.diff;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Streams differences between current artifacts and a {@link Baseline}. Each artifact is written as soon
+ * as it's compared:</p>
+ * <pre>
+ * = org.example:bundle:bundle:1.1 (baseline: org.example:bundle:bundle:1.0)
+ *     ~ Bundle-Version: 1.0 -&gt; 1.1
+ *     + Export-Package: org.example.api; version = 1.1
+ *     - Import-Package: org.example.old
+ *     + Export-Package: org.example.api; uses:= org.osgi.framework
+ * </pre>
+ * <p>Entries are described in {@link SectionEntries}. Artifacts without changes are not written. Baseline
+ * artifacts not matched by any current artifact are written as removed by {@link #finish()}.</p>
+ */
+public class ManifestDiff {
+
+    private final Baseline baseline;
+    private final Writer out;
+    private final Set<String> ignored;
+
+    private int changed;
+    private int added;
+    private int removed;
+    private int unchanged;
+
+    /**
+     * Creates the diff and writes its header
+     * @param baseline
+     * @param out
+     * @param ignored headers which are not compared (like {@code Bnd-LastModified})
+     */
+    public ManifestDiff(Baseline baseline, Writer out, Set<String> ignored) throws IOException {
+        this.baseline = baseline;
+        this.out = out;
+        this.ignored = ignored;
+        out.write("= Manifest diff against " + baseline.getLocation() + "\n");
+    }
+
+    /**
+     * Compares single artifact with its baseline
+     * @param id identifier of current artifact
+     * @param key artifact key (see {@link Baseline#key(String, String, String)})
+     * @param section rendered section of current artifact
+     */
+    public void artifact(String id, String key, String section) throws IOException {
+        Map<String, String> current = SectionEntries.flatten(section);
+        Baseline.Entry entry = baseline.find(key, SectionEntries.symbolicName(current));
+        if (entry == null) {
+            added++;
+            out.write("\n= " + id + " (added)\n");
+            return;
+        }
+        List<String> changes = diff(SectionEntries.flatten(baseline.section(entry)), current, ignored);
+        if (changes.isEmpty()) {
+            unchanged++;
+            return;
+        }
+        changed++;
+        out.write("\n= " + id + " (baseline: " + entry.getId() + ")\n");
+        for (String change : changes) {
+            out.write("    " + change + "\n");
+        }
+    }
+
+    /**
+     * Writes removed artifacts and totals
+     */
+    public void finish() throws IOException {
+        for (Baseline.Entry entry : baseline.getUnmatched()) {
+            removed++;
+            out.write("\n= " + entry.getId() + " (removed)\n");
+        }
+        out.write("\nChanged: " + changed + ", added: " + added + ", removed: " + removed
+                + ", unchanged: " + unchanged + "\n");
+        out.flush();
+    }
+
+    /**
+     * Compares flattened sections: changed and added entries in the order of current section, then removed
+     * entries in the order of previous section.
+     * @param previous
+     * @param current
+     * @param ignored
+     * @return
+     */
+    public static List<String> diff(Map<String, String> previous, Map<String, String> current, Set<String> ignored) {
+        List<String> changes = new ArrayList<>();
+        for (Map.Entry<String, String> e : current.entrySet()) {
+            if (ignored.contains(header(e.getKey()))) {
+                continue;
+            }
+            String old = previous.get(e.getKey());
+            if (old == null) {
+                changes.add("+ " + describe(e.getKey(), e.getValue()));
+            } else if (!old.equals(e.getValue())) {
+                changes.add("~ " + e.getKey() + ": " + old + " -> " + e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : previous.entrySet()) {
+            if (!ignored.contains(header(e.getKey())) && !current.containsKey(e.getKey())) {
+                changes.add("- " + describe(e.getKey(), e.getValue()));
+            }
+        }
+        return changes;
+    }
+
+    public int getChanged() {
+        return changed;
+    }
+
+    public int getAdded() {
+        return added;
+    }
+
+    public int getRemoved() {
+        return removed;
+    }
+
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    private static String describe(String key, String value) {
+        if (key.indexOf(": ") < 0) {
+            // single value header
+            return key + ": " + value;
+        }
+        return value.isEmpty() ? key : key + " = " + value;
+    }
+
+    private static String header(String key) {
+        int colon = key.indexOf(": ");
+        return colon < 0 ? key : key.substring(0, colon);
+    }
+
+}
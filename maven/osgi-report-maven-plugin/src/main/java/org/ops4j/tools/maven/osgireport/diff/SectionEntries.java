@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.diff;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Flattens single section of manifest summary (as rendered by
+ * {@link org.ops4j.tools.maven.osgireport.SectionFormatter}) into entries which can be compared using hash
+ * lookups only:</p>
+ * <ul>
+ *     <li>{@code Bundle-Version} &rarr; {@code 1.0.0}</li>
+ *     <li>{@code Export-Package: org.example} &rarr; empty value (the clause is present)</li>
+ *     <li>{@code Export-Package: org.example; version} &rarr; {@code 1.0.0}</li>
+ *     <li>{@code Export-Package: org.example; resolution:} &rarr; {@code optional} (directive)</li>
+ *     <li>{@code Export-Package: org.example; uses:= org.osgi.framework} &rarr; empty value</li>
+ * </ul>
+ * <p>Repeated clauses with the same name (like {@code osgi.service} capabilities) get {@code #2}, {@code #3}, ...
+ * suffix.</p>
+ */
+public final class SectionEntries {
+
+    private static final String CLAUSE_INDENT = "    ";
+    private static final String PARAMETER_INDENT = "        ";
+    private static final String USES_INDENT = "            ";
+
+    private SectionEntries() {
+    }
+
+    /**
+     * Returns entries of given section, in the order of the section
+     * @param section
+     * @return
+     */
+    public static Map<String, String> flatten(String section) {
+        Map<String, String> entries = new LinkedHashMap<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        boolean clauses = false;
+        String header = null;
+        String clause = null;
+        String uses = null;
+        for (String line : section.split("\n")) {
+            if (line.isEmpty() || line.startsWith("= ")) {
+                continue;
+            }
+            if (line.startsWith("== ")) {
+                // general and bundle attributes are single values, other groups are lists of clauses
+                clauses = !line.startsWith("== General") && !line.startsWith("== Bundle");
+                header = null;
+                continue;
+            }
+            if (!clauses) {
+                int colon = line.indexOf(": ");
+                if (colon > 0) {
+                    entries.put(line.substring(0, colon), line.substring(colon + 2));
+                }
+            } else if (line.startsWith(USES_INDENT)) {
+                if (uses != null) {
+                    entries.put(uses + line.substring(USES_INDENT.length()), "");
+                }
+            } else if (line.startsWith(PARAMETER_INDENT)) {
+                uses = null;
+                String parameter = line.substring(PARAMETER_INDENT.length());
+                int space = parameter.indexOf(' ');
+                if (clause == null || space <= 0) {
+                    continue;
+                }
+                String name = parameter.substring(0, space);
+                String rest = parameter.substring(space + 1);
+                if (rest.equals(":=")) {
+                    uses = clause + "; " + name + ":= ";
+                } else if (rest.startsWith(":= ")) {
+                    entries.put(clause + "; " + name + ":", rest.substring(3));
+                } else if (rest.startsWith("= ") || rest.equals("=")) {
+                    entries.put(clause + "; " + name, rest.length() > 2 ? rest.substring(2) : "");
+                }
+            } else if (line.startsWith(CLAUSE_INDENT)) {
+                uses = null;
+                if (header == null) {
+                    continue;
+                }
+                String name = header + ": " + line.substring(CLAUSE_INDENT.length());
+                int n = occurrences.merge(name, 1, Integer::sum);
+                clause = n == 1 ? name : name + "#" + n;
+                entries.put(clause, "");
+            } else if (line.endsWith(":")) {
+                header = line.substring(0, line.length() - 1);
+                clause = null;
+                uses = null;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Splits text with several sections (like artifact followed by its nested bundles) into separate sections
+     * @param text
+     * @return section id &rarr; section
+     */
+    public static Map<String, String> split(String text) {
+        Map<String, String> sections = new LinkedHashMap<>();
+        String id = null;
+        int start = 0;
+        int lineStart = 0;
+        boolean blank = true;
+        while (lineStart < text.length()) {
+            int lineEnd = text.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                lineEnd = text.length();
+            }
+            if (blank && text.startsWith("= ", lineStart)) {
+                if (id != null) {
+                    sections.put(id, text.substring(start, lineStart));
+                }
+                id = text.substring(lineStart + 2, lineEnd).trim();
+                start = lineStart;
+            }
+            blank = lineEnd == lineStart;
+            lineStart = lineEnd + 1;
+        }
+        if (id != null) {
+            sections.put(id, text.substring(start));
+        }
+        return sections;
+    }
+
+    /**
+     * Returns symbolic name (without directives) from flattened section
+     * @param entries
+     * @return
+     */
+    public static String symbolicName(Map<String, String> entries) {
+        return symbolicName(entries.get("Bundle-SymbolicName"));
+    }
+
+    /**
+     * Returns symbolic name from the value of {@code Bundle-SymbolicName} header
+     * @param header
+     * @return
+     */
+    public static String symbolicName(String header) {
+        if (header == null) {
+            return null;
+        }
+        int semicolon = header.indexOf(';');
+        return (semicolon < 0 ? header : header.substring(0, semicolon)).trim();
+    }
+
+}
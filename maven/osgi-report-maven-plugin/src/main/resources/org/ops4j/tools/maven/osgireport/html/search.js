@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// client-side search over OSGI_REPORT defined by index.js (see HtmlReport#searchIndex())
+(function () {
+    var LIMIT = 100;
+    var input = document.getElementById("search");
+    var results = document.getElementById("results");
+    var bundles = OSGI_REPORT.bundles;
+    var timer = null;
+
+    function esc(s) {
+        return String(s).replace(/&/g, "&amp;").replace(/</g, "&lt;").replace(/>/g, "&gt;").replace(/"/g, "&quot;");
+    }
+
+    function link(b, anchor) {
+        return "<a href=\"" + esc(bundles[b][3]) + (anchor ? "#" + esc(anchor) : "") + "\">" + esc(bundles[b][0]) + "</a>";
+    }
+
+    function links(list, label) {
+        if (list.length === 0) {
+            return "";
+        }
+        var html = [];
+        for (var i = 0; i < list.length && i < LIMIT; i++) {
+            html.push(link(list[i]));
+        }
+        return "<br>" + label + " (" + list.length + "): " + html.join(", ") + (list.length > LIMIT ? ", &hellip;" : "");
+    }
+
+    function section(title, items) {
+        if (items.length === 0) {
+            return "";
+        }
+        return "<h3>" + title + " <span class=\"count\">(" + items.length + (items.length >= LIMIT ? "+" : "") + ")</span></h3>"
+                + "<ul><li>" + items.join("</li><li>") + "</li></ul>";
+    }
+
+    function search() {
+        var q = input.value.trim().toLowerCase();
+        if (q.length < 2) {
+            results.innerHTML = "";
+            return;
+        }
+        var found = [], i;
+        for (i = 0; i < bundles.length && found.length < LIMIT; i++) {
+            var b = bundles[i];
+            if (b[0].toLowerCase().indexOf(q) >= 0 || (b[1] && b[1].toLowerCase().indexOf(q) >= 0)) {
+                found.push(link(i) + (b[1] ? " <span class=\"provider\">" + esc(b[1]) + " " + esc(b[2]) + "</span>" : ""));
+            }
+        }
+        var html = section("Artifacts", found);
+
+        found = [];
+        for (i = 0; i < OSGI_REPORT.packages.length && found.length < LIMIT; i++) {
+            var p = OSGI_REPORT.packages[i];
+            if (p[0].toLowerCase().indexOf(q) >= 0) {
+                var exporters = [];
+                for (var e = 0; e < p[1].length; e++) {
+                    exporters.push(link(p[1][e][0], "export-" + p[0]) + " " + esc(p[1][e][1]));
+                }
+                found.push("<code>" + esc(p[0]) + "</code>"
+                        + (exporters.length > 0 ? "<br>exported by: " + exporters.join(", ") : "")
+                        + links(p[2], "imported by"));
+            }
+        }
+        html += section("Packages", found);
+
+        found = [];
+        for (i = 0; i < OSGI_REPORT.capabilities.length && found.length < LIMIT; i++) {
+            var c = OSGI_REPORT.capabilities[i];
+            if (c[0].toLowerCase().indexOf(q) >= 0) {
+                found.push("<code>" + esc(c[0]) + "</code>" + links(c[1], "provided by") + links(c[2], "required by"));
+            }
+        }
+        html += section("Capabilities", found);
+
+        results.innerHTML = html === "" ? "<p>Nothing found</p>" : html;
+    }
+
+    input.addEventListener("input", function () {
+        clearTimeout(timer);
+        timer = setTimeout(search, 150);
+    });
+    search();
+})();
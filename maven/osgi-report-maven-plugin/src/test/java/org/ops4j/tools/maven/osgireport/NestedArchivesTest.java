@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NestedArchivesTest {
+
+    @Test
+    public void testBundleClassPath() throws IOException {
+        byte[] embedded = archive(manifest("embedded", null));
+        byte[] other = archive(manifest("other", null));
+        File bundle = file("bundle.jar", archive(manifest("bundle", ".,/lib/embedded.jar"),
+                "lib/embedded.jar", embedded, "lib/other.jar", other, "WEB-INF/lib/web.jar", other));
+
+        // lib/other.jar is not on Bundle-ClassPath
+        assertThat(paths(new NestedArchives(1, 1024 * 1024, null).scan(bundle)))
+                .containsExactly("lib/embedded.jar", "WEB-INF/lib/web.jar");
+    }
+
+    @Test
+    public void testContainer() throws IOException {
+        byte[] inner = archive(manifest("inner", null));
+        byte[] nested = archive(manifest("nested", "lib/inner.jar"), "lib/inner.jar", inner, "lib/ignored.jar", inner);
+        byte[] plain = archive(null);
+        File kar = file("features.kar", archive(null,
+                "repository/nested.jar", nested, "repository/plain.jar", plain));
+
+        assertThat(paths(new NestedArchives(1, 1024 * 1024, null).scan(kar)))
+                .containsExactly("repository/nested.jar");
+        assertThat(paths(new NestedArchives(2, 1024 * 1024, null).scan(kar)))
+                .containsExactly("repository/nested.jar", "repository/nested.jar!/lib/inner.jar");
+    }
+
+    @Test
+    public void testTooBig() throws IOException {
+        byte[] data = new byte[4096];
+        new Random(0).nextBytes(data);
+        byte[] embedded = archive(manifest("embedded", null), "data.bin", data);
+        File bundle = file("bundle.jar", archive(manifest("bundle", "embedded.jar"), "embedded.jar", embedded));
+
+        List<NestedArchives.Nested> nested = new NestedArchives(1, 1024, null).scan(bundle);
+        assertThat(nested).hasSize(1);
+        assertThat(nested.get(0).getHeaders()).isNull();
+        assertThat(nested.get(0).getError()).contains("exceeds 1024");
+    }
+
+    private static List<String> paths(List<NestedArchives.Nested> nested) {
+        List<String> result = new ArrayList<>();
+        for (NestedArchives.Nested n : nested) {
+            result.add(n.getPath());
+        }
+        return result;
+    }
+
+    private static Manifest manifest(String symbolicName, String classPath) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Manifest-Version", "1.0");
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-SymbolicName", symbolicName);
+        if (classPath != null) {
+            main.putValue("Bundle-ClassPath", classPath);
+        }
+        return manifest;
+    }
+
+    /**
+     * Creates an archive with given manifest (first) and entries (name, content pairs)
+     * @param manifest
+     * @param entries
+     * @return
+     */
+    private static byte[] archive(Manifest manifest, Object... entries) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (ZipOutputStream zos = new ZipOutputStream(baos)) {
+            if (manifest != null) {
+                zos.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+                manifest.write(zos);
+            }
+            for (int i = 0; i < entries.length; i += 2) {
+                zos.putNextEntry(new ZipEntry((String) entries[i]));
+                zos.write((byte[]) entries[i + 1]);
+            }
+        }
+        return baos.toByteArray();
+    }
+
+    private static File file(String name, byte[] content) throws IOException {
+        File dir = Files.createTempDirectory("nested").toFile();
+        dir.deleteOnExit();
+        File file = new File(dir, name);
+        Files.write(file.toPath(), content);
+        file.deleteOnExit();
+        return file;
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.apache.felix.utils.version.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class QueryIndexTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        QueryIndex.Writer writer = new QueryIndex.Writer();
+        // added in reverse order, so the writer has to sort the tables
+        for (int i = 199; i >= 0; i--) {
+            writer.add("org.example:b" + i + ":1.0", headers("org.example.b" + i, "1.0." + i,
+                    "org.example.p" + i + ";version=1." + i,
+                    "org.example.p" + (i + 1) + ";version=\"[1," + (i + 2) + ")\"",
+                    "osgi.service;objectClass:List<String>=org.example.S" + i, null));
+        }
+        writer.add("org.example:zzz:1.0", headers("org.example.b0", "2.0.0", "org.example.p0;version=2.0",
+                "org.example.optional;resolution:=optional", null, "osgi.ee;filter:=\"(osgi.ee=JavaSE)\""));
+        // not a bundle
+        writer.add("org.example:plain:1.0", ManifestHeaders.parse(new Manifest()));
+        QueryIndex index = QueryIndex.open(write(writer));
+
+        assertThat(index.getBundleCount()).isEqualTo(201);
+        assertThat(ids(index.exporters("org.example.p0", null))).containsExactly("org.example:b0:1.0", "org.example:zzz:1.0");
+        assertThat(ids(index.exporters("org.example.p0", VersionRange.parseVersionRange("[2,3)"))))
+                .containsExactly("org.example:zzz:1.0");
+        assertThat(index.exporters("org.example.p150", null).get(0).getValue()).isEqualTo("1.150.0");
+        assertThat(index.exporters("org.example.p200", null)).isEmpty();
+        assertThat(ids(index.importers("org.example.p150"))).containsExactly("org.example:b149:1.0");
+        assertThat(index.importers("org.example.p150").get(0).getValue()).isEqualTo("[1,151)");
+        assertThat(index.importers("org.example.optional").get(0).isOptional()).isTrue();
+        assertThat(index.importers("org.example.missing")).isEmpty();
+
+        // package names are sorted by bytes - "p1" < "p10" < "p100" < "p2"
+        assertThat(index.packages("org.example.p19")).containsExactly("org.example.p19", "org.example.p190",
+                "org.example.p191", "org.example.p192", "org.example.p193", "org.example.p194", "org.example.p195",
+                "org.example.p196", "org.example.p197", "org.example.p198", "org.example.p199");
+        assertThat(index.packages("org.other")).isEmpty();
+
+        assertThat(index.capabilities("osgi.service", false)).hasSize(200);
+        assertThat(index.capabilities("osgi.service", true)).isEmpty();
+        assertThat(ids(index.capabilities("osgi.ee", true))).containsExactly("org.example:zzz:1.0");
+
+        assertThat(ids(index.bundles("org.example:b42:1.0"))).containsExactly("org.example:b42:1.0");
+        assertThat(index.bundles("org.example.b42").get(0).getBundle().getVersion()).isEqualTo("1.0.42");
+        assertThat(ids(index.bundles("org.example.b0"))).containsExactly("org.example:b0:1.0", "org.example:zzz:1.0");
+        assertThat(index.bundles("org.example:plain:1.0")).isEmpty();
+    }
+
+    @Test
+    public void testEmptyIndex() throws IOException {
+        QueryIndex index = QueryIndex.open(write(new QueryIndex.Writer()));
+
+        assertThat(index.getBundleCount()).isZero();
+        assertThat(index.exporters("org.example", null)).isEmpty();
+        assertThat(index.packages("")).isEmpty();
+        assertThat(index.bundles("org.example")).isEmpty();
+    }
+
+    @Test
+    public void testCorruptedIndex() throws IOException {
+        QueryIndex.Writer writer = new QueryIndex.Writer();
+        writer.add("org.example:b:1.0", headers("org.example.b", "1.0", "org.example.p", "org.example.i", null, null));
+        File file = write(writer);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        assertThatThrownBy(() -> QueryIndex.open(write(Arrays.copyOf(bytes, 20)))).isInstanceOf(IOException.class)
+                .hasMessage("Not a query index");
+        // truncated strings
+        assertThatThrownBy(() -> QueryIndex.open(write(Arrays.copyOf(bytes, bytes.length - 3))))
+                .isInstanceOf(IOException.class).hasMessageStartingWith("Corrupted query index");
+        // package table beyond the end of the index
+        assertThatThrownBy(() -> QueryIndex.open(write(modify(bytes, 24, 1000))))
+                .isInstanceOf(IOException.class).hasMessageStartingWith("Corrupted query index: package table");
+        // string offset beyond the end of the index
+        int packages = ByteBuffer.wrap(bytes).getInt(28);
+        assertThatThrownBy(() -> QueryIndex.open(write(modify(bytes, packages, bytes.length))))
+                .isInstanceOf(IOException.class).hasMessageStartingWith("Corrupted query index: string");
+        // bundle outside of the bundle table
+        assertThatThrownBy(() -> QueryIndex.open(write(modify(bytes, packages + 4, 1))))
+                .isInstanceOf(IOException.class).hasMessage("Corrupted query index: bundle 1");
+
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        String truncated = write(Arrays.copyOf(bytes, bytes.length - 3)).getPath();
+        assertThat(QueryTool.run(new String[] { "-q", truncated, "exporters", "org.example.p" },
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(err))).isEqualTo(1);
+        assertThat(err.toString()).startsWith("Can't read " + truncated + ": Corrupted query index");
+        assertThat(QueryTool.run(new String[] { "-q", file.getPath(), "exporters", "org.example.p" },
+                new PrintStream(new ByteArrayOutputStream()), new PrintStream(err))).isEqualTo(0);
+    }
+
+    private static ManifestHeaders headers(String symbolicName, String version, String exports, String imports,
+            String capabilities, String requirements) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Manifest-Version", "1.0");
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-SymbolicName", symbolicName);
+        main.putValue("Bundle-Version", version);
+        main.putValue("Export-Package", exports);
+        main.putValue("Import-Package", imports);
+        if (capabilities != null) {
+            main.putValue("Provide-Capability", capabilities);
+        }
+        if (requirements != null) {
+            main.putValue("Require-Capability", requirements);
+        }
+        return ManifestHeaders.parse(manifest);
+    }
+
+    private static List<String> ids(List<QueryIndex.Match> matches) {
+        List<String> result = new ArrayList<>();
+        for (QueryIndex.Match m : matches) {
+            result.add(m.getBundle().getId());
+        }
+        return result;
+    }
+
+    private static byte[] modify(byte[] bytes, int offset, int value) {
+        byte[] result = bytes.clone();
+        ByteBuffer.wrap(result).putInt(offset, value);
+        return result;
+    }
+
+    private static File write(QueryIndex.Writer writer) throws IOException {
+        File file = File.createTempFile("index", ".bin");
+        file.deleteOnExit();
+        writer.write(file);
+        return file;
+    }
+
+    private static File write(byte[] bytes) throws IOException {
+        File file = File.createTempFile("index", ".bin");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+}
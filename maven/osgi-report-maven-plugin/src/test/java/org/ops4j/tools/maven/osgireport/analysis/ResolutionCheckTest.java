@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.Test;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResolutionCheckTest {
+
+    @Test
+    public void testSubstitutableExport() {
+        ResolutionCheck check = new ResolutionCheck(SystemProfile.system("test", "", ""));
+        check.add(bundle("api", "org.example.api;version=1.0.0", "org.example.api"));
+        check.add(bundle("impl", "org.example.api;version=1.0.0", "org.example.api"));
+        check.add(bundle("client", null, "org.example.api"));
+        check.check();
+
+        assertThat(check.getUnresolved()).isEmpty();
+        // each exporter has only one other provider, only the client can choose from two bundles
+        assertThat(check.getAmbiguous()).hasSize(1);
+        assertThat(check.getAmbiguous().get(0).getRequirement().getBundle().getId()).isEqualTo("client");
+        assertThat(check.getAmbiguous().get(0).getProviders()).hasSize(2);
+    }
+
+    @Test
+    public void testOwnExportOnly() {
+        ResolutionCheck check = new ResolutionCheck(SystemProfile.system("test", "", ""));
+        check.add(bundle("api", "org.example.api", "org.example.api"));
+        check.check();
+
+        assertThat(check.getUnresolved()).isEmpty();
+        assertThat(check.getAmbiguous()).isEmpty();
+    }
+
+    @Test
+    public void testMissingAndOptionalImports() {
+        ResolutionCheck check = new ResolutionCheck(SystemProfile.system("test", "org.osgi.framework", ""));
+        check.add(bundle("client", null,
+                "org.osgi.framework,org.example.missing,org.example.optional;resolution:=optional,java.util"));
+        check.check();
+
+        assertThat(check.getRequirementCount()).isEqualTo(4);
+        assertThat(check.getUnresolved()).hasSize(1);
+        assertThat(check.getUnresolved().get(0).getRequirement().toString()).contains("org.example.missing");
+        assertThat(check.getUnresolvedOptional()).hasSize(1);
+        assertThat(check.getAmbiguous()).isEmpty();
+    }
+
+    private static BundleDescriptor bundle(String name, String exports, String imports) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Manifest-Version", "1.0");
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-SymbolicName", name);
+        if (exports != null) {
+            main.putValue("Export-Package", exports);
+        }
+        if (imports != null) {
+            main.putValue("Import-Package", imports);
+        }
+        return new BundleDescriptor(name, ManifestHeaders.parse(manifest));
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.analysis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.jupiter.api.Test;
+import org.ops4j.tools.maven.osgireport.ManifestHeaders;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class UsesAnalysisTest {
+
+    @Test
+    public void testUsesCycle() {
+        ResolutionCheck check = new ResolutionCheck(SystemProfile.system("test", "", ""));
+        BundleDescriptor model = bundle("model",
+                "org.a;uses:=org.b,org.b;uses:=org.c,org.c;uses:=org.a,org.d", null);
+        BundleDescriptor api = bundle("api", "org.e;uses:=\"org.a,org.d\"", "org.a,org.d");
+        check.add(model);
+        check.add(api);
+        UsesAnalysis analysis = new UsesAnalysis(check);
+        analysis.analyze();
+
+        // all members of the cycle share the same closure
+        assertThat(packages(analysis.getClosure(export(model, "org.a")))).containsExactly("org.a", "org.b", "org.c");
+        assertThat(packages(analysis.getClosure(export(model, "org.b")))).containsExactly("org.a", "org.b", "org.c");
+        assertThat(packages(analysis.getClosure(export(model, "org.c")))).containsExactly("org.a", "org.b", "org.c");
+        assertThat(packages(analysis.getClosure(export(model, "org.d")))).containsExactly("org.d");
+        // closure of a package using the cycle includes whole cycle
+        assertThat(packages(analysis.getClosure(export(api, "org.e"))))
+                .containsExactlyInAnyOrder("org.a", "org.b", "org.c", "org.d", "org.e");
+        assertThat(analysis.getConflicts()).isEmpty();
+    }
+
+    @Test
+    public void testConflictingProviders() {
+        ResolutionCheck check = new ResolutionCheck(SystemProfile.system("test", "", ""));
+        BundleDescriptor log1 = bundle("log1", "org.log;version=1.0.0", null);
+        BundleDescriptor log2 = bundle("log2", "org.log;version=2.0.0", null);
+        BundleDescriptor api = bundle("api", "org.api;uses:=org.log;version=1.0.0", "org.log;version=\"[1,2)\"");
+        BundleDescriptor client = bundle("client", null, "org.api,org.log;version=\"[2,3)\"");
+        BundleDescriptor flexible = bundle("flexible", null, "org.api,org.log");
+        check.add(log1);
+        check.add(log2);
+        check.add(api);
+        check.add(client);
+        check.add(flexible);
+        UsesAnalysis analysis = new UsesAnalysis(check);
+        analysis.analyze();
+
+        assertThat(analysis.getSpace(client).get("org.log").getBundle()).isSameAs(log2);
+        assertThat(analysis.getSpace(flexible).get("org.log").getBundle()).isSameAs(log2);
+
+        // flexible's own import could be wired to log1 instead, so only client is reported
+        assertThat(analysis.getConflicts()).hasSize(1);
+        UsesAnalysis.Conflict conflict = analysis.getConflicts().get(0);
+        assertThat(conflict.getBundle()).isSameAs(client);
+        assertThat(conflict.getPackageName()).isEqualTo("org.log");
+        assertThat(conflict.getSource().getBundle()).isSameAs(log2);
+        assertThat(conflict.getSourceVia()).isNull();
+        assertThat(conflict.getConflicting().getBundle()).isSameAs(log1);
+        assertThat(conflict.getConflictingVia()).isSameAs(export(api, "org.api"));
+    }
+
+    private static Capability export(BundleDescriptor bundle, String pkg) {
+        for (Capability c : bundle.getCapabilities()) {
+            if (Capability.PACKAGE_NAMESPACE.equals(c.getNamespace())
+                    && pkg.equals(c.getAttributes().get(Capability.PACKAGE_NAMESPACE))) {
+                return c;
+            }
+        }
+        throw new IllegalArgumentException(pkg);
+    }
+
+    private static List<String> packages(List<Capability> capabilities) {
+        List<String> result = new ArrayList<>();
+        for (Capability c : capabilities) {
+            result.add((String) c.getAttributes().get(Capability.PACKAGE_NAMESPACE));
+        }
+        return result;
+    }
+
+    private static BundleDescriptor bundle(String name, String exports, String imports) {
+        Manifest manifest = new Manifest();
+        Attributes main = manifest.getMainAttributes();
+        main.putValue("Manifest-Version", "1.0");
+        main.putValue("Bundle-ManifestVersion", "2");
+        main.putValue("Bundle-SymbolicName", name);
+        if (exports != null) {
+            main.putValue("Export-Package", exports);
+        }
+        if (imports != null) {
+            main.putValue("Import-Package", imports);
+        }
+        return new BundleDescriptor(name, ManifestHeaders.parse(manifest));
+    }
+
+}
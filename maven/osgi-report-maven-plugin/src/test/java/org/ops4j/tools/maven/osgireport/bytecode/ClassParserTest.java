@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ClassParserTest {
+
+    @Test
+    public void testMembers() throws IOException {
+        ClassInfo info = ClassParser.parse(Fixtures.compile("org.example.Api",
+                "package org.example;\n"
+                + "public abstract class Api<T> implements Comparable<Api<T>> {\n"
+                + "    public static final String NAME = \"api\";\n"
+                + "    protected int count;\n"
+                + "    private long hidden;\n"
+                + "    public abstract void start(String[] args);\n"
+                + "    protected T get() { return null; }\n"
+                + "    void internal() { }\n"
+                + "    public int compareTo(Api<T> o) { return 0; }\n"
+                + "}\n"));
+
+        assertThat(info.getName()).isEqualTo("org/example/Api");
+        assertThat(info.getPackageName()).isEqualTo("org/example");
+        assertThat(info.getSuperName()).isEqualTo("java/lang/Object");
+        assertThat(info.getInterfaces()).containsExactly("java/lang/Comparable");
+        assertThat(info.isApi()).isTrue();
+        assertThat(info.isInterface()).isFalse();
+        assertThat(info.getAccess() & ClassInfo.ACC_ABSTRACT).isNotZero();
+        // private and package private members and the synthetic bridge compareTo(Object) are not API
+        assertThat(info.getMembers()).containsOnlyKeys("NAME:Ljava/lang/String;", "count:I", "<init>()V",
+                "start([Ljava/lang/String;)V", "get()Ljava/lang/Object;", "compareTo(Lorg/example/Api;)I");
+        assertThat(info.getMembers().get("NAME:Ljava/lang/String;"))
+                .isEqualTo(ClassInfo.ACC_PUBLIC | ClassInfo.ACC_STATIC | ClassInfo.ACC_FINAL);
+        assertThat(info.getMembers().get("start([Ljava/lang/String;)V"))
+                .isEqualTo(ClassInfo.ACC_PUBLIC | ClassInfo.ACC_ABSTRACT);
+        assertThat(info.getMembers().get("get()Ljava/lang/Object;")).isEqualTo(ClassInfo.ACC_PROTECTED);
+    }
+
+    @Test
+    public void testFinalClass() throws IOException {
+        ClassInfo info = ClassParser.parse(Fixtures.compile("org.example.Value",
+                "package org.example;\n"
+                + "public final class Value {\n"
+                + "    public int x;\n"
+                + "    protected int y;\n"
+                + "    private Value() { }\n"
+                + "}\n"));
+
+        // protected members of final classes can't be used outside of the package
+        assertThat(info.getMembers()).containsOnlyKeys("x:I");
+        assertThat(info.isProviderType()).isFalse();
+    }
+
+    @Test
+    public void testProviderType() throws IOException {
+        Map<String, String> sources = new TreeMap<>();
+        sources.put("org.osgi.annotation.versioning.ProviderType",
+                "package org.osgi.annotation.versioning;\n"
+                + "public @interface ProviderType { }\n");
+        sources.put("org.example.Other",
+                "package org.example;\n"
+                + "public @interface Other {\n"
+                + "    String[] value();\n"
+                + "    java.lang.annotation.ElementType type();\n"
+                + "    Deprecated nested();\n"
+                + "    Class<?> cls();\n"
+                + "}\n");
+        sources.put("org.example.Service",
+                "package org.example;\n"
+                + "@Other(value = { \"a\", \"b\" }, type = java.lang.annotation.ElementType.TYPE,\n"
+                + "        nested = @Deprecated, cls = String.class)\n"
+                + "@org.osgi.annotation.versioning.ProviderType\n"
+                + "public interface Service {\n"
+                + "    int LIMIT = 10;\n"
+                + "    void start();\n"
+                + "    default void stop() { }\n"
+                + "}\n");
+        Map<String, byte[]> classes = Fixtures.compile(sources);
+
+        ClassInfo service = ClassParser.parse(classes.get("org/example/Service"));
+        assertThat(service.isInterface()).isTrue();
+        assertThat(service.isProviderType()).isTrue();
+        assertThat(service.getMembers()).containsOnlyKeys("LIMIT:I", "start()V", "stop()V");
+        assertThat(ClassParser.parse(classes.get("org/example/Other")).isProviderType()).isFalse();
+    }
+
+    @Test
+    public void testInvalidClass() throws IOException {
+        byte[] bytes = Fixtures.compile("org.example.Empty", "package org.example;\npublic class Empty { }\n");
+
+        assertThatThrownBy(() -> ClassParser.parse(new byte[] { 1, 2, 3, 4 }))
+                .isInstanceOf(IOException.class).hasMessage("Not a class file");
+        assertThatThrownBy(() -> ClassParser.parse(Arrays.copyOf(bytes, bytes.length / 2)))
+                .isInstanceOf(IOException.class);
+    }
+
+}
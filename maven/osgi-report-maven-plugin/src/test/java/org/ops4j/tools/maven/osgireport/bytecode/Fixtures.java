@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles small fixture classes from source, so tests can check different versions of the same class.
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Compiles given sources
+     * @param sources class name (like {@code org.example.Api}) &rarr; source code
+     * @return internal class name (like {@code org/example/Api}) &rarr; content of {@code .class} file
+     */
+    static Map<String, byte[]> compile(Map<String, String> sources) throws IOException {
+        Path dir = Files.createTempDirectory("fixtures");
+        try {
+            List<String> args = new ArrayList<>();
+            args.add("-g:none");
+            args.add("-d");
+            args.add(dir.resolve("classes").toString());
+            for (Map.Entry<String, String> e : sources.entrySet()) {
+                Path source = dir.resolve("src").resolve(e.getKey().replace('.', File.separatorChar) + ".java");
+                Files.createDirectories(source.getParent());
+                Files.write(source, e.getValue().getBytes(StandardCharsets.UTF_8));
+                args.add(source.toString());
+            }
+            Files.createDirectories(dir.resolve("classes"));
+            JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+            if (compiler.run(null, null, null, args.toArray(new String[0])) != 0) {
+                throw new IOException("Can't compile fixtures " + sources.keySet());
+            }
+            Map<String, byte[]> result = new TreeMap<>();
+            Path classes = dir.resolve("classes");
+            try (Stream<Path> files = Files.walk(classes)) {
+                for (Path p : (Iterable<Path>) files.filter(f -> f.toString().endsWith(".class"))::iterator) {
+                    String name = classes.relativize(p).toString().replace(File.separatorChar, '/');
+                    result.put(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(p));
+                }
+            }
+            return result;
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted((p1, p2) -> p2.compareTo(p1)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Compiles single class
+     * @param name
+     * @param source
+     * @return content of {@code .class} file
+     */
+    static byte[] compile(String name, String source) throws IOException {
+        Map<String, String> sources = new TreeMap<>();
+        sources.put(name, source);
+        return compile(sources).get(name.replace('.', '/'));
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ReferenceScannerTest {
+
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_METHOD_TYPE = 16;
+
+    @Test
+    public void testArrayDescriptors() throws IOException {
+        ReferenceScanner scanner = new ReferenceScanner();
+        scanner.scan(new ByteArrayInputStream(classFile(CONSTANT_CLASS,
+                "[[Lorg/example/array/A;", "[I", "org/example/plain/B")));
+
+        assertThat(scanner.getPackages()).containsExactly("org.example.array", "org.example.plain");
+        assertThat(scanner.getClasses()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMethodTypeConstants() throws IOException {
+        ReferenceScanner scanner = new ReferenceScanner();
+        scanner.scan(new ByteArrayInputStream(classFile(CONSTANT_METHOD_TYPE,
+                "(Lorg/example/param/P;[Lorg/example/array/A;I)Lorg/example/result/R;")));
+
+        assertThat(scanner.getPackages())
+                .containsExactly("org.example.array", "org.example.param", "org.example.result");
+    }
+
+    @Test
+    public void testAnnotations() throws IOException {
+        Map<String, String> sources = new TreeMap<>();
+        sources.put("org.example.visible.Visible",
+                "package org.example.visible;\n"
+                + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                + "public @interface Visible {\n"
+                + "    org.example.constant.Mode mode() default org.example.constant.Mode.ON;\n"
+                + "}\n");
+        sources.put("org.example.invisible.Invisible",
+                "package org.example.invisible;\n"
+                + "public @interface Invisible { }\n");
+        sources.put("org.example.constant.Mode",
+                "package org.example.constant;\n"
+                + "public enum Mode { ON, OFF }\n");
+        sources.put("org.example.literal.Literal",
+                "package org.example.literal;\n"
+                + "public class Literal { }\n");
+        sources.put("org.example.config.Config",
+                "package org.example.config;\n"
+                + "public @interface Config {\n"
+                + "    Class<?>[] types() default { org.example.literal.Literal.class };\n"
+                + "}\n");
+        sources.put("org.example.service.Service",
+                "package org.example.service;\n"
+                + "public class Service {\n"
+                + "    public void start(\n"
+                + "            @org.example.visible.Visible(mode = org.example.constant.Mode.OFF) String name,\n"
+                + "            @org.example.invisible.Invisible int count) { }\n"
+                + "}\n");
+        Map<String, byte[]> classes = Fixtures.compile(sources);
+
+        // parameter annotations - only runtime visible ones, including types of enum constants
+        ReferenceScanner scanner = new ReferenceScanner();
+        scanner.scan(new ByteArrayInputStream(classes.get("org/example/service/Service")));
+        assertThat(scanner.getPackages()).contains("org.example.visible", "org.example.constant")
+                .doesNotContain("org.example.invisible");
+
+        // default value of annotation element - class literals are referenced only by AnnotationDefault
+        scanner = new ReferenceScanner();
+        scanner.scan(new ByteArrayInputStream(classes.get("org/example/config/Config")));
+        assertThat(scanner.getPackages()).contains("org.example.config", "org.example.literal");
+    }
+
+    @Test
+    public void testManyPackages() throws IOException {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("org/example/p" + i + "/C");
+        }
+        // same hash code
+        names.add("Aa/C");
+        names.add("BB/C");
+        names.add("NoPackage");
+        byte[] bytes = classFile(CONSTANT_CLASS, names.toArray(new String[0]));
+
+        ReferenceScanner scanner = new ReferenceScanner();
+        scanner.scan(new ByteArrayInputStream(bytes));
+        scanner.scan(new ByteArrayInputStream(bytes));
+
+        assertThat(scanner.getClasses()).isEqualTo(2);
+        assertThat(scanner.getPackages()).hasSize(1002).contains("Aa", "BB", "org.example.p0", "org.example.p999");
+    }
+
+    @Test
+    public void testInvalidClass() throws IOException {
+        ReferenceScanner scanner = new ReferenceScanner();
+
+        assertThatThrownBy(() -> scanner.scan(new ByteArrayInputStream(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 })))
+                .isInstanceOf(IOException.class).hasMessage("Not a class file");
+        assertThat(scanner.getClasses()).isZero();
+
+        // bigger class first, so the reused buffer contains stale bytes after the truncated one
+        scanner.scan(new ByteArrayInputStream(classFile(CONSTANT_CLASS, "org/example/a/A", "org/example/b/B")));
+        byte[] bytes = classFile(CONSTANT_CLASS, "org/example/c/C");
+        assertThatThrownBy(() -> scanner.scan(new ByteArrayInputStream(bytes, 0, bytes.length - 6)))
+                .isInstanceOf(IOException.class).hasMessage("Truncated class file");
+    }
+
+    /**
+     * Creates a class file (in default package, without superclass and members) with {@code CONSTANT_Class}
+     * or {@code CONSTANT_MethodType} entry for each given name or descriptor
+     * @param tag
+     * @param values
+     * @return
+     */
+    private static byte[] classFile(int tag, String... values) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(0xCAFEBABE);
+            dos.writeShort(0);
+            dos.writeShort(52);
+            dos.writeShort(3 + values.length * 2);
+            dos.writeByte(1);
+            dos.writeUTF("Fixture");
+            dos.writeByte(CONSTANT_CLASS);
+            dos.writeShort(1);
+            for (int i = 0; i < values.length; i++) {
+                dos.writeByte(1);
+                dos.writeUTF(values[i]);
+                dos.writeByte(tag);
+                dos.writeShort(3 + i * 2);
+            }
+            // access, this class, superclass, interfaces, fields, methods, attributes
+            dos.writeShort(ClassInfo.ACC_PUBLIC);
+            dos.writeShort(2);
+            dos.writeShort(0);
+            dos.writeShort(0);
+            dos.writeShort(0);
+            dos.writeShort(0);
+            dos.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return baos.toByteArray();
+    }
+
+}
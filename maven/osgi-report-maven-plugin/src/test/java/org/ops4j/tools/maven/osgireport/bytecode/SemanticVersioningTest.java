@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 OPS4J.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ops4j.tools.maven.osgireport.bytecode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+import org.ops4j.tools.maven.osgireport.bytecode.SemanticVersioning.Delta;
+import org.osgi.framework.Version;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SemanticVersioningTest {
+
+    private static final String PROVIDER_TYPE = "package org.osgi.annotation.versioning;\n"
+            + "public @interface ProviderType { }\n";
+
+    @Test
+    public void testUnchanged() throws IOException {
+        String service = "package org.example;\npublic class Service { public void start() { } }\n";
+        List<String> changes = new ArrayList<>();
+
+        Map<String, ClassInfo> previous = api("org.example.Service", service);
+        Map<String, ClassInfo> current = api("org.example.Service", service);
+        assertThat(SemanticVersioning.compare(previous, current, changes)).isEqualTo(Delta.UNCHANGED);
+        assertThat(changes).isEmpty();
+    }
+
+    @Test
+    public void testAddedMembersAndClasses() throws IOException {
+        Map<String, ClassInfo> previous = api("org.example.Service",
+                "package org.example;\npublic class Service { public void start() { } }\n");
+        Map<String, ClassInfo> current = api("org.example.Service",
+                "package org.example;\npublic class Service { public void start() { } public void stop() { } }\n",
+                "org.example.Config", "package org.example;\npublic class Config { }\n");
+        List<String> changes = new ArrayList<>();
+
+        assertThat(SemanticVersioning.compare(previous, current, changes)).isEqualTo(Delta.MINOR);
+        assertThat(changes).containsExactlyInAnyOrder("+ org.example.Service#stop()V", "+ org.example.Config");
+    }
+
+    @Test
+    public void testRemovedMembersAndClasses() throws IOException {
+        Map<String, ClassInfo> previous = api("org.example.Service",
+                "package org.example;\npublic class Service { public int count; public void start() { } }\n",
+                "org.example.Config", "package org.example;\npublic class Config { }\n");
+        Map<String, ClassInfo> current = api("org.example.Service",
+                "package org.example;\npublic class Service { public long count; }\n");
+        List<String> changes = new ArrayList<>();
+
+        assertThat(SemanticVersioning.compare(previous, current, changes)).isEqualTo(Delta.MAJOR);
+        // changed field type is a removal and an addition
+        assertThat(changes).containsExactlyInAnyOrder("- org.example.Config", "- org.example.Service#start()V",
+                "- org.example.Service#count:I", "+ org.example.Service#count:J");
+    }
+
+    @Test
+    public void testChangedModifiers() throws IOException {
+        Map<String, ClassInfo> previous = api("org.example.Service",
+                "package org.example;\npublic class Service { public void start() { } protected void stop() { } }\n");
+        Map<String, ClassInfo> widened = api("org.example.Service",
+                "package org.example;\npublic class Service { public void start() { } public void stop() { } }\n");
+        Map<String, ClassInfo> restricted = api("org.example.Service",
+                "package org.example;\n"
+                + "public class Service { public final void start() { } protected void stop() { } }\n");
+        List<String> changes = new ArrayList<>();
+
+        assertThat(SemanticVersioning.compare(previous, widened, changes)).isEqualTo(Delta.MINOR);
+        assertThat(changes).containsExactly("~ org.example.Service#stop()V: protected -> public");
+
+        changes.clear();
+        assertThat(SemanticVersioning.compare(previous, restricted, changes)).isEqualTo(Delta.MAJOR);
+        assertThat(changes).containsExactly("~ org.example.Service#start()V: final added");
+    }
+
+    @Test
+    public void testNewAbstractMethods() throws IOException {
+        Map<String, ClassInfo> consumer = api("org.example.Listener",
+                "package org.example;\npublic interface Listener { void started(); }\n");
+        Map<String, ClassInfo> consumerAdded = api("org.example.Listener",
+                "package org.example;\npublic interface Listener { void started(); void stopped(); }\n");
+        Map<String, ClassInfo> provider = api("org.example.Listener",
+                "package org.example;\n@org.osgi.annotation.versioning.ProviderType\n"
+                + "public interface Listener { void started(); }\n",
+                "org.osgi.annotation.versioning.ProviderType", PROVIDER_TYPE);
+        Map<String, ClassInfo> providerAdded = api("org.example.Listener",
+                "package org.example;\n@org.osgi.annotation.versioning.ProviderType\n"
+                + "public interface Listener { void started(); void stopped(); }\n",
+                "org.osgi.annotation.versioning.ProviderType", PROVIDER_TYPE);
+        Map<String, ClassInfo> defaultAdded = api("org.example.Listener",
+                "package org.example;\npublic interface Listener { void started(); default void stopped() { } }\n");
+        List<String> changes = new ArrayList<>();
+
+        // consumers implementing the interface would break
+        assertThat(SemanticVersioning.compare(consumer, consumerAdded, changes)).isEqualTo(Delta.MAJOR);
+        assertThat(changes).containsExactly("+ org.example.Listener#stopped()V");
+        assertThat(SemanticVersioning.compare(provider, providerAdded, changes)).isEqualTo(Delta.MINOR);
+        assertThat(SemanticVersioning.compare(consumer, defaultAdded, changes)).isEqualTo(Delta.MINOR);
+    }
+
+    @Test
+    public void testRequiredVersion() {
+        Version baseline = new Version(1, 2, 3);
+
+        assertThat(SemanticVersioning.required(baseline, Delta.UNCHANGED)).isEqualTo(baseline);
+        assertThat(SemanticVersioning.required(baseline, Delta.MINOR))
+                .isEqualTo(new Version(1, 3, 0));
+        assertThat(SemanticVersioning.required(baseline, Delta.MAJOR))
+                .isEqualTo(new Version(2, 0, 0));
+    }
+
+    /**
+     * Compiles given classes (name, source pairs) and returns API of classes from {@code org/example} package
+     * @param sources
+     * @return
+     */
+    private static Map<String, ClassInfo> api(String... sources) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < sources.length; i += 2) {
+            map.put(sources[i], sources[i + 1]);
+        }
+        Map<String, ClassInfo> api = new TreeMap<>();
+        for (byte[] bytes : Fixtures.compile(map).values()) {
+            ClassInfo info = ClassParser.parse(bytes);
+            if ("org/example".equals(info.getPackageName())) {
+                api.put(info.getName(), info);
+            }
+        }
+        return api;
+    }
+
+}